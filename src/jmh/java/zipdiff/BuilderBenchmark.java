@@ -0,0 +1,75 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import zipdiff.output.AbstractBuilder;
+import zipdiff.output.BuilderFactory;
+
+/**
+ * Measures writing the report of the differences between the two versions of the
+ * fixture with many small entries, which has about 2,400 differences.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BuilderBenchmark {
+
+	/** file name extension that selects the builder, or htmltree for the tree view */
+	@Param({ "txt", "html", "xml", "zip", "json", "ndjson", "htmltree" })
+	public String format;
+
+	private Differences differences;
+
+	@Setup
+	public void setUp() throws IOException {
+		DifferenceCalculator calculator = new DifferenceCalculator(Fixtures.get(Fixtures.MANY_SMALL, 1), Fixtures.get(Fixtures.MANY_SMALL, 2));
+		differences = calculator.getDifferences();
+	}
+
+	@Benchmark
+	public long build() {
+		CountingOutputStream out = new CountingOutputStream();
+		AbstractBuilder builder = (AbstractBuilder) BuilderFactory.create("report." + format, format);
+		builder.build(out, differences);
+		return out.count;
+	}
+
+	/**
+	 * discards the report, only counting its bytes
+	 */
+	private static class CountingOutputStream extends OutputStream {
+		long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
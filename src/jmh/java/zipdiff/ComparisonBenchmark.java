@@ -0,0 +1,98 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipFile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import zipdiff.index.ArchiveIndex;
+
+/**
+ * Measures the comparison of two indexes that have already been built. The sorted
+ * order of an index is cached, so this is the cost of the merge join itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ComparisonBenchmark {
+
+	@Param({ Fixtures.MANY_SMALL, Fixtures.NESTED })
+	public String fixture;
+
+	private DifferenceCalculator calculator;
+
+	private ArchiveIndex index1;
+
+	private ArchiveIndex index2;
+
+	/** pairs of entries with the same name, entry of index1 at even positions */
+	private int[] pairs;
+
+	@Setup
+	public void setUp() throws IOException {
+		ZipFile zf1 = new ZipFile(Fixtures.get(fixture, 1));
+		ZipFile zf2 = new ZipFile(Fixtures.get(fixture, 2));
+		try {
+			calculator = new DifferenceCalculator(zf1, zf2);
+			index1 = calculator.buildArchiveIndex(zf1, 0);
+			index2 = calculator.buildArchiveIndex(zf2, 0);
+		} finally {
+			zf1.close();
+			zf2.close();
+		}
+
+		int[] order1 = index1.sortedOrder();
+		int[] order2 = index2.sortedOrder();
+		ArchiveIndex.NameComparator names = new ArchiveIndex.NameComparator();
+		pairs = new int[2 * Math.min(order1.length, order2.length)];
+		int count = 0;
+		for (int i = 0, j = 0; i < order1.length && j < order2.length; ) {
+			int cmp = names.compare(index1, order1[i], index2, order2[j]);
+			if (cmp < 0) {
+				i++;
+			} else if (cmp > 0) {
+				j++;
+			} else {
+				pairs[count++] = order1[i++];
+				pairs[count++] = order2[j++];
+			}
+		}
+		pairs = Arrays.copyOf(pairs, count);
+	}
+
+	@Benchmark
+	public Differences calculateDifferences() {
+		return calculator.calculateDifferences(index1, index2);
+	}
+
+	@Benchmark
+	public int entriesMatch() {
+		int matches = 0;
+		for (int k = 0; k < pairs.length; k += 2) {
+			if (calculator.entriesMatch(index1, pairs[k], index2, pairs[k + 1])) {
+				matches++;
+			}
+		}
+		return matches;
+	}
+}
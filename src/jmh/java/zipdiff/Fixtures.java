@@ -0,0 +1,180 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates the zip files the benchmarks work on. Every fixture comes in two versions,
+ * the second one has some entries changed, removed and added. The content is derived
+ * from a fixed seed, so the files are the same on every run and are only generated once.
+ */
+public final class Fixtures {
+
+	/** 20,000 entries of a few hundred bytes in 200 directories */
+	public static final String MANY_SMALL = "manySmall";
+
+	/** 200 entries of a few hundred bytes, like a small library */
+	public static final String SMALL = "small";
+
+	/** 4 entries of 16 MB each */
+	public static final String FEW_HUGE = "fewHuge";
+
+	/** an ear with 4 wars with 10 jars with 200 classes each */
+	public static final String NESTED = "nested";
+
+	private static final int MANY_SMALL_ENTRIES = 20000;
+
+	private static final int SMALL_ENTRIES = 200;
+
+	private static final int HUGE_ENTRIES = 4;
+
+	private static final int HUGE_SIZE = 16 * 1024 * 1024;
+
+	private Fixtures() {
+		// only static methods
+	}
+
+	/**
+	 * returns a fixture, generating it if it does not exist yet
+	 *
+	 * @param name name of the fixture, e. g. {@link #MANY_SMALL}
+	 * @param version 1 or 2
+	 * @return zip file
+	 * @throws IOException in case of an input/output error
+	 */
+	public static File get(String name, int version) throws IOException {
+		File dir = new File(System.getProperty("zipdiff.fixtures", new File(System.getProperty("java.io.tmpdir"), "zipdiff-jmh").getPath()));
+		File file = new File(dir, name + "-" + version + (NESTED.equals(name) ? ".ear" : ".zip"));
+		if (file.isFile()) {
+			return file;
+		}
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("cannot create " + dir);
+		}
+		File tmp = File.createTempFile(name, ".tmp", dir);
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+		try {
+			if (MANY_SMALL.equals(name)) {
+				writeManySmall(out, version, MANY_SMALL_ENTRIES);
+			} else if (SMALL.equals(name)) {
+				writeManySmall(out, version, SMALL_ENTRIES);
+			} else if (FEW_HUGE.equals(name)) {
+				writeFewHuge(out, version);
+			} else if (NESTED.equals(name)) {
+				writeNested(out, version);
+			} else {
+				throw new IllegalArgumentException("unknown fixture: " + name);
+			}
+		} finally {
+			out.close();
+		}
+		if (!tmp.renameTo(file)) {
+			tmp.delete();
+			if (!file.isFile()) {
+				throw new IOException("cannot create " + file);
+			}
+		}
+		return file;
+	}
+
+	private static void writeManySmall(OutputStream out, int version, int entries) throws IOException {
+		ZipOutputStream zos = new ZipOutputStream(out);
+		Random random = new Random(1);
+		for (int i = 0; i < entries; i++) {
+			byte[] data = text(random, 100 + random.nextInt(400));
+			// version 2 changes every 10th entry, drops 1 % and adds 1 %
+			if (version == 2 && i % 100 == 1) {
+				continue;
+			}
+			if (version == 2 && i % 10 == 0) {
+				data[0]++;
+			}
+			put(zos, "dir" + (i % 200) + "/file" + i + ".txt", data);
+			if (version == 2 && i % 100 == 2) {
+				put(zos, "dir" + (i % 200) + "/added" + i + ".txt", data);
+			}
+		}
+		zos.finish();
+	}
+
+	private static void writeFewHuge(OutputStream out, int version) throws IOException {
+		ZipOutputStream zos = new ZipOutputStream(out);
+		Random random = new Random(2);
+		for (int i = 0; i < HUGE_ENTRIES; i++) {
+			byte[] data = text(random, HUGE_SIZE);
+			if (version == 2 && i == 0) {
+				data[data.length - 1]++;
+			}
+			put(zos, "data/huge" + i + ".bin", data);
+		}
+		zos.finish();
+	}
+
+	private static void writeNested(OutputStream out, int version) throws IOException {
+		ZipOutputStream ear = new ZipOutputStream(out);
+		Random random = new Random(3);
+		for (int w = 0; w < 4; w++) {
+			ByteArrayOutputStream warBytes = new ByteArrayOutputStream();
+			ZipOutputStream war = new ZipOutputStream(warBytes);
+			put(war, "WEB-INF/web.xml", text(random, 2000));
+			for (int j = 0; j < 10; j++) {
+				ByteArrayOutputStream jarBytes = new ByteArrayOutputStream();
+				ZipOutputStream jar = new ZipOutputStream(jarBytes);
+				for (int c = 0; c < 200; c++) {
+					byte[] data = text(random, 500 + random.nextInt(2000));
+					if (version == 2 && w == 1 && j == 5 && c % 50 == 0) {
+						data[0]++;
+					}
+					put(jar, "com/example/module" + j + "/pkg" + (c % 10) + "/Class" + c + ".class", data);
+				}
+				jar.finish();
+				put(war, "WEB-INF/lib/module" + j + ".jar", jarBytes.toByteArray());
+			}
+			war.finish();
+			put(ear, "web" + w + ".war", warBytes.toByteArray());
+		}
+		ear.finish();
+	}
+
+	private static void put(ZipOutputStream zos, String name, byte[] data) throws IOException {
+		zos.putNextEntry(new ZipEntry(name));
+		zos.write(data);
+		zos.closeEntry();
+	}
+
+	/**
+	 * @return compressible pseudo random bytes
+	 */
+	private static byte[] text(Random random, int length) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) ('a' + random.nextInt(16));
+		}
+		return data;
+	}
+
+	/**
+	 * generates all fixtures
+	 *
+	 * @param args not used, set the system property zipdiff.fixtures to choose the directory
+	 * @throws IOException in case of an input/output error
+	 */
+	public static void main(String[] args) throws IOException {
+		for (String name : new String[] { SMALL, MANY_SMALL, FEW_HUGE, NESTED }) {
+			System.out.println(get(name, 1));
+			System.out.println(get(name, 2));
+		}
+	}
+}
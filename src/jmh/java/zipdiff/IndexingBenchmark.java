@@ -0,0 +1,68 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipFile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import zipdiff.compare.DigestAlgorithm;
+import zipdiff.index.ArchiveIndex;
+
+/**
+ * Measures how long it takes to index a zip file, without the index cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IndexingBenchmark {
+
+	@Param({ Fixtures.MANY_SMALL, Fixtures.FEW_HUGE, Fixtures.NESTED })
+	public String fixture;
+
+	/** digest algorithm of -hash, empty to compare the metadata */
+	@Param({ "", "sha-1" })
+	public String hash;
+
+	private ZipFile zipFile;
+
+	private DifferenceCalculator calculator;
+
+	@Setup
+	public void setUp() throws IOException {
+		zipFile = new ZipFile(Fixtures.get(fixture, 1));
+		calculator = new DifferenceCalculator(zipFile, zipFile);
+		if (!hash.isEmpty()) {
+			calculator.setContentDigestAlgorithm(DigestAlgorithm.forName(hash));
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		zipFile.close();
+	}
+
+	@Benchmark
+	public ArchiveIndex buildArchiveIndex() throws IOException {
+		return calculator.buildArchiveIndex(zipFile, 0);
+	}
+}
@@ -0,0 +1,84 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time from starting java -jar on the jar built by gradle until the
+ * first byte of the report of the small fixture is written, with and without the
+ * class data sharing archive built by gradle appCds. The jar and the archive are
+ * passed in the system properties zipdiff.jar and zipdiff.jsa, which gradle jmh sets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 30)
+@Fork(1)
+public class StartupBenchmark {
+
+	/** "default" only shares the classes of the JDK, "app" uses the archive of gradle appCds */
+	@Param({ "default", "app" })
+	public String cds;
+
+	private List<String> command;
+
+	@Setup
+	public void setUp() throws IOException {
+		String jar = System.getProperty("zipdiff.jar");
+		if (jar == null) {
+			throw new IllegalStateException("The system property zipdiff.jar is not set, run gradle jmh");
+		}
+		command = new ArrayList<>();
+		command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+		if ("app".equals(cds)) {
+			File archive = new File(System.getProperty("zipdiff.jsa", jar.replaceFirst("\\.jar$", ".jsa")));
+			if (!archive.isFile()) {
+				throw new IllegalStateException(archive + " does not exist, run gradle appCds");
+			}
+			command.add("-XX:SharedArchiveFile=" + archive.getPath());
+		}
+		command.addAll(Arrays.asList("-jar", jar,
+				Fixtures.get(Fixtures.SMALL, 1).getPath(), Fixtures.get(Fixtures.SMALL, 2).getPath()));
+	}
+
+	@Benchmark
+	public int firstOutput() throws IOException, InterruptedException {
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		InputStream in = process.getInputStream();
+		try {
+			int first = in.read();
+			if (first < 0) {
+				throw new IllegalStateException("zipdiff-ng wrote nothing, exit code " + process.waitFor());
+			}
+			return first;
+		} finally {
+			// the rest of the report is not part of the measurement
+			process.destroy();
+			process.waitFor();
+			in.close();
+		}
+	}
+}
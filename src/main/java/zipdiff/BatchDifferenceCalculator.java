@@ -0,0 +1,281 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff;
+
+import zipdiff.index.ArchiveIndex;
+import zipdiff.input.InputSource;
+import zipdiff.input.InputSourceFactory;
+import zipdiff.output.BuilderFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compares one baseline to many candidates. The baseline is indexed once and its
+ * index is shared by all comparisons, which run concurrently. A report is written
+ * for every candidate, and a summary with the number of differences of each.
+ */
+public class BatchDifferenceCalculator {
+
+	/** name of the summary file in the output directory */
+	public static final String SUMMARY_FILENAME = "summary.txt";
+
+	private final Logger logger = Logger.getLogger(getClass().getName());
+
+	private final String baseline;
+
+	private final List<String> candidates;
+
+	private int threads = 1;
+
+	/**
+	 * @param baseline name of the baseline, see {@link InputSourceFactory#create(String)}
+	 * @param candidates names of the inputs to compare to the baseline
+	 */
+	public BatchDifferenceCalculator(String baseline, List<String> candidates) {
+		this.baseline = baseline;
+		this.candidates = new ArrayList<>(candidates);
+	}
+
+	/**
+	 * sets the number of candidates that are compared at the same time
+	 *
+	 * @param threads number of threads, 1 compares one candidate after the other
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be at least 1: " + threads);
+		}
+		this.threads = threads;
+	}
+
+	public List<String> getCandidates() {
+		return candidates;
+	}
+
+	/**
+	 * Applies the settings of the comparison, e. g. the filter, to a DifferenceCalculator.
+	 * Called for the DifferenceCalculator that indexes the baseline and for the one of
+	 * every candidate, so they have to get the same settings.
+	 *
+	 * @param calc DifferenceCalculator to configure
+	 */
+	protected void configure(DifferenceCalculator calc) {
+		// the default settings
+	}
+
+	/**
+	 * reads the names of candidates from a manifest file, one per line. Empty lines and
+	 * lines starting with # are skipped, relative names are resolved against the directory
+	 * of the manifest.
+	 *
+	 * @param manifest manifest file
+	 * @return names of the candidates
+	 * @throws IOException in case of an input/output error
+	 */
+	public static List<String> readManifest(File manifest) throws IOException {
+		List<String> names = new ArrayList<>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), StandardCharsets.UTF_8));
+		try {
+			String line = reader.readLine();
+			while (line != null) {
+				line = line.trim();
+				if (!line.isEmpty() && !line.startsWith("#")) {
+					File file = new File(line);
+					if (!file.isAbsolute() && manifest.getAbsoluteFile().getParentFile() != null) {
+						file = new File(manifest.getAbsoluteFile().getParentFile(), line);
+					}
+					names.add(file.getPath());
+				}
+				line = reader.readLine();
+			}
+		} finally {
+			reader.close();
+		}
+		return names;
+	}
+
+	/**
+	 * Compares every candidate to the baseline and writes the reports and the summary.
+	 * A candidate that cannot be compared does not stop the others, it is listed as failed.
+	 *
+	 * @param outputDirectory directory to write the reports and the summary to
+	 * @param format output format: text, xml, html, htmltree, zip, json or ndjson
+	 * @param numberOfOutputPrefixesToSkip number of directory prefixes to skip in the reports
+	 * @return the result of every candidate, in the order of the candidates
+	 * @throws IOException if the baseline cannot be indexed, or, after the summary has been
+	 * written, if a candidate could not be compared
+	 */
+	public List<Result> run(File outputDirectory, String format, final int numberOfOutputPrefixesToSkip) throws IOException {
+		if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+			throw new IOException("cannot create " + outputDirectory);
+		}
+
+		final InputSource base = InputSourceFactory.create(baseline);
+		try {
+			DifferenceCalculator indexer = new DifferenceCalculator(base, base);
+			configure(indexer);
+			final ArchiveIndex index = indexer.buildIndex1();
+			// sorted once here instead of by the first comparisons at the same time
+			index.sortedOrder();
+
+			List<Future<Result>> futures = new ArrayList<>();
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+			try {
+				for (int i = 0; i < candidates.size(); i++) {
+					final String candidate = candidates.get(i);
+					final File report = new File(outputDirectory, reportName(i, candidate, format));
+					futures.add(pool.submit(new Callable<Result>() {
+						@Override
+						public Result call() throws IOException {
+							return compare(base, index, candidate, report, format, numberOfOutputPrefixesToSkip);
+						}
+					}));
+				}
+
+				List<Result> results = new ArrayList<>();
+				int failed = 0;
+				for (int i = 0; i < futures.size(); i++) {
+					try {
+						results.add(futures.get(i).get());
+					} catch (ExecutionException e) {
+						logger.log(Level.WARNING, "cannot compare " + candidates.get(i), e.getCause());
+						results.add(new Result(candidates.get(i), null, e.getCause()));
+						failed++;
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("interrupted while comparing " + candidates.get(i));
+					}
+				}
+
+				File summary = new File(outputDirectory, SUMMARY_FILENAME);
+				writeSummary(summary, results);
+				if (failed > 0) {
+					throw new IOException(failed + " of " + candidates.size() + " candidates could not be compared, see " + summary);
+				}
+				return results;
+			} finally {
+				pool.shutdownNow();
+			}
+		} finally {
+			base.close();
+		}
+	}
+
+	private Result compare(InputSource base, ArchiveIndex index, String candidate, File report, String format, int numberOfOutputPrefixesToSkip) throws IOException {
+		DifferenceCalculator calc = new DifferenceCalculator(base, InputSourceFactory.create(candidate));
+		configure(calc);
+		// the candidates are compared in parallel instead
+		calc.setParallelism(1);
+		calc.setIndex1(index);
+		Differences d = calc.getDifferences();
+		BuilderFactory.create(report.getPath(), format).build(report.getPath(), numberOfOutputPrefixesToSkip, d);
+		return new Result(candidate, report, d);
+	}
+
+	/**
+	 * @return name of the report of a candidate, numbered so that candidates with the
+	 * same file name in different directories do not overwrite each other
+	 */
+	private static String reportName(int i, String candidate, String format) {
+		String name = new File(candidate.replace('!', '_')).getName();
+		String extension = "text".equals(format) ? "txt" : "htmltree".equals(format) ? "html" : format;
+		return String.format("%02d-%s.%s", i + 1, name, extension);
+	}
+
+	/**
+	 * writes one line per candidate with the number of added, removed and changed entries
+	 */
+	private void writeSummary(File file, List<Result> results) throws IOException {
+		PrintWriter pw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+		try {
+			pw.println("baseline\t" + baseline);
+			pw.println("candidate\tadded\tremoved\tchanged\ttotal\treport");
+			for (Result result : results) {
+				if (result.getError() != null) {
+					pw.println(result.getCandidate() + "\tfailed: " + result.getError());
+				} else {
+					pw.println(result.getCandidate() + "\t" + result.getAdded() + "\t" + result.getRemoved() + "\t"
+							+ result.getChanged() + "\t" + result.getTotal() + "\t" + result.getReport().getName());
+				}
+			}
+		} finally {
+			pw.close();
+		}
+		if (pw.checkError()) {
+			throw new IOException("cannot write " + file);
+		}
+	}
+
+	/**
+	 * the number of differences between the baseline and one candidate
+	 */
+	public static class Result {
+		private final String candidate;
+		private final File report;
+		private final int added;
+		private final int removed;
+		private final int changed;
+		private final String error;
+
+		Result(String candidate, File report, Differences d) {
+			this.candidate = candidate;
+			this.report = report;
+			this.added = d.getAdded().size();
+			this.removed = d.getRemoved().size();
+			this.changed = d.getChanged().size();
+			this.error = null;
+		}
+
+		Result(String candidate, File report, Throwable error) {
+			this.candidate = candidate;
+			this.report = report;
+			this.added = 0;
+			this.removed = 0;
+			this.changed = 0;
+			this.error = error.toString();
+		}
+
+		public String getCandidate() {
+			return candidate;
+		}
+
+		/** @return the report file, null if the candidate could not be compared */
+		public File getReport() {
+			return report;
+		}
+
+		public int getAdded() {
+			return added;
+		}
+
+		public int getRemoved() {
+			return removed;
+		}
+
+		public int getChanged() {
+			return changed;
+		}
+
+		public int getTotal() {
+			return added + removed + changed;
+		}
+
+		/** @return why the candidate could not be compared, null if it was compared */
+		public String getError() {
+			return error;
+		}
+	}
+}
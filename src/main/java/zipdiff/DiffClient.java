@@ -0,0 +1,138 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Takes the same arguments as {@link Main}, but has the comparison run by a
+ * {@link DiffServer} and writes what it sends. It only needs the classes of the JDK that
+ * every process loads anyway, so it starts much faster than {@link Main}. If no server
+ * is listening, the comparison is run in this process.
+ * <p>
+ * The port is taken from the system property zipdiff.port, then from the environment
+ * variable ZIPDIFF_PORT, else {@link DiffServer#DEFAULT_PORT} is used. The request
+ * carries the token the server wrote to {@link #tokenFile(int)}, so only the user who
+ * started the server can use it.
+ */
+public class DiffClient {
+
+	/**
+	 * sends the arguments to the server and writes its output
+	 *
+	 * @param port port the server listens on
+	 * @param args arguments as they would be given to {@link Main}
+	 * @param out receives what {@link Main} would write to stdout
+	 * @param err receives what {@link Main} would write to stderr
+	 * @return the exit code
+	 * @throws ConnectException if no server is listening or its token file is missing
+	 * @throws IOException in case of an input/output error
+	 */
+	public static int run(int port, String[] args, OutputStream out, OutputStream err) throws IOException {
+		File tokenFile = tokenFile(port);
+		if (!tokenFile.isFile()) {
+			throw new ConnectException("no server token in " + tokenFile);
+		}
+		String token = new String(Files.readAllBytes(tokenFile.toPath()), StandardCharsets.US_ASCII).trim();
+
+		ByteArrayOutputStream request = new ByteArrayOutputStream();
+		request.write(new File("").getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+		for (String arg : args) {
+			request.write(0);
+			request.write(arg.getBytes(StandardCharsets.UTF_8));
+		}
+
+		HttpURLConnection connection = (HttpURLConnection) new URL("http", "127.0.0.1", port, DiffServer.PATH).openConnection();
+		connection.setRequestMethod("POST");
+		connection.setRequestProperty("Content-Type", DiffServer.CONTENT_TYPE);
+		connection.setRequestProperty(DiffServer.TOKEN_HEADER, token);
+		connection.setDoOutput(true);
+		connection.setFixedLengthStreamingMode(request.size());
+		OutputStream body = connection.getOutputStream();
+		request.writeTo(body);
+		body.close();
+		if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+			throw new IOException("Server answered " + connection.getResponseCode() + " " + connection.getResponseMessage());
+		}
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+		try {
+			byte[] buffer = new byte[8192];
+			while (true) {
+				int type = in.read();
+				if (type < 0) {
+					throw new EOFException("The server closed the connection before the comparison ended");
+				}
+				int length = in.readInt();
+				if (type == DiffServer.FRAME_EXIT) {
+					return in.readInt();
+				}
+				OutputStream target = type == DiffServer.FRAME_STDERR ? err : out;
+				while (length > 0) {
+					int count = in.read(buffer, 0, Math.min(length, buffer.length));
+					if (count < 0) {
+						throw new EOFException("The server closed the connection in the middle of a frame");
+					}
+					target.write(buffer, 0, count);
+					length -= count;
+				}
+				target.flush();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * returns the file with the token of the server on a port: zipdiff-server-port.token
+	 * in the directory named by the system property zipdiff.tokenDir, by default
+	 * .zipdiff-ng in the home directory
+	 *
+	 * @param port port of the server
+	 * @return the token file
+	 */
+	public static File tokenFile(int port) {
+		String directory = System.getProperty("zipdiff.tokenDir");
+		if (directory == null) {
+			directory = new File(System.getProperty("user.home"), ".zipdiff-ng").getPath();
+		}
+		return new File(directory, "zipdiff-server-" + port + ".token");
+	}
+
+	/**
+	 * @return the port the server is expected to listen on
+	 */
+	static int port() {
+		String port = System.getProperty("zipdiff.port");
+		if (port == null) {
+			port = System.getenv("ZIPDIFF_PORT");
+		}
+		return port == null ? DiffServer.DEFAULT_PORT : Integer.parseInt(port.trim());
+	}
+
+	public static void main(String[] args) throws Exception {
+        int exitCode;
+        try {
+            exitCode = run(port(), args, System.out, System.err);
+        } catch (ConnectException e) {
+            Main.main(args);
+            return;
+        }
+        System.out.flush();
+        System.exit(exitCode);
+	}
+}
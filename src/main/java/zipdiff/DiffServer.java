@@ -0,0 +1,408 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.ParameterException;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import zipdiff.compare.ClassComparator;
+import zipdiff.index.IndexCache;
+import zipdiff.util.commandline.CommandLineArgs;
+import zipdiff.util.commandline.ServerArgs;
+
+/**
+ * Runs comparisons for {@link DiffClient} in a JVM that stays up, so that a comparison
+ * neither pays for starting the JVM nor for indexing files that were compared before:
+ * the indexes are kept in an {@link IndexCache} in memory, and the signatures of class
+ * files in one {@link ClassComparator} per mode. A bounded number of requests is served
+ * at once, further requests wait for a free thread.
+ * <p>
+ * The server only listens on the loopback interface. As any local process, and any web
+ * page in a local browser, can connect to it, it writes a random token to a file only
+ * its owner can read, see {@link DiffClient#tokenFile(int)}, and only serves requests
+ * that carry the token in the {@link #TOKEN_HEADER} header, have the content type
+ * application/octet-stream and no Origin header, which browsers always send.
+ * A request is a POST to /diff whose body holds the working directory of the client followed by its arguments, separated
+ * by '\0'. The response is a sequence of frames, each a type byte followed by a length
+ * and as many bytes: {@link #FRAME_STDOUT} and {@link #FRAME_STDERR} carry output as it
+ * is written, {@link #FRAME_EXIT} the exit code and ends the response.
+ */
+public class DiffServer {
+
+	public static final int DEFAULT_PORT = 7427;
+
+	public static final String PATH = "/diff";
+
+	public static final byte FRAME_STDOUT = 'o';
+
+	public static final byte FRAME_STDERR = 'e';
+
+	public static final byte FRAME_EXIT = 'x';
+
+	public static final String TOKEN_HEADER = "X-Zipdiff-Token";
+
+	public static final String CONTENT_TYPE = "application/octet-stream";
+
+	/** seconds stop waits for the requests being served */
+	private static final int STOP_DELAY = 10;
+
+	private static final Logger logger = Logger.getLogger(DiffServer.class.getName());
+
+	private final int port;
+
+	private final int threads;
+
+	private final IndexCache indexCache;
+
+	private ClassComparator apiComparator;
+
+	private ClassComparator bodyComparator;
+
+	private HttpServer server;
+
+	private ExecutorService executor;
+
+	private byte[] token;
+
+	private File tokenFile;
+
+	/**
+	 * @param port port to listen on, 0 for any free port
+	 * @param threads number of requests served at once
+	 * @param indexCache cache of the indexes shared by all requests
+	 */
+	public DiffServer(int port, int threads, IndexCache indexCache) {
+		this.port = port;
+		this.threads = threads;
+		this.indexCache = indexCache;
+	}
+
+	/**
+	 * starts listening, the requests are served by other threads. The token the
+	 * requests have to carry is written to {@link DiffClient#tokenFile(int)}.
+	 *
+	 * @throws IOException if the port cannot be bound or the token cannot be written
+	 */
+	public void start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		try {
+			writeToken(DiffClient.tokenFile(getPort()));
+		} catch (IOException e) {
+			server.stop(0);
+			throw e;
+		}
+		executor = Executors.newFixedThreadPool(threads);
+		server.setExecutor(executor);
+		server.createContext(PATH, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				serve(exchange);
+			}
+		});
+		server.start();
+	}
+
+	/**
+	 * creates a new token and writes it to a file that only the owner can read
+	 */
+	private void writeToken(File file) throws IOException {
+		byte[] random = new byte[32];
+		new SecureRandom().nextBytes(random);
+		StringBuilder hex = new StringBuilder();
+		for (byte b : random) {
+			hex.append(String.format("%02x", b & 0xff));
+		}
+		token = hex.toString().getBytes(StandardCharsets.US_ASCII);
+
+		Path path = file.toPath();
+		Path directory = path.getParent();
+		boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+		if (!Files.isDirectory(directory)) {
+			if (posix) {
+				Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+			} else {
+				Files.createDirectories(directory);
+			}
+		}
+		// a file left behind by a server that was killed may have been replaced by anyone
+		Files.deleteIfExists(path);
+		if (posix) {
+			Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		} else {
+			Files.createFile(path);
+			file.setReadable(false, false);
+			file.setWritable(false, false);
+			file.setReadable(true, true);
+			file.setWritable(true, true);
+		}
+		Files.write(path, token);
+		tokenFile = file;
+	}
+
+	/**
+	 * stops listening, waits up to ten seconds for the requests being served to finish
+	 * and deletes the token file
+	 */
+	public void stop() {
+		// new requests are refused by the executor; HttpServer.stop(delay) would always wait
+		// the whole delay on Java 8, so the requests being served are awaited here instead
+		executor.shutdown();
+		try {
+			executor.awaitTermination(STOP_DELAY, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		server.stop(0);
+		if (tokenFile != null && !tokenFile.delete()) {
+			logger.log(Level.WARNING, "cannot delete {0}", tokenFile);
+		}
+		tokenFile = null;
+	}
+
+	/**
+	 * @return the port the server listens on
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * @return the cache of indexes shared by all requests
+	 */
+	public IndexCache getIndexCache() {
+		return indexCache;
+	}
+
+	private void serve(HttpExchange exchange) throws IOException {
+		try {
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			Headers headers = exchange.getRequestHeaders();
+			String requestToken = headers.getFirst(TOKEN_HEADER);
+			if (headers.containsKey("Origin") || requestToken == null
+					|| !MessageDigest.isEqual(token, requestToken.getBytes(StandardCharsets.US_ASCII))) {
+				exchange.sendResponseHeaders(403, -1);
+				return;
+			}
+			if (!CONTENT_TYPE.equals(headers.getFirst("Content-Type"))) {
+				exchange.sendResponseHeaders(415, -1);
+				return;
+			}
+			List<String> request = readRequest(exchange.getRequestBody());
+			exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+			exchange.sendResponseHeaders(200, 0);
+			DataOutputStream response = new DataOutputStream(exchange.getResponseBody());
+			FrameOutputStream stdout = new FrameOutputStream(response, FRAME_STDOUT);
+			PrintStream stderr = new PrintStream(new FrameOutputStream(response, FRAME_STDERR), false, "UTF-8");
+			int exitCode = 0;
+			try {
+				File directory = new File(request.get(0));
+				String[] args = request.subList(1, request.size()).toArray(new String[0]);
+				exitCode = run(directory, args, stdout, stderr);
+			} catch (ParameterException e) {
+				stdout.flush();
+				writeFrame(response, FRAME_STDERR, (e.getMessage() + "\n").getBytes(StandardCharsets.UTF_8));
+				exitCode = 2;
+			} catch (Exception e) {
+				logger.log(Level.FINE, "Request failed", e);
+				stdout.flush();
+				writeFrame(response, FRAME_STDERR, (e + "\n").getBytes(StandardCharsets.UTF_8));
+				exitCode = 1;
+			}
+			response.writeByte(FRAME_EXIT);
+			response.writeInt(4);
+			response.writeInt(exitCode);
+			response.flush();
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * runs one comparison like {@link Main} would
+	 *
+	 * @return the exit code
+	 */
+	private int run(File directory, String[] args, OutputStream stdout, PrintStream stderr) throws IOException {
+		CommandLineArgs cliArgs = new CommandLineArgs();
+		JCommander jCommander = new JCommander(cliArgs, args);
+		if (cliArgs.isHelp()) {
+			StringBuilder usage = new StringBuilder();
+			jCommander.setProgramName("zipdiff-ng");
+			jCommander.usage(usage);
+			stdout.write(usage.toString().getBytes(StandardCharsets.UTF_8));
+			stdout.flush();
+			return 0;
+		}
+		cliArgs.resolveFiles(directory);
+		Main.run(cliArgs, classComparator(cliArgs.getClassDiffMode()), indexCache, stdout, stderr);
+		stdout.flush();
+		stderr.flush();
+		return 0;
+	}
+
+	/**
+	 * @return the comparator of class files for the mode, shared by all requests
+	 */
+	private synchronized ClassComparator classComparator(String mode) {
+		if (mode == null) {
+			return null;
+		}
+		if ("body".equals(mode)) {
+			if (bodyComparator == null) {
+				bodyComparator = new ClassComparator(true, ClassComparator.DEFAULT_CACHE_SIZE);
+			}
+			return bodyComparator;
+		}
+		if (apiComparator == null) {
+			apiComparator = new ClassComparator(false, ClassComparator.DEFAULT_CACHE_SIZE);
+		}
+		return apiComparator;
+	}
+
+	/**
+	 * @return the working directory of the client followed by its arguments
+	 */
+	private static List<String> readRequest(InputStream in) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int count = in.read(buffer);
+		while (count > -1) {
+			body.write(buffer, 0, count);
+			count = in.read(buffer);
+		}
+		List<String> request = new ArrayList<>(Arrays.asList(new String(body.toByteArray(), StandardCharsets.UTF_8).split("\0", -1)));
+		if (request.get(0).isEmpty()) {
+			request.set(0, ".");
+		}
+		return request;
+	}
+
+	private static void writeFrame(DataOutputStream out, byte type, byte[] data) throws IOException {
+		out.writeByte(type);
+		out.writeInt(data.length);
+		out.write(data);
+	}
+
+	/**
+	 * Buffers output and writes it as frames of one type. Closing it only flushes it,
+	 * as the frame that ends the response still has to follow.
+	 */
+	private static class FrameOutputStream extends OutputStream {
+
+		private final DataOutputStream out;
+
+		private final byte type;
+
+		private final byte[] buffer = new byte[8192];
+
+		private int count;
+
+		FrameOutputStream(DataOutputStream out, byte type) {
+			this.out = out;
+			this.type = type;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (count == buffer.length) {
+				writeBuffer();
+			}
+			buffer[count++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len >= buffer.length) {
+				writeBuffer();
+				out.writeByte(type);
+				out.writeInt(len);
+				out.write(b, off, len);
+				return;
+			}
+			if (len > buffer.length - count) {
+				writeBuffer();
+			}
+			System.arraycopy(b, off, buffer, count, len);
+			count += len;
+		}
+
+		private void writeBuffer() throws IOException {
+			if (count > 0) {
+				out.writeByte(type);
+				out.writeInt(count);
+				out.write(buffer, 0, count);
+				count = 0;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			writeBuffer();
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+        ServerArgs serverArgs = new ServerArgs();
+        JCommander jCommander = new JCommander(serverArgs, args);
+
+        if (serverArgs.isHelp()) {
+            jCommander.setProgramName("zipdiff-ng server");
+            jCommander.usage();
+            return;
+        }
+
+        File cacheDir = serverArgs.getCacheDir() == null ? null : new File(serverArgs.getCacheDir());
+        IndexCache indexCache = new IndexCache(cacheDir, serverArgs.getCacheSize() * 1024L * 1024L,
+                serverArgs.getMemoryCacheSize() * 1024L * 1024L);
+        final DiffServer server = new DiffServer(serverArgs.getPort(), serverArgs.getThreads(), indexCache);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                server.stop();
+            }
+        });
+        logger.info("Listening on " + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getPort());
+	}
+}
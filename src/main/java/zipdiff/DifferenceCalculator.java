@@ -5,19 +5,45 @@
  */
 package zipdiff;
 
+import zipdiff.compare.ClassComparator;
+import zipdiff.compare.ClassSignature;
+import zipdiff.compare.ContentDiffer;
+import zipdiff.compare.ContentDigester;
+import zipdiff.compare.DigestAlgorithm;
+import zipdiff.compare.Normalizer;
+import zipdiff.compare.NormalizerRegistry;
+import zipdiff.compare.TierCounts;
+import zipdiff.index.ArchiveIndex;
+import zipdiff.index.IndexCache;
+import zipdiff.input.InputSource;
+import zipdiff.input.InputSourceFactory;
+import zipdiff.input.ZipInputSource;
+import zipdiff.jfr.ArchiveOpenEvent;
+import zipdiff.jfr.ComparisonEvent;
+import zipdiff.jfr.EntryHashEvent;
+import zipdiff.jfr.Events;
+import zipdiff.jfr.NestedArchiveEvent;
 import zipdiff.util.StringUtil;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 /**
- * Checks and compiles differences between two zip files.
+ * Checks and compiles differences between two zip files, directory trees
+ * or embedded zip files, see {@link InputSource}.
  * It also has the ability to exclude entries from the comparison
  * based on a regular expression.
  *
@@ -25,11 +51,15 @@ import java.util.zip.ZipInputStream;
  */
 public class DifferenceCalculator {
 
+	private static final byte[] LOCAL_FILE_HEADER_SIGNATURE = { 'P', 'K', 3, 4 };
+
+	private static final byte[] NO_DIGEST = new byte[0];
+
 	private final Logger logger = Logger.getLogger(getClass().getName());
 
-	private final ZipFile file1;
+	private final InputSource file1;
 
-	private final ZipFile file2;
+	private final InputSource file2;
 
 	private int numberOfPrefixesToSkip1 = 0;
 
@@ -39,14 +69,57 @@ public class DifferenceCalculator {
 
 	private boolean compareCRCValues = true;
 
+	private ContentDigester contentDigester;
+
+	private TierCounts tierCounts;
+
+	/** the inputs whose entries are being compared, to read entries on demand */
+	private InputSource archive1;
+
+	private InputSource archive2;
+
+	private int parallelism = 1;
+
+	private IndexCache indexCache;
+
+	/** index of the first input shared with other DifferenceCalculators, the input is not closed */
+	private ArchiveIndex sharedIndex1;
+
+	/** index of the second input shared with other DifferenceCalculators, the input is not closed */
+	private ArchiveIndex sharedIndex2;
+
+	private String[] nestedArchiveExtensions = { ".jar", ".war", ".ear", ".zip", ".aar" };
+
+	/** names of the changed entries that are compared line by line, null for none */
+	private Pattern contentDiffPattern;
+
+	private int contentDiffMaxSize = ContentDiffer.DEFAULT_MAX_SIZE;
+
+	private ClassComparator classComparator;
+
+	/** how the classes compared last by entriesMatch differ, null if they were not parsed */
+	private ClassComparator.Change classChange;
+
+	/** normalizers of the changed entries, null to compare the content as it is */
+	private NormalizerRegistry normalizers;
+
+	/** digests normalized content if the content digest is not enabled */
+	private ContentDigester normalizedDigester;
+
+	private boolean detectMoves = false;
+
+	/** collects where the time goes, null to collect nothing */
+	private Statistics statistics;
+
     private Pattern fileFilterPattern;
 
 	/**
-	 * Constructor taking 2 filenames to compare
+	 * Constructor taking 2 filenames to compare, each the name of a zip file, a directory
+	 * or an embedded zip file such as "app.ear!web.war"
 	 * @throws java.io.IOException
 	 */
 	public DifferenceCalculator(String filename1, String filename2) throws java.io.IOException {
-		this(new File(filename1), new File(filename2));
+		this(InputSourceFactory.create(filename1), InputSourceFactory.create(filename2));
 	}
 
 	/**
@@ -54,15 +127,22 @@ public class DifferenceCalculator {
 	 * @throws java.io.IOException
 	 */
 	public DifferenceCalculator(File f1, File f2) throws java.io.IOException {
-		this(new ZipFile(f1), new ZipFile(f2));
+		this(f1.getPath(), f2.getPath());
 	}
 
 	/**
 	 * Constructor taking 2 ZipFiles to compare
 	 */
 	public DifferenceCalculator(ZipFile zf1, ZipFile zf2) {
-		file1 = zf1;
-		file2 = zf2;
+		this(new ZipInputSource(zf1), new ZipInputSource(zf2));
+	}
+
+	/**
+	 * Constructor taking 2 inputs to compare
+	 */
+	public DifferenceCalculator(InputSource source1, InputSource source2) {
+		file1 = source1;
+		file2 = source2;
 	}
 
     public void setFilenameFilter(String regex) {
@@ -81,7 +161,7 @@ public class DifferenceCalculator {
 		} else {
             boolean ignore = !fileFilterPattern.matcher(entryName).matches();
 			if (ignore) {
-				logger.log(Level.FINEST, String.format("%s does not match filter, excluding", entryName));
+				logger.log(Level.FINEST, "{0} does not match filter, excluding", entryName);
 			}
 			return ignore;
 		}
@@ -102,6 +182,23 @@ public class DifferenceCalculator {
 		return compareCRCValues;
 	}
 
+	/**
+	 * Compare entries by their uncompressed content instead of their sizes and CRCs.
+	 * Entries are only read if their size and CRC cannot decide whether they match,
+	 * embedded zip files are digested from the names and digests of their entries.
+	 * @param algorithm digest algorithm, or null to compare the entry metadata
+	 */
+	public void setContentDigestAlgorithm(DigestAlgorithm algorithm) {
+		contentDigester = algorithm == null ? null : new ContentDigester(algorithm);
+	}
+
+	/**
+	 * @return the algorithm used to compare the content of entries, null if the metadata is compared
+	 */
+	public DigestAlgorithm getContentDigestAlgorithm() {
+		return contentDigester == null ? null : contentDigester.getAlgorithm();
+	}
+
 	/**
 	 * sets the number of directory prefixes to skip in the first file
 	 *
@@ -121,171 +218,1169 @@ public class DifferenceCalculator {
 	}
 
 	/**
-	 * Opens the ZipFile and builds up a map of all the entries. The key is the name of
-	 * the entry and the value is the ZipEntry itself.
-	 * @param zf The ZipFile for which to build up the map of ZipEntries
+	 * sets the extensions of entries that are checked for embedded zip files. Without any
+	 * extension the data of every entry is checked.
+	 *
+	 * @param extensions file name extensions such as ".jar", compared case insensitively
+	 */
+	public void setNestedArchiveExtensions(String... extensions) {
+		List<String> list = new ArrayList<>();
+		for (String extension : extensions) {
+			extension = extension.trim();
+			if (!extension.isEmpty()) {
+				list.add(extension.startsWith(".") ? extension : "." + extension);
+			}
+		}
+		nestedArchiveExtensions = list.toArray(new String[list.size()]);
+	}
+
+	/**
+	 * sets the names of the changed entries whose content is compared line by line. The
+	 * differences are reported as unified diffs after all other differences, see
+	 * {@link DifferenceListener#contentDiff(String, String)}.
+	 *
+	 * @param regex regex matched against the full name of an entry, null to compare no content
+	 */
+	public void setContentDiffPattern(String regex) {
+		contentDiffPattern = regex != null ? Pattern.compile(regex) : null;
+	}
+
+	/**
+	 * @param maxSize entries with more bytes are not compared line by line, so that at
+	 * most twice this size is kept in memory per thread
+	 */
+	public void setContentDiffMaxSize(int maxSize) {
+		this.contentDiffMaxSize = maxSize;
+	}
+
+	/**
+	 * Compares changed class files by their structure. Class files that only differ in
+	 * debug information, the order of their constant pool or of their members are not
+	 * reported; the others are reported with the kind of change, api or behavioral.
+	 *
+	 * @param classComparator comparator, which may be shared to share its cache, or null
+	 * to compare class files like other entries
+	 */
+	public void setClassComparator(ClassComparator classComparator) {
+		this.classComparator = classComparator;
+	}
+
+	/**
+	 * Normalizes entries that differ before comparing them again, so that entries which
+	 * only differ in noise such as the time of the build are not reported, see
+	 * {@link NormalizerRegistry#withDefaults()}.
+	 *
+	 * @param normalizers normalizers by entry name, or null to compare entries as they are
+	 */
+	public void setNormalizers(NormalizerRegistry normalizers) {
+		this.normalizers = normalizers;
+		if (normalizers != null && normalizedDigester == null) {
+			normalizedDigester = new ContentDigester(DigestAlgorithm.SHA_1);
+		}
+	}
+
+	/**
+	 * Reports an entry that is only in the first input as moved to an entry that is only
+	 * in the second input if both have the same size and CRC, and the same digest if
+	 * the content is compared, see {@link DifferenceListener#fileMoved(String, String, ZipEntry, ZipEntry)}.
+	 * The removed and added entries are then reported after the changed ones.
+	 *
+	 * @param detectMoves true to detect moved entries, false to report them as removed and added
+	 */
+	public void setDetectMoves(boolean detectMoves) {
+		this.detectMoves = detectMoves;
+	}
+
+	/**
+	 * @return true if moved entries are detected
+	 */
+	public boolean isDetectingMoves() {
+		return detectMoves;
+	}
+
+	/**
+	 * sets the cache that keeps the indexes of zip files between runs, so that an
+	 * unchanged zip file does not have to be indexed again.
+	 *
+	 * @param indexCache cache, or null to always index both zip files
+	 */
+	public void setIndexCache(IndexCache indexCache) {
+		this.indexCache = indexCache;
+	}
+
+	/**
+	 * Collects the time spent in each phase, the entries indexed and the bytes read
+	 * into the statistics. The same statistics may be given to several calculators.
+	 *
+	 * @param statistics statistics to add to, or null to collect none
+	 */
+	public void setStatistics(Statistics statistics) {
+		this.statistics = statistics;
+	}
+
+	/**
+	 * @return the statistics collected, null if none are
+	 */
+	public Statistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Builds the index of the first input with the current settings, so that it can be
+	 * shared by several DifferenceCalculators that compare the same first input to
+	 * different second inputs, see {@link #setIndex1(ArchiveIndex)}. The first input
+	 * is left open.
+	 *
+	 * @return index of the first input
+	 * @throws java.io.IOException
+	 */
+	public ArchiveIndex buildIndex1() throws java.io.IOException {
+		return parallelism > 1 ? buildArchiveIndexInPool(file1, numberOfPrefixesToSkip1) : indexInput(file1, numberOfPrefixesToSkip1);
+	}
+
+	/**
+	 * Uses an index of the first input built by {@link #buildIndex1()}, with the same
+	 * settings, instead of indexing it again. The first input is then only read to compare
+	 * content and is not closed, as it is shared as well.
+	 *
+	 * @param index1 index of the first input, or null to index it as usual
+	 */
+	public void setIndex1(ArchiveIndex index1) {
+		this.sharedIndex1 = index1;
+	}
+
+	/**
+	 * Uses an index of the second input instead of indexing it again, like
+	 * {@link #setIndex1(ArchiveIndex)}. The second input is not closed either.
+	 *
+	 * @param index2 index of the second input, or null to index it as usual
+	 */
+	public void setIndex2(ArchiveIndex index2) {
+		this.sharedIndex2 = index2;
+	}
+
+	/**
+	 * sets the number of threads used to index the two archives. With a value
+	 * greater than 1 both archives are indexed at the same time and embedded
+	 * archives are indexed in parallel on a pool of that size.
+	 *
+	 * @param parallelism number of indexing threads, 1 indexes serially
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @return the number of threads used to index the archives
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * @see #buildArchiveIndex(InputSource, int)
+	 */
+	protected ArchiveIndex buildArchiveIndex(ZipFile zf, int number) throws java.io.IOException {
+		return buildArchiveIndex(new ZipInputSource(zf), number);
+	}
+
+	/**
+	 * Builds up the index of all the entries of an input. The entries of a ZipFile are taken
+	 * from the central directory, only embedded zip files have their data read. The input is
+	 * left open, so that entries can be digested later on if their content is compared.
+	 * @param source The input for which to build up the index
 	 * @param number of directory prefixes to skip
-	 * @return The map containing all the ZipEntries. The key being the name of the ZipEntry.
+	 * @return The index of all the entries, including those of embedded zip files
 	 * @throws java.io.IOException
 	 */
-	protected Map<String,ZipEntry> buildZipEntryMap(ZipFile zf, int number) throws java.io.IOException {
-		Map<String,ZipEntry> zipEntryMap = new HashMap<>();
-		try {
-			Enumeration entries = zf.entries();
-			while (entries.hasMoreElements()) {
-				ZipEntry entry = (ZipEntry) entries.nextElement();
-				InputStream is = null;
+	protected ArchiveIndex buildArchiveIndex(InputSource source, int number) throws java.io.IOException {
+		ArchiveIndex.Builder index = newIndexBuilder();
+		for (ZipEntry entry : source.entries()) {
+			int i = addZipEntry(ArchiveIndex.NO_PARENT, entry, index, number);
+			if (i >= 0 && isNestedArchiveCandidate(entry.getName(), entry)) {
+				long started = statistics != null ? System.nanoTime() : 0;
+				long allocated = statistics != null ? statistics.allocatedBytes() : 0;
+				InputStream is = source.getInputStream(entry);
 				try {
-					is = zf.getInputStream(entry);
-					processZipEntry("", entry, is, zipEntryMap, number);
+					processEntryData(i, entry, is, index, false);
 				} finally {
-					if (is != null) {
-						is.close();
-					}
+					is.close();
+				}
+				if (statistics != null) {
+					statistics.phase(Statistics.Phase.NESTED, started, allocated);
+				}
+			}
+		}
+
+		return index.build();
+	}
+
+	/**
+	 * Same as {@link #buildArchiveIndex(InputSource, int)} but every embedded ZipFile is indexed
+	 * as a separate task. Must be called from a thread of a ForkJoinPool.
+	 * @param source The input for which to build up the index
+	 * @param number of directory prefixes to skip
+	 * @return The index of all the entries, including those of embedded zip files
+	 * @throws java.io.IOException
+	 */
+	protected ArchiveIndex buildArchiveIndexInParallel(final InputSource source, int number) throws java.io.IOException {
+		// the parts are appended in archive order so that duplicate names resolve as in the serial path.
+		// Every part of entries of the ZipFile itself is followed by the embedded zip file ending it.
+		List<Future<ArchiveIndex.Builder>> parts = new ArrayList<>();
+		try {
+			ArchiveIndex.Builder current = newIndexBuilder();
+			for (final ZipEntry entry : source.entries()) {
+				int i = addZipEntry(ArchiveIndex.NO_PARENT, entry, current, number);
+				if (i >= 0 && isNestedArchiveCandidate(entry.getName(), entry)) {
+					parts.add(CompletableFuture.completedFuture(current));
+					current = newIndexBuilder();
+
+					parts.add(ForkJoinTask.adapt(new Callable<ArchiveIndex.Builder>() {
+						@Override
+						public ArchiveIndex.Builder call() throws IOException {
+							long started = statistics != null ? System.nanoTime() : 0;
+							long allocated = statistics != null ? statistics.allocatedBytes() : 0;
+							ArchiveIndex.Builder embedded = newIndexBuilder();
+							InputStream is = new BufferedInputStream(source.getInputStream(entry));
+							try {
+								if (isZipStream(is)) {
+									embedded.setRoot(indexEmbeddedZipFile(entry.getName(), ArchiveIndex.NO_PARENT, is, embedded));
+								}
+							} finally {
+								is.close();
+							}
+							if (statistics != null) {
+								statistics.phase(Statistics.Phase.NESTED, started, allocated);
+							}
+							return embedded;
+						}
+					}).fork());
 				}
 			}
+			parts.add(CompletableFuture.completedFuture(current));
+
+			ArchiveIndex.Builder index = newIndexBuilder();
+			for (int k = 0; k < parts.size(); k++) {
+				index.append(await(parts.get(k)), k % 2 == 0 ? ArchiveIndex.NO_PARENT : index.size() - 1);
+			}
+			return index.build();
 		} finally {
-			zf.close();
+			// the forked tasks read from the source, so they have to finish before it can be closed
+			for (Future<ArchiveIndex.Builder> part : parts) {
+				try {
+					part.get();
+				} catch (InterruptedException | ExecutionException | RuntimeException e) {
+					// already reported by await
+				}
+			}
 		}
+	}
 
-		return zipEntryMap;
+	/**
+	 * waits for an indexing task and unwraps the IOException it failed with, if any.
+	 */
+	private static <T> T await(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while indexing");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			// fork/join tasks wrap checked exceptions in (possibly several) plain RuntimeExceptions
+			while (cause.getClass() == RuntimeException.class && cause.getCause() != null) {
+				cause = cause.getCause();
+			}
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	private ArchiveIndex.Builder newIndexBuilder() {
+		return new ArchiveIndex.Builder(contentDigester == null ? 0 : contentDigester.getDigestLength());
 	}
 
 	/**
-	 * Will place ZipEntries for a given ZipEntry into the given Map. More ZipEntries will result
-	 * if zipEntry is itself a ZipFile. All embedded ZipFiles will be processed with their names
-	 * prefixed onto the names of their ZipEntries.
-	 * @param prefix The prefix of the ZipEntry that should be added to the key. Typically used
-	 * when processing embedded ZipFiles. The name of the embedded ZipFile would be the prefix of
-	 * all the embedded ZipEntries.
-	 * @param zipEntry The ZipEntry to place into the Map. If it is a ZipFile then all its ZipEntries
-	 * will also be placed in the Map.
+	 * Will add a given ZipEntry to the index. More entries will result if zipEntry is itself
+	 * a ZipFile, their parent is the entry of the embedded ZipFile.
+	 * @param parent The entry of the embedded ZipFile zipEntry is part of, or
+	 * {@link ArchiveIndex#NO_PARENT} for the entries of the ZipFile itself.
+	 * @param zipEntry The ZipEntry to add to the index. If it is a ZipFile then all its ZipEntries
+	 * will also be added.
 	 * @param is The InputStream of the corresponding ZipEntry.
-	 * @param zipEntryMap The Map in which to place all the ZipEntries into. The key will
-	 * be the name of the ZipEntry.
+	 * @param index The index to add all the ZipEntries to
 	 * @param prefixDirsToSkip number of directory prefixes to skip
 	 * @throws IOException
 	 */
-	protected void processZipEntry(String prefix, ZipEntry zipEntry, InputStream is, Map<String,ZipEntry> zipEntryMap, int prefixDirsToSkip) throws IOException {
-		if (ignoreThisFile(zipEntry.getName())) {
-			logger.log(Level.FINE, "ignoring file: " + zipEntry.getName());
-		} else {
-			String name = StringUtil.removeDirectoryPrefix(prefix + zipEntry.getName(), prefixDirsToSkip);
-			if ((name == null) || name.equals("")) {
-				return;
-			}
+	protected void processZipEntry(int parent, ZipEntry zipEntry, InputStream is, ArchiveIndex.Builder index, int prefixDirsToSkip) throws IOException {
+		indexZipEntry(parent, zipEntry, is, index, prefixDirsToSkip);
+	}
 
-			logger.log(Level.FINEST, "processing ZipEntry: " + name);
-			zipEntryMap.put(name, zipEntry);
+	/**
+	 * @see #processZipEntry(int, ZipEntry, InputStream, ArchiveIndex.Builder, int)
+	 * @return the entry in the index, or -1 if it was skipped
+	 */
+	private int indexZipEntry(int parent, ZipEntry zipEntry, InputStream is, ArchiveIndex.Builder index, int prefixDirsToSkip) throws IOException {
+		int i = addZipEntry(parent, zipEntry, index, prefixDirsToSkip);
+		if (i >= 0 && !zipEntry.isDirectory()
+				&& (contentDigester != null || isNestedArchiveCandidate(zipEntry.getName(), zipEntry))) {
+			processEntryData(i, zipEntry, is, index, true);
+		}
+		return i;
+	}
 
-			if (!zipEntry.isDirectory() && isZipFile(name)) {
-				processEmbeddedZipFile(name + "!", is, zipEntryMap);
+	/**
+	 * Adds a single ZipEntry to the index unless it is filtered out.
+	 * @return the entry in the index, or -1 if it was skipped
+	 */
+	private int addZipEntry(int parent, ZipEntry zipEntry, ArchiveIndex.Builder index, int prefixDirsToSkip) {
+		String entryName = zipEntry.getName();
+		if (ignoreThisFile(entryName)) {
+			logger.log(Level.FINE, "ignoring file: {0}", entryName);
+			return -1;
+		}
+		String name = StringUtil.removeDirectoryPrefix(entryName, prefixDirsToSkip);
+		if ((name == null) || name.equals("")) {
+			return -1;
+		}
+
+		logger.log(Level.FINEST, "processing ZipEntry: {0}", entryName);
+		return index.add(parent, entryName.substring(0, entryName.length() - name.length()), name, zipEntry);
+	}
+
+	/**
+	 * returns true if the entry may be an embedded zip file and its data should be checked.
+	 * @param name The name of the entry
+	 * @param zipEntry The entry itself
+	 * @return true if the entry is not a directory and matches the archive extensions, if any
+	 */
+	protected boolean isNestedArchiveCandidate(String name, ZipEntry zipEntry) {
+		if (zipEntry.isDirectory()) {
+			return false;
+		}
+		if (nestedArchiveExtensions.length == 0) {
+			return true;
+		}
+		for (String extension : nestedArchiveExtensions) {
+			if (name.regionMatches(true, name.length() - extension.length(), extension, 0, extension.length())) {
+				return true;
 			}
 		}
+		return false;
 	}
 
+	/**
+	 * Reads the data of an entry that has already been added to the index. Embedded zip files
+	 * are recognised by their local file header and processed. If the content is compared,
+	 * embedded zip files and entries within them get their digest stored in the index.
+	 * Their data is streamed only once, so it has to be digested right away; entries of the
+	 * ZipFile itself are digested later and only if their metadata is inconclusive.
+	 * @param i The entry in the index
+	 * @param embedded true if the entry is part of an embedded zip file
+	 */
+	private void processEntryData(int i, ZipEntry zipEntry, InputStream is, ArchiveIndex.Builder index, boolean embedded) throws java.io.IOException {
+		if (isNestedArchiveCandidate(zipEntry.getName(), zipEntry)) {
+			InputStream in = is.markSupported() ? is : new BufferedInputStream(is);
+			if (isZipStream(in)) {
+				byte[] digest = indexEmbeddedZipFile(zipEntry.getName(), i, in, index);
+				index.markArchive(i);
+				if (digest != null) {
+					index.setDigest(i, digest);
+				}
+				return;
+			}
+			is = in;
+		}
+		if (contentDigester != null && embedded) {
+			EntryHashEvent event = Events.AVAILABLE ? new EntryHashEvent() : null;
+			if (event != null) {
+				event.begin();
+			}
+			index.setDigest(i, contentDigester.digest(is));
+			if (event != null && event.shouldCommit()) {
+				event.entry = zipEntry.getName();
+				event.algorithm = contentDigester.getAlgorithm().getName();
+				event.bytes = zipEntry.getSize();
+				event.commit();
+			}
+		}
+	}
 
+	protected void processEmbeddedZipFile(int parent, InputStream is, ArchiveIndex.Builder index) throws java.io.IOException {
+		indexEmbeddedZipFile(null, parent, is, index);
+	}
 
-	protected void processEmbeddedZipFile(String prefix, InputStream is, Map<String, ZipEntry> m) throws java.io.IOException {
+	/**
+	 * @see #processEmbeddedZipFile(int, InputStream, ArchiveIndex.Builder)
+	 * @param name name of the entry holding the embedded zip file, for the flight recorder
+	 * @return the digest of the embedded zip file if the content is compared, null otherwise
+	 */
+	private byte[] indexEmbeddedZipFile(String name, int parent, InputStream is, ArchiveIndex.Builder index) throws java.io.IOException {
+		NestedArchiveEvent event = Events.AVAILABLE ? new NestedArchiveEvent() : null;
+		if (event != null) {
+			event.begin();
+		}
+		int first = index.size();
+		long bytes = 0;
 		ZipInputStream zis = new ZipInputStream(is);
+		SortedMap<String, byte[]> digests = contentDigester == null ? null : new TreeMap<String, byte[]>();
 
 		ZipEntry entry = zis.getNextEntry();
 
 		while (entry != null) {
-			processZipEntry(prefix, entry, zis, m, 0);
+			int i = indexZipEntry(parent, entry, zis, index, 0);
 			zis.closeEntry();
+			if (entry.getSize() > 0) {
+				bytes += entry.getSize();
+			}
+			if (i >= 0) {
+				// sizes and crc of a streamed entry may only be known once it has been read
+				index.update(i, entry);
+				if (digests != null) {
+					byte[] digest = index.getDigest(i);
+					digests.put(entry.getName(), digest != null ? digest : NO_DIGEST);
+				}
+			}
 			entry = zis.getNextEntry();
 		}
 
+		if (event != null && event.shouldCommit()) {
+			event.archive = name;
+			event.entries = index.size() - first;
+			event.bytes = bytes;
+			event.commit();
+		}
+		return digests == null ? null : contentDigester.digest(digests);
 	}
 
 	/**
 	 * Returns true if the file iz a zip format
 	 * @param filename The name of the file to check.
 	 * @return true if file is a valid zip
+	 * @deprecated entries are checked with {@link #isZipStream(InputStream)}, this method
+	 * opens a file on the local filesystem
 	 */
+	@Deprecated
 	public static boolean isZipFile(String filename){
         try {
-            return new ZipInputStream(new FileInputStream(filename)).getNextEntry() != null;
+            InputStream is = new BufferedInputStream(new FileInputStream(filename));
+            try {
+                return isZipStream(is);
+            } finally {
+                is.close();
+            }
         } catch(IOException e) {
             return false;
         }
 	}
 
 	/**
-	 * Calculates all the differences between two zip files.
-	 * It builds up the 2 maps of ZipEntries for the two files
+	 * Returns true if the stream starts with the signature of a zip local file header.
+	 * The stream is reset to where it was, so it has to support mark and reset.
+	 * @param is The stream to check.
+	 * @return true if the stream contains a zip file
+	 * @throws java.io.IOException
+	 */
+	public static boolean isZipStream(InputStream is) throws java.io.IOException {
+		is.mark(LOCAL_FILE_HEADER_SIGNATURE.length);
+		try {
+			for (byte b : LOCAL_FILE_HEADER_SIGNATURE) {
+				if (is.read() != (b & 0xFF)) {
+					return false;
+				}
+			}
+			return true;
+		} finally {
+			is.reset();
+		}
+	}
+
+	/**
+	 * Calculates all the differences between two inputs.
+	 * It builds up the 2 indexes of the two inputs
 	 * and then compares them.
-	 * @param zf1 The first ZipFile to compare
-	 * @param zf2 The second ZipFile to compare
+	 * @param zf1 The first input to compare
+	 * @param zf2 The second input to compare
 	 * @param p1 number of directory prefixes to skip in the 1st file
 	 * @param p2 number of directory prefixes to skip in the 2nd file
 	 * @return All the differences between the two files.
 	 * @throws java.io.IOException
 	 */
-	protected Differences calculateDifferences(ZipFile zf1, ZipFile zf2, int p1, int p2) throws java.io.IOException {
-		Map<String,ZipEntry> map1 = buildZipEntryMap(zf1, p1);
-		Map<String,ZipEntry> map2 = buildZipEntryMap(zf2, p2);
+	protected Differences calculateDifferences(InputSource zf1, InputSource zf2, int p1, int p2) throws java.io.IOException {
+		Differences d = new Differences();
+		calculateDifferences(zf1, zf2, p1, p2, d);
+		d.setTierCounts(tierCounts);
+		return d;
+	}
 
-		return calculateDifferences(map1, map2);
+	/**
+	 * Calculates all the differences between two inputs and reports each of them to
+	 * the listener as soon as it is found.
+	 * @param zf1 The first input to compare
+	 * @param zf2 The second input to compare
+	 * @param p1 number of directory prefixes to skip in the 1st file
+	 * @param p2 number of directory prefixes to skip in the 2nd file
+	 * @param listener receives the differences
+	 * @throws java.io.IOException
+	 */
+	protected void calculateDifferences(InputSource zf1, InputSource zf2, int p1, int p2, DifferenceListener listener) throws java.io.IOException {
+		try {
+			ArchiveIndex index1 = sharedIndex1;
+			ArchiveIndex index2 = sharedIndex2;
+			if (index1 == null && index2 == null && parallelism > 1) {
+				List<ArchiveIndex> indexes = buildArchiveIndexesInParallel(zf1, zf2, p1, p2);
+				index1 = indexes.get(0);
+				index2 = indexes.get(1);
+			} else {
+				if (index1 == null) {
+					index1 = parallelism > 1 ? buildArchiveIndexInPool(zf1, p1) : indexInput(zf1, p1);
+				}
+				if (index2 == null) {
+					index2 = parallelism > 1 ? buildArchiveIndexInPool(zf2, p2) : indexInput(zf2, p2);
+				}
+			}
+
+			archive1 = zf1;
+			archive2 = zf2;
+			try {
+				calculateDifferences(index1, index2, listener);
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+		} finally {
+			archive1 = null;
+			archive2 = null;
+			if (sharedIndex1 == null) {
+				zf1.close();
+			}
+			if (sharedIndex2 == null) {
+				zf2.close();
+			}
+		}
 	}
 
 	/**
-	 * Given two Maps of ZipEntries it will generate a Differences of all the
-	 * differences found between the two maps.
-	 * @return All the differences found between the two maps
+	 * Builds up the index of all the entries of an input, or takes it from the index cache
+	 * if one is set and the input has been indexed with the same settings before.
+	 * Inside a fork/join pool the embedded zip files are indexed in parallel.
+	 * @param source The input for which to build up the index
+	 * @param number of directory prefixes to skip
+	 * @return The index of all the entries, including those of embedded zip files
+	 * @throws java.io.IOException
 	 */
-	protected Differences calculateDifferences(Map<String, ZipEntry> m1, Map<String, ZipEntry> m2) {
-		Differences d = new Differences();
+	private ArchiveIndex indexInput(InputSource source, int number) throws java.io.IOException {
+		long started = statistics != null ? System.nanoTime() : 0;
+		long allocated = statistics != null ? statistics.allocatedBytes() : 0;
+		ArchiveOpenEvent event = Events.AVAILABLE ? new ArchiveOpenEvent() : null;
+		if (event != null) {
+			event.begin();
+		}
+		String key = null;
+		if (indexCache != null && source.getCacheFile() != null) {
+			key = indexCache.key(source.getCacheFile(), indexSettings(number));
+			ArchiveIndex cached = indexCache.load(key);
+			if (cached != null) {
+				logger.log(Level.FINE, "using cached index of {0}", source.getName());
+				if (statistics != null) {
+					statistics.indexLoaded();
+					statistics.phase(Statistics.Phase.INDEX, started, allocated);
+				}
+				commit(event, source, cached, true);
+				return cached;
+			}
+		}
 
-		Set<String> names1 = m1.keySet();
-		Set<String> names2 = m2.keySet();
-
-		Set<String> allNames = new HashSet<>();
-		allNames.addAll(names1);
-		allNames.addAll(names2);
-
-        for(String name : allNames) {
-            if (names1.contains(name) && (!names2.contains(name))) {
-                d.fileRemoved(name, m1.get(name));
-            } else if (names2.contains(name) && (!names1.contains(name))) {
-                d.fileAdded(name, m2.get(name));
-            } else if (names1.contains(name) && (names2.contains(name))) {
-                ZipEntry entry1 = m1.get(name);
-                ZipEntry entry2 = m2.get(name);
-                if (!entriesMatch(entry1, entry2)) {
-                    d.fileChanged(name, entry1, entry2);
-                }
-            } else {
-                throw new IllegalStateException("unexpected state");
-            }
-        }
+		ArchiveIndex index;
+		if (ForkJoinTask.inForkJoinPool()) {
+			index = buildArchiveIndexInParallel(source, number);
+		} else {
+			index = buildArchiveIndex(source, number);
+		}
+
+		if (key != null) {
+			indexCache.store(key, index);
+		}
+		if (statistics != null) {
+			statistics.indexed(index);
+			statistics.phase(Statistics.Phase.INDEX, started, allocated);
+		}
+		commit(event, source, index, false);
+		return index;
+	}
+
+	private static void commit(ArchiveOpenEvent event, InputSource source, ArchiveIndex index, boolean fromCache) {
+		if (event != null && event.shouldCommit()) {
+			File file = source.getCacheFile();
+			event.archive = source.getName();
+			event.entries = index.size();
+			event.bytes = file != null && file.isFile() ? file.length() : 0;
+			event.fromCache = fromCache;
+			event.commit();
+		}
+	}
 
+	/**
+	 * @return a description of every setting that changes the index built for an input
+	 */
+	private String indexSettings(int number) {
+		return "skip=" + number
+				+ ";filter=" + (fileFilterPattern == null ? "" : fileFilterPattern.pattern())
+				+ ";extensions=" + Arrays.toString(nestedArchiveExtensions)
+				+ ";digest=" + (contentDigester == null ? "" : contentDigester.getAlgorithm().getName());
+	}
+
+	/**
+	 * Indexes both inputs at the same time on a pool of {@link #getParallelism()}
+	 * threads.
+	 * @return the indexes of the first and the second input
+	 * @see #calculateDifferences(InputSource, InputSource, int, int)
+	 */
+	private List<ArchiveIndex> buildArchiveIndexesInParallel(final InputSource zf1, final InputSource zf2, final int p1, final int p2) throws java.io.IOException {
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			Future<ArchiveIndex> index1 = pool.submit(new Callable<ArchiveIndex>() {
+				@Override
+				public ArchiveIndex call() throws IOException {
+					return indexInput(zf1, p1);
+				}
+			});
+			Future<ArchiveIndex> index2 = pool.submit(new Callable<ArchiveIndex>() {
+				@Override
+				public ArchiveIndex call() throws IOException {
+					return indexInput(zf2, p2);
+				}
+			});
+			return Arrays.asList(await(index1), await(index2));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Indexes one input on a pool of {@link #getParallelism()} threads.
+	 */
+	private ArchiveIndex buildArchiveIndexInPool(final InputSource source, final int number) throws java.io.IOException {
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			return await(pool.submit(new Callable<ArchiveIndex>() {
+				@Override
+				public ArchiveIndex call() throws IOException {
+					return indexInput(source, number);
+				}
+			}));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Given two indexes it will generate a Differences of all the
+	 * differences found between them.
+	 * @return All the differences found between the two indexes
+	 */
+	protected Differences calculateDifferences(ArchiveIndex index1, ArchiveIndex index2) {
+		Differences d = new Differences();
+		calculateDifferences(index1, index2, d);
+		d.setTierCounts(tierCounts);
 		return d;
 	}
 
+	/**
+	 * Given two indexes it will report all the differences found between them to the
+	 * listener, one at a time and ordered by name. Both indexes are walked side by side
+	 * in the order of their names; names and ZipEntries are only created for the entries
+	 * that are reported.
+	 * @param d receives the differences
+	 */
+	protected void calculateDifferences(ArchiveIndex index1, ArchiveIndex index2, DifferenceListener d) {
+		long started = statistics != null ? System.nanoTime() : 0;
+		long allocated = statistics != null ? statistics.allocatedBytes() : 0;
+		ComparisonEvent event = Events.AVAILABLE ? new ComparisonEvent() : null;
+		if (event != null) {
+			event.begin();
+		}
+		long differences = 0;
+		tierCounts = contentDigester != null ? new TierCounts() : null;
+
+		int[] order1 = index1.sortedOrder();
+		int[] order2 = index2.sortedOrder();
+		ArchiveIndex.NameComparator names = new ArchiveIndex.NameComparator();
+
+		// the content can only be compared while the inputs are open
+		ContentDiffer differ = null;
+		if (contentDiffPattern != null && archive1 != null && archive2 != null) {
+			differ = new ContentDiffer(contentDiffPattern, contentDiffMaxSize, ContentDiffer.DEFAULT_CONTEXT);
+		}
+		int[] textEntries = new int[16];
+		int textCount = 0;
+
+		if (classComparator != null && archive1 != null && archive2 != null && parallelism > 1) {
+			parseChangedClasses(index1, order1, index2, order2);
+		}
+
+		// removed and added entries are held back until they have been paired
+		MoveDetector moves = detectMoves ? newMoveDetector(index1, index2) : null;
+
+		int i = 0;
+		int j = 0;
+		while (i < order1.length || j < order2.length) {
+			int cmp;
+			if (i == order1.length) {
+				cmp = 1;
+			} else if (j == order2.length) {
+				cmp = -1;
+			} else {
+				cmp = names.compare(index1, order1[i], index2, order2[j]);
+			}
+
+			if (cmp < 0) {
+				int removed = order1[i++];
+				if (moves != null) {
+					moves.removed(removed);
+				} else {
+					d.fileRemoved(index1.getName(removed), index1.toZipEntry(removed));
+					differences++;
+				}
+			} else if (cmp > 0) {
+				int added = order2[j++];
+				if (moves != null) {
+					moves.added(added);
+				} else {
+					d.fileAdded(index2.getName(added), index2.toZipEntry(added));
+					differences++;
+				}
+			} else {
+				int entry1 = order1[i++];
+				int entry2 = order2[j++];
+				if (!entriesMatch(index1, entry1, index2, entry2)) {
+					differences++;
+					String name = index1.getName(entry1);
+					if (classChange != null) {
+						d.fileChanged(name, index1.toZipEntry(entry1), index2.toZipEntry(entry2), classChange.getLabel());
+					} else {
+						d.fileChanged(name, index1.toZipEntry(entry1), index2.toZipEntry(entry2));
+					}
+					if (differ != null && !index1.isDirectory(entry1) && !index2.isDirectory(entry2) && differ.accepts(name)) {
+						if (textCount == textEntries.length) {
+							textEntries = Arrays.copyOf(textEntries, 2 * textCount);
+						}
+						textEntries[textCount++] = entry1;
+						textEntries[textCount++] = entry2;
+					}
+				}
+			}
+		}
+
+		if (moves != null) {
+			differences += moves.report(d);
+		}
+		if (textCount > 0) {
+			reportContentDiffs(differ, index1, index2, textEntries, textCount, d);
+		}
+		if (statistics != null) {
+			statistics.phase(Statistics.Phase.COMPARE, started, allocated);
+		}
+		if (event != null && event.shouldCommit()) {
+			event.archive1 = file1.getName();
+			event.archive2 = file2.getName();
+			event.entries1 = index1.size();
+			event.entries2 = index2.size();
+			event.differences = differences;
+			event.commit();
+		}
+	}
+
+	/**
+	 * @return a detector of moved entries that reads the CRCs which the indexes do not know
+	 */
+	private MoveDetector newMoveDetector(final ArchiveIndex index1, final ArchiveIndex index2) {
+		return new MoveDetector(index1, index2) {
+			@Override
+			protected long crc1(int entry) {
+				return crc(archive1, index1, entry);
+			}
+
+			@Override
+			protected long crc2(int entry) {
+				return crc(archive2, index2, entry);
+			}
+		};
+	}
+
+	/**
+	 * Parses the class files whose metadata differs on a pool of {@link #getParallelism()}
+	 * threads, so that entriesMatch finds their signatures in the cache.
+	 */
+	private void parseChangedClasses(final ArchiveIndex index1, int[] order1, final ArchiveIndex index2, int[] order2) {
+		ArchiveIndex.NameComparator names = new ArchiveIndex.NameComparator();
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			List<Future<ClassSignature>> signatures = new ArrayList<>();
+			for (int i = 0, j = 0; i < order1.length && j < order2.length; ) {
+				int cmp = names.compare(index1, order1[i], index2, order2[j]);
+				if (cmp < 0) {
+					i++;
+				} else if (cmp > 0) {
+					j++;
+				} else {
+					final int entry1 = order1[i++];
+					final int entry2 = order2[j++];
+					long crc1 = index1.getCrc(entry1);
+					long crc2 = index2.getCrc(entry2);
+					if (crc1 >= 0 && crc2 >= 0 && crc1 == crc2 && index1.getSize(entry1) == index2.getSize(entry2)
+							|| index1.isDirectory(entry1) || index2.isDirectory(entry2)
+							|| !classComparator.accepts(index1.getName(entry1))) {
+						continue;
+					}
+					signatures.add(pool.submit(new Callable<ClassSignature>() {
+						@Override
+						public ClassSignature call() throws IOException {
+							return classSignature(archive1, index1, entry1);
+						}
+					}));
+					signatures.add(pool.submit(new Callable<ClassSignature>() {
+						@Override
+						public ClassSignature call() throws IOException {
+							return classSignature(archive2, index2, entry2);
+						}
+					}));
+				}
+			}
+			for (Future<ClassSignature> signature : signatures) {
+				await(signature);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return the signature of a class file from the cache or parsed, null if it is not
+	 * a well formed class file
+	 */
+	private ClassSignature classSignature(InputSource source, ArchiveIndex index, int i) throws IOException {
+		String name = index.getName(i);
+		long crc = index.getCrc(i);
+		long size = index.getSize(i);
+		ClassSignature signature = classComparator.getCached(name, crc, size);
+		if (signature == null) {
+			InputStream is = openEntry(source, index, i);
+			try {
+				signature = classComparator.parse(name, crc, size, is);
+			} finally {
+				is.close();
+			}
+		}
+		return signature;
+	}
+
+	/**
+	 * Compares the content of changed entries line by line, on a pool of
+	 * {@link #getParallelism()} threads, and reports the diffs in the order of the entries.
+	 * @param entries pairs of changed entries, the entry of index1 at even positions
+	 */
+	private void reportContentDiffs(final ContentDiffer differ, final ArchiveIndex index1, final ArchiveIndex index2,
+			int[] entries, int count, DifferenceListener d) {
+		try {
+			if (parallelism == 1) {
+				for (int k = 0; k < count; k += 2) {
+					d.contentDiff(index1.getName(entries[k]), contentDiff(differ, index1, entries[k], index2, entries[k + 1]));
+				}
+				return;
+			}
+
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				List<Future<String>> diffs = new ArrayList<>(count / 2);
+				for (int k = 0; k < count; k += 2) {
+					final int entry1 = entries[k];
+					final int entry2 = entries[k + 1];
+					diffs.add(pool.submit(new Callable<String>() {
+						@Override
+						public String call() throws IOException {
+							return contentDiff(differ, index1, entry1, index2, entry2);
+						}
+					}));
+				}
+				for (int k = 0; k < count; k += 2) {
+					d.contentDiff(index1.getName(entries[k]), await(diffs.get(k / 2)));
+				}
+			} finally {
+				pool.shutdownNow();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private String contentDiff(ContentDiffer differ, ArchiveIndex index1, int entry1, ArchiveIndex index2, int entry2) throws IOException {
+		InputStream is1 = openEntry(archive1, index1, entry1);
+		try {
+			InputStream is2 = openEntry(archive2, index2, entry2);
+			try {
+				return differ.diff(index1.getName(entry1), is1, is2);
+			} finally {
+				is2.close();
+			}
+		} finally {
+			is1.close();
+		}
+	}
+
 	/**
 	 * returns true if the two entries are equivalent in type, name, size, compressed size
-	 * and time or CRC.
-	 * @param entry1 The first ZipEntry to compare
-	 * @param entry2 The second ZipEntry to compare
+	 * and time or CRC. Files of a directory have no compressed size, so if one of the entries
+	 * is a file its CRC is computed and compared instead. If the content is compared,
+	 * see {@link #contentMatches(ArchiveIndex, int, ArchiveIndex, int)}. Class files that
+	 * differ are compared by structure if a {@link ClassComparator} is set, other entries
+	 * that differ are compared again after normalizing if a {@link Normalizer} matches them.
+	 * @param index1 The index of the first zip file
+	 * @param entry1 The entry of the first zip file
+	 * @param index2 The index of the second zip file
+	 * @param entry2 The entry of the second zip file
 	 * @return true if the entries are equivalent.
 	 */
-	protected boolean entriesMatch(ZipEntry entry1, ZipEntry entry2) {
+	protected boolean entriesMatch(ArchiveIndex index1, int entry1, ArchiveIndex index2, int entry2) {
 		boolean result;
+		boolean directory = index1.isDirectory(entry1);
+
+		if (contentDigester != null) {
+			result = (directory == index2.isDirectory(entry2))
+					&& (directory || contentMatches(index1, entry1, index2, entry2));
+		} else if (index1.getCompressedSize(entry1) >= 0 && index2.getCompressedSize(entry2) >= 0) {
+			result = (directory == index2.isDirectory(entry2)) && (index1.getSize(entry1) == index2.getSize(entry2)) && (index1.getCompressedSize(entry1) == index2.getCompressedSize(entry2));
 
-		result = (entry1.isDirectory() == entry2.isDirectory()) && (entry1.getSize() == entry2.getSize()) && (entry1.getCompressedSize() == entry2.getCompressedSize());
+			if (getCompareCRCValues()) {
+				result = result && (index1.getCrc(entry1) == index2.getCrc(entry2));
+			}
+		} else {
+			result = (directory == index2.isDirectory(entry2)) && (index1.getSize(entry1) == index2.getSize(entry2))
+					&& (directory || crcMatches(index1, entry1, index2, entry2));
+		}
 
 		if (isUsingTimestamps()) {
-			result = result && (entry1.getTime() == entry2.getTime());
+			result = result && (index1.getTime(entry1) == index2.getTime(entry2));
 		}
 
-		if (getCompareCRCValues()) {
-			result = result && (entry1.getCrc() == entry2.getCrc());
+		classChange = null;
+		if (!result && classComparator != null && archive1 != null && archive2 != null
+				&& !directory && !index2.isDirectory(entry2) && classComparator.accepts(index1.getName(entry1))) {
+			result = classesMatch(index1, entry1, index2, entry2);
+		}
+		if (!result && normalizers != null && archive1 != null && archive2 != null
+				&& !directory && !index2.isDirectory(entry2)) {
+			Normalizer normalizer = normalizers.find(index1.getName(entry1));
+			if (normalizer != null) {
+				result = normalizedContentMatches(normalizer, index1, entry1, index2, entry2);
+			}
 		}
 		return result;
 	}
 
+	/**
+	 * compares the digests of two entries after normalizing their content as it is read
+	 * @return true if the entries only differ in what the normalizer removes
+	 */
+	private boolean normalizedContentMatches(Normalizer normalizer, ArchiveIndex index1, int entry1, ArchiveIndex index2, int entry2) {
+		ContentDigester digester = contentDigester != null ? contentDigester : normalizedDigester;
+		try {
+			InputStream is1 = normalizer.normalize(openEntry(archive1, index1, entry1));
+			byte[] digest1;
+			try {
+				digest1 = digester.digest(is1);
+			} finally {
+				is1.close();
+			}
+			InputStream is2 = normalizer.normalize(openEntry(archive2, index2, entry2));
+			try {
+				return Arrays.equals(digest1, digester.digest(is2));
+			} finally {
+				is2.close();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * compares two class files by their structure, see {@link ClassComparator}
+	 * @return true if they only differ cosmetically
+	 */
+	private boolean classesMatch(ArchiveIndex index1, int entry1, ArchiveIndex index2, int entry2) {
+		ClassSignature signature1;
+		ClassSignature signature2;
+		try {
+			signature1 = classSignature(archive1, index1, entry1);
+			signature2 = classSignature(archive2, index2, entry2);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (signature1 == null || signature2 == null) {
+			// not class files after all, they stay changed
+			return false;
+		}
+		classChange = ClassComparator.classify(signature1, signature2);
+		return classChange == ClassComparator.Change.COSMETIC;
+	}
+
+	/**
+	 * Compares the uncompressed content of two entries, reading as little as possible:
+	 * entries of different sizes do not match, entries with the same compression method
+	 * match if their CRCs match. Only if the metadata is missing or inconclusive the data
+	 * is digested. Entries of embedded zip files carry the digest computed while indexing.
+	 * @return true if the entries have the same content.
+	 */
+	protected boolean contentMatches(ArchiveIndex index1, int entry1, ArchiveIndex index2, int entry2) {
+		boolean hashed1 = index1.hasDigest(entry1);
+		boolean hashed2 = index2.hasDigest(entry2);
+		TierCounts counts = tierCounts != null ? tierCounts : new TierCounts();
+
+		if (hashed1 && hashed2) {
+			counts.indexDigestCompared();
+			return index1.digestEquals(entry1, index2, entry2);
+		}
+
+		if (!hashed1 && !hashed2) {
+			long size1 = index1.getSize(entry1);
+			long size2 = index2.getSize(entry2);
+			if (size1 >= 0 && size2 >= 0 && size1 != size2) {
+				counts.sizeRejected();
+				return false;
+			}
+			long crc1 = index1.getCrc(entry1);
+			long crc2 = index2.getCrc(entry2);
+			if (crc1 >= 0 && crc2 >= 0 && index1.getMethod(entry1) == index2.getMethod(entry2)) {
+				boolean match = crc1 == crc2;
+				counts.crcDecided(match);
+				return match;
+			}
+		}
+
+		byte[] digest1;
+		byte[] digest2;
+		try {
+			digest1 = hashed1 ? index1.getDigest(entry1) : digest(archive1, index1, entry1, counts);
+			digest2 = hashed2 ? index2.getDigest(entry2) : digest(archive2, index2, entry2, counts);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		boolean match = Arrays.equals(digest1, digest2);
+		counts.digestDecided(match);
+		return match;
+	}
+
+	/**
+	 * digests the content of an entry of one of the inputs being compared
+	 */
+	private byte[] digest(InputSource source, ArchiveIndex index, int i, TierCounts counts) throws IOException {
+		EntryHashEvent event = Events.AVAILABLE ? new EntryHashEvent() : null;
+		if (event != null) {
+			event.begin();
+		}
+		InputStream is = openEntry(source, index, i);
+		try {
+			byte[] digest = contentDigester.digest(is);
+			counts.entryRead(index.getSize(i));
+			if (event != null && event.shouldCommit()) {
+				event.entry = index.getName(i);
+				event.algorithm = contentDigester.getAlgorithm().getName();
+				event.bytes = index.getSize(i);
+				event.commit();
+			}
+			return digest;
+		} finally {
+			is.close();
+		}
+	}
+
+	/**
+	 * @return true if the CRCs of both entries are known and equal. An entry whose CRC
+	 * stays unknown, because its input is not open, does not match.
+	 */
+	private boolean crcMatches(ArchiveIndex index1, int entry1, ArchiveIndex index2, int entry2) {
+		long crc1 = crc(archive1, index1, entry1);
+		return crc1 >= 0 && crc1 == crc(archive2, index2, entry2);
+	}
+
+	/**
+	 * returns the CRC of an entry, reading its content if the CRC is not known and the
+	 * input is open; -1 if it stays unknown
+	 */
+	private long crc(InputSource source, ArchiveIndex index, int i) {
+		long crc = index.getCrc(i);
+		if (crc >= 0 || source == null || index.getParent(i) != ArchiveIndex.NO_PARENT) {
+			return crc;
+		}
+		try {
+			InputStream is = openEntry(source, index, i);
+			try {
+				CRC32 checksum = new CRC32();
+				byte[] buffer = new byte[8192];
+				int count = is.read(buffer);
+				while (count > -1) {
+					checksum.update(buffer, 0, count);
+					count = is.read(buffer);
+				}
+				return checksum.getValue();
+			} finally {
+				is.close();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * opens an entry of one of the inputs being compared. An entry of an embedded zip
+	 * file is found by reading through the zip files it is embedded in.
+	 */
+	private InputStream openEntry(InputSource source, ArchiveIndex index, int i) throws IOException {
+		String name = index.getEntryName(i);
+		if (source == null) {
+			throw new IOException("the content of " + index.getName(i) + " cannot be read, its input is not open");
+		}
+		int parent = index.getParent(i);
+		if (statistics != null) {
+			statistics.entryRead(index.getCompressedSize(i), index.getSize(i), index.getMethod(i), parent != ArchiveIndex.NO_PARENT);
+		}
+		if (parent != ArchiveIndex.NO_PARENT) {
+			ZipInputStream zis = new ZipInputStream(openEntry(source, index, parent));
+			ZipEntry entry = zis.getNextEntry();
+			while (entry != null) {
+				if (entry.getName().equals(name)) {
+					return zis;
+				}
+				entry = zis.getNextEntry();
+			}
+			zis.close();
+			throw new IOException(name + " not found in " + index.getName(parent));
+		}
+		ZipEntry entry = source.getEntry(name);
+		if (entry == null) {
+			throw new IOException(name + " not found in " + source.getName());
+		}
+		return source.getInputStream(entry);
+	}
+
+	/**
+	 * @return how the entries were decided in the last comparison of content, null if
+	 * the content has not been compared
+	 */
+	public TierCounts getTierCounts() {
+		return tierCounts;
+	}
+
 	public void useTimestamps(boolean b) {
 		useTimeStamps = b;
 	}
@@ -296,14 +1391,26 @@ public class DifferenceCalculator {
 
 	/**
 	 *
-	 * @return all the differences found between the two zip files.
+	 * @return all the differences found between the two inputs.
 	 * @throws java.io.IOException
 	 */
 	public Differences getDifferences() throws java.io.IOException {
-		Differences d = calculateDifferences(file1, file2, numberOfPrefixesToSkip1, numberOfPrefixesToSkip2);
-		d.setFilename1(file1.getName());
-		d.setFilename2(file2.getName());
+		Differences d = new Differences();
+		reportDifferences(d);
+		d.setTierCounts(tierCounts);
 
 		return d;
 	}
+
+	/**
+	 * Reports the differences between the two inputs to the listener as they are
+	 * found, without keeping them in memory.
+	 * @param listener receives the differences
+	 * @throws java.io.IOException
+	 */
+	public void reportDifferences(DifferenceListener listener) throws java.io.IOException {
+		listener.start(file1.getName(), file2.getName());
+		calculateDifferences(file1, file2, numberOfPrefixesToSkip1, numberOfPrefixesToSkip2, listener);
+		listener.end();
+	}
 }
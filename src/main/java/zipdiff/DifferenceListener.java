@@ -0,0 +1,77 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff;
+
+import java.util.zip.ZipEntry;
+
+/**
+ * Receives the differences between 2 zip files as soon as they are found.
+ * {@link Differences} collects them, the builders can write them out directly.
+ */
+public interface DifferenceListener {
+
+	/**
+	 * called once before any difference is reported
+	 *
+	 * @param filename1 name of the first file
+	 * @param filename2 name of the second file
+	 */
+	void start(String filename1, String filename2);
+
+	void fileAdded(String fullFilePath, ZipEntry ze);
+
+	void fileRemoved(String fullFilePath, ZipEntry ze);
+
+	void fileChanged(String fullFilePath, ZipEntry z1, ZipEntry z2);
+
+	/**
+	 * called instead of {@link #fileChanged(String, ZipEntry, ZipEntry)} for a changed
+	 * entry whose kind of change is known, e. g. api or behavioral for class files
+	 * compared by structure. By default the reason is dropped.
+	 *
+	 * @param fullFilePath name of the changed entry
+	 * @param z1 entry of the first file
+	 * @param z2 entry of the second file
+	 * @param reason kind of change
+	 */
+	default void fileChanged(String fullFilePath, ZipEntry z1, ZipEntry z2, String reason) {
+		fileChanged(fullFilePath, z1, z2);
+	}
+
+	/**
+	 * called for an entry of the first file that is not in the second file but has the
+	 * content of an entry that is only in the second file, if moves are detected, see
+	 * {@link DifferenceCalculator#setDetectMoves(boolean)}. By default it is reported as
+	 * removed and added.
+	 *
+	 * @param fromPath name of the entry in the first file
+	 * @param toPath name of the entry in the second file
+	 * @param z1 entry of the first file
+	 * @param z2 entry of the second file
+	 */
+	default void fileMoved(String fromPath, String toPath, ZipEntry z1, ZipEntry z2) {
+		fileRemoved(fromPath, z1);
+		fileAdded(toPath, z2);
+	}
+
+	/**
+	 * called after all other differences, in the order of the names, for every changed
+	 * entry whose content was compared line by line,
+	 * see {@link DifferenceCalculator#setContentDiffPattern(String)}
+	 *
+	 * @param fullFilePath name of the changed entry
+	 * @param unifiedDiff header and hunks of a unified diff, or a line that says why
+	 * there are none
+	 */
+	default void contentDiff(String fullFilePath, String unifiedDiff) {
+		// most listeners only want the names
+	}
+
+	/**
+	 * called once after all differences have been reported
+	 */
+	void end();
+}
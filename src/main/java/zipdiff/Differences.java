@@ -5,26 +5,40 @@
  */
 package zipdiff;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.TreeMap;
 import java.util.zip.ZipEntry;
 
+import zipdiff.compare.TierCounts;
+
 /**
  * Used to keep track of difference between 2 zip files.
+ * The differences are kept in the order they are reported, which is
+ * sorted by name when they come from {@link DifferenceCalculator}.
  *
  * @author Sean C. Sullivan
  */
-public class Differences {
-	private final Map<String,ZipEntry> added = new TreeMap<>();
+public class Differences implements DifferenceListener {
+	private final Map<String,ZipEntry> added = new LinkedHashMap<>();
+
+	private final Map<String,ZipEntry> removed = new LinkedHashMap<>();
+
+	private final Map<String,ZipEntry[]> changed = new LinkedHashMap<>();
+
+	private final Map<String,ZipEntry[]> moved = new LinkedHashMap<>();
+
+	private final Map<String,String> moveTargets = new LinkedHashMap<>();
 
-	private final Map<String,ZipEntry> removed = new TreeMap<>();
+	private final Map<String,String> contentDiffs = new LinkedHashMap<>();
 
-	private final Map<String,ZipEntry[]> changed = new TreeMap<>();
+	private final Map<String,String> changeReasons = new LinkedHashMap<>();
 
 	private String filename1;
 
 	private String filename2;
 
+	private TierCounts tierCounts;
+
 	public Differences() {
 		// todo
 	}
@@ -45,14 +59,42 @@ public class Differences {
 		return filename2;
 	}
 
+	/**
+	 * @param tierCounts how the entries were compared, if their content was compared
+	 */
+	public void setTierCounts(TierCounts tierCounts) {
+		this.tierCounts = tierCounts;
+	}
+
+	/**
+	 * @return how the entries were compared, null unless their content was compared
+	 */
+	public TierCounts getTierCounts() {
+		return tierCounts;
+	}
+
+	@Override
+	public void start(String filename1, String filename2) {
+		setFilename1(filename1);
+		setFilename2(filename2);
+	}
+
+	@Override
+	public void end() {
+		// everything has been collected already
+	}
+
+	@Override
 	public void fileAdded(String fullFilePath, ZipEntry ze) {
 		added.put(fullFilePath, ze);
 	}
 
+	@Override
 	public void fileRemoved(String fullFilePath, ZipEntry ze) {
 		removed.put(fullFilePath, ze);
 	}
 
+	@Override
 	public void fileChanged(String fullFilePath, ZipEntry z1, ZipEntry z2) {
 		ZipEntry[] entries = new ZipEntry[2];
 		entries[0] = z1;
@@ -60,6 +102,23 @@ public class Differences {
 		changed.put(fullFilePath, entries);
 	}
 
+	@Override
+	public void fileChanged(String fullFilePath, ZipEntry z1, ZipEntry z2, String reason) {
+		fileChanged(fullFilePath, z1, z2);
+		changeReasons.put(fullFilePath, reason);
+	}
+
+	@Override
+	public void fileMoved(String fromPath, String toPath, ZipEntry z1, ZipEntry z2) {
+		moved.put(fromPath, new ZipEntry[] { z1, z2 });
+		moveTargets.put(fromPath, toPath);
+	}
+
+	@Override
+	public void contentDiff(String fullFilePath, String unifiedDiff) {
+		contentDiffs.put(fullFilePath, unifiedDiff);
+	}
+
 	public Map<String,ZipEntry> getAdded() {
 		return added;
 	}
@@ -72,8 +131,36 @@ public class Differences {
 		return changed;
 	}
 
+	/**
+	 * @return the entries of both files of the moved entries, by their name in the first file
+	 */
+	public Map<String,ZipEntry[]> getMoved() {
+		return moved;
+	}
+
+	/**
+	 * @return the names in the second file of the moved entries, by their name in the first file
+	 */
+	public Map<String,String> getMoveTargets() {
+		return moveTargets;
+	}
+
+	/**
+	 * @return the kind of change of the changed entries for which it is known, by name
+	 */
+	public Map<String,String> getChangeReasons() {
+		return changeReasons;
+	}
+
+	/**
+	 * @return the unified diffs of the changed entries compared line by line, by name
+	 */
+	public Map<String,String> getContentDiffs() {
+		return contentDiffs;
+	}
+
 	public boolean hasDifferences() {
-		return ((getChanged().size() > 0) || (getAdded().size() > 0) || (getRemoved().size() > 0));
+		return ((getChanged().size() > 0) || (getAdded().size() > 0) || (getRemoved().size() > 0) || (getMoved().size() > 0));
 	}
 
 	@Override
@@ -90,13 +177,31 @@ public class Differences {
             sb.append(String.format("\t[removed] %s\n", key));
         }
 
+        if (!moved.isEmpty()) {
+            sb.append(String.format("%d file(s) moved\n", moved.size()));
+            for (String key : moved.keySet()) {
+                sb.append(String.format("\t[moved] %s -> %s\n", key, moveTargets.get(key)));
+            }
+        }
+
         sb.append(String.format("%d file(s) changed\n", changed.size()));
         for(String key : changed.keySet()) {
             ZipEntry[] entries = changed.get(key);
-            sb.append(String.format("\t[changed] %s (size: %d : %d)\n", key, entries[0].getSize(), entries[1].getSize()));
+            String reason = changeReasons.get(key);
+            sb.append(String.format("\t[changed] %s (size: %d : %d)%s\n", key, entries[0].getSize(), entries[1].getSize(),
+                    reason != null ? " [" + reason + "]" : ""));
         }
 
-		int differenceCount = added.size() + changed.size() + removed.size();
+		for (Map.Entry<String, String> entry : contentDiffs.entrySet()) {
+			sb.append(String.format("[content] %s\n", entry.getKey()));
+			sb.append(entry.getValue());
+		}
+
+		if (tierCounts != null) {
+			sb.append(String.format("Content compared by %s\n", tierCounts));
+		}
+
+		int differenceCount = added.size() + changed.size() + removed.size() + moved.size();
 		sb.append(String.format("Total differences: %d", differenceCount));
 		return sb.toString();
 	}
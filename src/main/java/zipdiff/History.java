@@ -0,0 +1,148 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+
+/**
+ * The timeline of every entry that changed across a sequence of versions of the same
+ * archive. Entries that are the same in all versions are not kept, an entry of the
+ * first version only gets a timeline once it is changed or removed.
+ */
+public class History {
+
+	/** how an entry differs from the previous version */
+	public enum Kind {
+		INTRODUCED("introduced"), CHANGED("changed"), REMOVED("removed");
+
+		private final String label;
+
+		Kind(String label) {
+			this.label = label;
+		}
+
+		/** @return the name used in the reports */
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	/**
+	 * one change of an entry
+	 */
+	public static class Change {
+		private final int version;
+		private final Kind kind;
+
+		Change(int version, Kind kind) {
+			this.version = version;
+			this.kind = kind;
+		}
+
+		/** @return index of the version in which the entry changed, see {@link History#getVersions()} */
+		public int getVersion() {
+			return version;
+		}
+
+		public Kind getKind() {
+			return kind;
+		}
+	}
+
+	private final List<String> versions = new ArrayList<>();
+
+	private final SortedMap<String, List<Change>> timelines = new TreeMap<>();
+
+	/**
+	 * @param name name of the next version
+	 * @return index of the version
+	 */
+	public int addVersion(String name) {
+		versions.add(name);
+		return versions.size() - 1;
+	}
+
+	/**
+	 * @return the names of the versions, oldest first
+	 */
+	public List<String> getVersions() {
+		return Collections.unmodifiableList(versions);
+	}
+
+	/**
+	 * records a change of an entry. The changes of an entry have to be recorded in the
+	 * order of the versions.
+	 *
+	 * @param name name of the entry
+	 * @param version index of the version in which it changed
+	 * @param kind how it changed
+	 */
+	public void record(String name, int version, Kind kind) {
+		List<Change> timeline = timelines.get(name);
+		if (timeline == null) {
+			timeline = new ArrayList<>(2);
+			timelines.put(name, timeline);
+		}
+		timeline.add(new Change(version, kind));
+	}
+
+	/**
+	 * @return the changes of every entry that changed, sorted by name
+	 */
+	public SortedMap<String, List<Change>> getTimelines() {
+		return Collections.unmodifiableSortedMap(timelines);
+	}
+
+	/**
+	 * @param version index of a version
+	 * @return a listener that records the differences between the previous version and this one
+	 */
+	public DifferenceListener listener(final int version) {
+		return new DifferenceListener() {
+			@Override
+			public void start(String filename1, String filename2) {
+				// the names have been added with addVersion
+			}
+
+			@Override
+			public void fileAdded(String fullFilePath, ZipEntry ze) {
+				record(fullFilePath, version, Kind.INTRODUCED);
+			}
+
+			@Override
+			public void fileRemoved(String fullFilePath, ZipEntry ze) {
+				record(fullFilePath, version, Kind.REMOVED);
+			}
+
+			@Override
+			public void fileChanged(String fullFilePath, ZipEntry z1, ZipEntry z2) {
+				record(fullFilePath, version, Kind.CHANGED);
+			}
+
+			@Override
+			public void end() {
+				// nothing to finish
+			}
+		};
+	}
+
+	/**
+	 * @return the number of changes of all entries
+	 */
+	public int getNumberOfChanges() {
+		int n = 0;
+		for (Map.Entry<String, List<Change>> entry : timelines.entrySet()) {
+			n += entry.getValue().size();
+		}
+		return n;
+	}
+}
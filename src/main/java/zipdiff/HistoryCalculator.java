@@ -0,0 +1,107 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff;
+
+import zipdiff.index.ArchiveIndex;
+import zipdiff.input.InputSource;
+import zipdiff.input.InputSourceFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds out in which version each entry changed across a sequence of versions of the
+ * same archive. Every version is indexed once and compared to the one before it, only
+ * the indexes of these two versions are kept at a time.
+ */
+public class HistoryCalculator {
+
+	private final List<String> versions;
+
+	private int parallelism = 1;
+
+	/**
+	 * @param versions names of the versions, oldest first, see {@link InputSourceFactory#create(String)}
+	 */
+	public HistoryCalculator(List<String> versions) {
+		if (versions.size() < 2) {
+			throw new IllegalArgumentException("at least 2 versions are needed: " + versions);
+		}
+		this.versions = new ArrayList<>(versions);
+	}
+
+	/**
+	 * sets the number of threads used to index each version
+	 *
+	 * @param parallelism number of threads
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Applies the settings of the comparison, e. g. the filter, to a DifferenceCalculator.
+	 * Called for the DifferenceCalculators that index the versions and for those that
+	 * compare them, so they have to get the same settings.
+	 *
+	 * @param calc DifferenceCalculator to configure
+	 */
+	protected void configure(DifferenceCalculator calc) {
+		// the default settings
+	}
+
+	/**
+	 * compares each version to the one before it
+	 *
+	 * @return the timeline of every entry that changed
+	 * @throws IOException in case of an input/output error
+	 */
+	public History getHistory() throws IOException {
+		History history = new History();
+		history.addVersion(versions.get(0));
+		InputSource previous = InputSourceFactory.create(versions.get(0));
+		try {
+			ArchiveIndex previousIndex = index(previous);
+			for (int k = 1; k < versions.size(); k++) {
+				int version = history.addVersion(versions.get(k));
+				InputSource current = InputSourceFactory.create(versions.get(k));
+				ArchiveIndex currentIndex;
+				try {
+					currentIndex = index(current);
+					DifferenceCalculator calc = new DifferenceCalculator(previous, current);
+					configure(calc);
+					calc.setIndex1(previousIndex);
+					calc.setIndex2(currentIndex);
+					calc.reportDifferences(history.listener(version));
+				} catch (IOException | RuntimeException e) {
+					current.close();
+					throw e;
+				}
+				// the previous version is not needed anymore, so only two are open at a time
+				previous.close();
+				previous = current;
+				previousIndex = currentIndex;
+			}
+		} finally {
+			previous.close();
+		}
+		return history;
+	}
+
+	private ArchiveIndex index(InputSource source) throws IOException {
+		DifferenceCalculator indexer = new DifferenceCalculator(source, source);
+		configure(indexer);
+		indexer.setParallelism(parallelism);
+		ArchiveIndex index = indexer.buildIndex1();
+		// sorted here, as every index is compared twice
+		index.sortedOrder();
+		return index;
+	}
+}
@@ -6,11 +6,19 @@
 package zipdiff;
 
 import com.beust.jcommander.JCommander;
+import zipdiff.compare.ClassComparator;
+import zipdiff.compare.DigestAlgorithm;
+import zipdiff.compare.NormalizerRegistry;
+import zipdiff.index.IndexCache;
 import zipdiff.output.Builder;
 import zipdiff.output.BuilderFactory;
+import zipdiff.output.HistoryBuilder;
 import zipdiff.util.commandline.CommandLineArgs;
 
 import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -20,9 +28,13 @@ import java.util.List;
  */
 public class Main {
 
-	private static void writeOutputFile(String filename, int numberOfOutputPrefixesToSkip, Differences d) throws java.io.IOException {
-		Builder builder = BuilderFactory.create(filename);
-		builder.build(filename, numberOfOutputPrefixesToSkip, d);
+	private static void writeOutputFile(String filename, String format, int numberOfOutputPrefixesToSkip, Differences d, OutputStream stdout) throws java.io.IOException {
+		Builder builder = BuilderFactory.create(filename, format);
+		if ("-".equals(filename)) {
+			builder.build(stdout, numberOfOutputPrefixesToSkip, d);
+		} else {
+			builder.build(filename, numberOfOutputPrefixesToSkip, d);
+		}
 	}
 
 	public static void main(String[] args) throws Exception{
@@ -35,23 +47,194 @@ public class Main {
             return;
         }
 
+        run(cliArgs, createClassComparator(cliArgs), createIndexCache(cliArgs), System.out, System.err);
+	}
+
+	/**
+	 * runs the comparison the arguments ask for. {@link DiffServer} calls it for every
+	 * request with the comparator and the cache it shares between requests.
+	 *
+	 * @param classComparator comparator of class files, null to compare them like other entries
+	 * @param indexCache cache of the indexes of the input files, null to index them every time
+	 * @param stdout where the output goes if no output file is given
+	 * @param stderr where the statistics of -stats go
+	 */
+	static void run(CommandLineArgs cliArgs, ClassComparator classComparator, IndexCache indexCache, OutputStream stdout,
+			PrintStream stderr) throws java.io.IOException {
+        if (!cliArgs.isStats()) {
+            compare(cliArgs, classComparator, indexCache, null, stdout);
+            return;
+        }
+        Statistics statistics = new Statistics();
+        statistics.register();
+        try {
+            compare(cliArgs, classComparator, indexCache, statistics, stdout);
+        } finally {
+            statistics.unregister();
+        }
+        stderr.print(statistics);
+        stderr.flush();
+	}
+
+	private static void compare(CommandLineArgs cliArgs, ClassComparator classComparator, IndexCache indexCache, Statistics statistics,
+			OutputStream stdout) throws java.io.IOException {
         //TODO: use something better than a list.
         List<String> inputFiles = cliArgs.getInputFiles();
+        if (cliArgs.isHistory()) {
+            HistoryMode.run(cliArgs, classComparator, indexCache, statistics, stdout);
+            return;
+        }
+        if (cliArgs.isBatch()) {
+            BatchMode.run(cliArgs, classComparator, indexCache, statistics);
+            return;
+        }
         DifferenceCalculator calc = new DifferenceCalculator(new File(inputFiles.get(0)), new File(inputFiles.get(1)));
+        configure(calc, cliArgs, classComparator, indexCache, statistics);
+        calc.setParallelism(cliArgs.getParallelism());
 
+        if(cliArgs.getNoAction()) {
+            return;
+        }
+
+        if (cliArgs.isStream()) {
+            long started = statistics != null ? System.nanoTime() : 0;
+            long allocated = statistics != null ? statistics.allocatedBytes() : 0;
+            Builder builder = BuilderFactory.create(cliArgs.getOutputFile(), cliArgs.getOutputFormat());
+            DifferenceListener listener;
+            if ("-".equals(cliArgs.getOutputFile())) {
+                listener = builder.listener(stdout, cliArgs.getOutputPrefixesToSkip());
+            } else {
+                listener = builder.listener(cliArgs.getOutputFile(), cliArgs.getOutputPrefixesToSkip());
+            }
+            if (statistics != null) {
+                statistics.phase(Statistics.Phase.REPORT, started, allocated);
+                // the report is written while the differences are found
+                listener = statistics.timeReport(listener);
+            }
+            calc.reportDifferences(listener);
+            return;
+        }
+
+        Differences d = calc.getDifferences();
+        long started = statistics != null ? System.nanoTime() : 0;
+        long allocated = statistics != null ? statistics.allocatedBytes() : 0;
+        // TODO: use File instead of passing down strings ... Stringly typed vars are bad
+        writeOutputFile(cliArgs.getOutputFile(), cliArgs.getOutputFormat(), cliArgs.getOutputPrefixesToSkip(), d, stdout);
+        if (statistics != null) {
+            statistics.phase(Statistics.Phase.REPORT, started, allocated);
+        }
+	}
+
+	/**
+	 * @return the comparator of class files, shared by all comparisons of a run so that
+	 * they share its cache; null if class files are compared like other entries
+	 */
+	private static ClassComparator createClassComparator(CommandLineArgs cliArgs) {
+        if (cliArgs.getClassDiffMode() == null) {
+            return null;
+        }
+        return new ClassComparator("body".equals(cliArgs.getClassDiffMode()), ClassComparator.DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * @return the cache of indexes in the -cacheDir directory, null if there is none
+	 */
+	private static IndexCache createIndexCache(CommandLineArgs cliArgs) {
+        if (cliArgs.getCacheDir() == null) {
+            return null;
+        }
+        return new IndexCache(new File(cliArgs.getCacheDir()), cliArgs.getCacheSize() * 1024L * 1024L);
+	}
+
+	static void configure(DifferenceCalculator calc, CommandLineArgs cliArgs, ClassComparator classComparator, IndexCache indexCache,
+			Statistics statistics) {
         calc.setNumberOfPrefixesToSkip1(cliArgs.getInputPrefixesToSkip());
         calc.setNumberOfPrefixesToSkip2(cliArgs.getComparePrefixesToSkip());
         calc.setCompareCRCValues(cliArgs.useCRCvalues());
         calc.useTimestamps(cliArgs.useTStamp());
+        if (cliArgs.getHashAlgorithm() != null) {
+            calc.setContentDigestAlgorithm(DigestAlgorithm.forName(cliArgs.getHashAlgorithm()));
+        }
         calc.setFilenameFilter(cliArgs.getFilter());
-
-        if(cliArgs.getNoAction()) {
-            return;
+        calc.setNestedArchiveExtensions(cliArgs.getArchiveExtensions());
+        calc.setContentDiffPattern(cliArgs.getContentDiffPattern());
+        calc.setContentDiffMaxSize(cliArgs.getContentDiffMaxSize() * 1024);
+        calc.setClassComparator(classComparator);
+        if (cliArgs.isNormalize()) {
+            calc.setNormalizers(NormalizerRegistry.withDefaults());
         }
+        calc.setDetectMoves(cliArgs.isMoves());
+        calc.setIndexCache(indexCache);
+        calc.setStatistics(statistics);
+	}
 
-        Differences d = calc.getDifferences();
-        // TODO: use File instead of passing down strings ... Stringly typed vars are bad
-        writeOutputFile(cliArgs.getOutputFile(), cliArgs.getOutputPrefixesToSkip(), d);
+	/**
+	 * Compares each input file, followed by those in the manifest, to the one before it.
+	 * The modes are kept out of Main itself, so that verifying Main does not load their
+	 * classes unless they are used.
+	 */
+	private static final class HistoryMode {
+
+		static void run(final CommandLineArgs cliArgs, final ClassComparator classComparator, final IndexCache indexCache,
+				final Statistics statistics, OutputStream stdout) throws java.io.IOException {
+            List<String> versions = new ArrayList<>(cliArgs.getInputFiles());
+            if (cliArgs.getManifest() != null) {
+                versions.addAll(BatchDifferenceCalculator.readManifest(new File(cliArgs.getManifest())));
+            }
+            HistoryCalculator calc = new HistoryCalculator(versions) {
+                @Override
+                protected void configure(DifferenceCalculator calc) {
+                    Main.configure(calc, cliArgs, classComparator, indexCache, statistics);
+                }
+            };
+            calc.setParallelism(cliArgs.getParallelism());
+
+            if(cliArgs.getNoAction()) {
+                return;
+            }
+
+            History history = calc.getHistory();
+            long started = statistics != null ? System.nanoTime() : 0;
+            long allocated = statistics != null ? statistics.allocatedBytes() : 0;
+            HistoryBuilder builder = HistoryBuilder.create(cliArgs.getOutputFile());
+            if ("-".equals(cliArgs.getOutputFile())) {
+                builder.build(stdout, history);
+                stdout.flush();
+            } else {
+                builder.build(cliArgs.getOutputFile(), history);
+            }
+            if (statistics != null) {
+                statistics.phase(Statistics.Phase.REPORT, started, allocated);
+            }
+		}
 	}
 
+	/**
+	 * Compares the first input file to each of the others and those in the manifest.
+	 */
+	private static final class BatchMode {
+
+		static void run(final CommandLineArgs cliArgs, final ClassComparator classComparator, final IndexCache indexCache,
+				final Statistics statistics) throws java.io.IOException {
+            List<String> inputFiles = cliArgs.getInputFiles();
+            List<String> candidates = new ArrayList<>(inputFiles.subList(1, inputFiles.size()));
+            if (cliArgs.getManifest() != null) {
+                candidates.addAll(BatchDifferenceCalculator.readManifest(new File(cliArgs.getManifest())));
+            }
+            BatchDifferenceCalculator batch = new BatchDifferenceCalculator(inputFiles.get(0), candidates) {
+                @Override
+                protected void configure(DifferenceCalculator calc) {
+                    Main.configure(calc, cliArgs, classComparator, indexCache, statistics);
+                }
+            };
+            batch.setThreads(cliArgs.getParallelism());
+
+            if(cliArgs.getNoAction()) {
+                return;
+            }
+
+            File outputDirectory = "-".equals(cliArgs.getOutputFile()) ? cliArgs.getWorkingDirectory() : new File(cliArgs.getOutputFile());
+            batch.run(outputDirectory, cliArgs.getOutputFormat(), cliArgs.getOutputPrefixesToSkip());
+		}
+	}
 }
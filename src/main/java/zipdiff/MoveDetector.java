@@ -0,0 +1,234 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff;
+
+import java.util.Arrays;
+
+import zipdiff.index.ArchiveIndex;
+
+/**
+ * Pairs the entries removed from the first input with the entries added to the second
+ * one that have the same content, so that they are reported as moved instead of as
+ * removed and added. The removed entries are kept in an open addressing table keyed by
+ * size and CRC, which holds nothing but primitives; entries whose digests are known
+ * must have the same digest as well. If several removed entries have the content of an
+ * added entry, the one whose name has the longest common prefix and suffix with the
+ * name of the added entry is chosen.
+ * Directories, empty files and entries without a CRC are never paired.
+ */
+abstract class MoveDetector {
+
+	private static final int NONE = -1;
+
+	private final ArchiveIndex index1;
+
+	private final ArchiveIndex index2;
+
+	/** removed and added entries in the order they were found */
+	private int[] removed = new int[16];
+
+	private int removedCount;
+
+	private int[] added = new int[16];
+
+	private int addedCount;
+
+	/**
+	 * @param index1 index of the first input
+	 * @param index2 index of the second input
+	 */
+	MoveDetector(ArchiveIndex index1, ArchiveIndex index2) {
+		this.index1 = index1;
+		this.index2 = index2;
+	}
+
+	/**
+	 * @return the CRC of an entry of the first input, -1 if it is not known
+	 */
+	protected abstract long crc1(int entry);
+
+	/**
+	 * @return the CRC of an entry of the second input, -1 if it is not known
+	 */
+	protected abstract long crc2(int entry);
+
+	/**
+	 * @param entry entry of the first input that has no entry of the same name in the second input
+	 */
+	void removed(int entry) {
+		if (removedCount == removed.length) {
+			removed = Arrays.copyOf(removed, 2 * removedCount);
+		}
+		removed[removedCount++] = entry;
+	}
+
+	/**
+	 * @param entry entry of the second input that has no entry of the same name in the first input
+	 */
+	void added(int entry) {
+		if (addedCount == added.length) {
+			added = Arrays.copyOf(added, 2 * addedCount);
+		}
+		added[addedCount++] = entry;
+	}
+
+	/**
+	 * Pairs the entries and reports the moved entries in the order they were removed,
+	 * then the remaining removed and added entries in the order they were found.
+	 *
+	 * @param d receives the differences
+	 * @return the number of differences reported
+	 */
+	int report(DifferenceListener d) {
+		int[] movedTo = pair();
+		boolean[] moved = new boolean[addedCount];
+		int reported = 0;
+		for (int k = 0; k < removedCount; k++) {
+			if (movedTo[k] != NONE) {
+				int entry1 = removed[k];
+				int entry2 = added[movedTo[k]];
+				moved[movedTo[k]] = true;
+				d.fileMoved(index1.getName(entry1), index2.getName(entry2), index1.toZipEntry(entry1), index2.toZipEntry(entry2));
+				reported++;
+			}
+		}
+		for (int k = 0; k < removedCount; k++) {
+			if (movedTo[k] == NONE) {
+				d.fileRemoved(index1.getName(removed[k]), index1.toZipEntry(removed[k]));
+				reported++;
+			}
+		}
+		for (int k = 0; k < addedCount; k++) {
+			if (!moved[k]) {
+				d.fileAdded(index2.getName(added[k]), index2.toZipEntry(added[k]));
+				reported++;
+			}
+		}
+		return reported;
+	}
+
+	/**
+	 * @return for each removed entry the position of the added entry it moved to, NONE
+	 * if it did not move
+	 */
+	private int[] pair() {
+		int[] movedTo = new int[removedCount];
+		Arrays.fill(movedTo, NONE);
+
+		// size and CRC of every slot, the first and last removed entry with this key and the next one of each entry
+		int capacity = Integer.highestOneBit(Math.max(removedCount, 1) * 2) * 2;
+		long[] sizes = new long[capacity];
+		long[] crcs = new long[capacity];
+		int[] first = new int[capacity];
+		Arrays.fill(first, NONE);
+		int[] last = new int[capacity];
+		int[] next = new int[removedCount];
+		int keys = 0;
+		for (int k = 0; k < removedCount; k++) {
+			int entry = removed[k];
+			if (!isCandidate(index1, entry)) {
+				continue;
+			}
+			long crc = crc1(entry);
+			if (crc < 0) {
+				continue;
+			}
+			long size = index1.getSize(entry);
+			int slot = find(sizes, crcs, first, size, crc);
+			// appended in the order of the names, so that ties go to the first name
+			next[k] = NONE;
+			if (first[slot] == NONE) {
+				sizes[slot] = size;
+				crcs[slot] = crc;
+				first[slot] = k;
+				keys++;
+			} else {
+				next[last[slot]] = k;
+			}
+			last[slot] = k;
+		}
+		if (keys == 0) {
+			return movedTo;
+		}
+
+		String[] removedNames = new String[removedCount];
+		for (int k = 0; k < addedCount; k++) {
+			int entry = added[k];
+			if (!isCandidate(index2, entry)) {
+				continue;
+			}
+			long crc = crc2(entry);
+			if (crc < 0) {
+				continue;
+			}
+			int slot = find(sizes, crcs, first, index2.getSize(entry), crc);
+			String name = null;
+			int best = NONE;
+			int bestScore = -1;
+			for (int candidate = first[slot]; candidate != NONE; candidate = next[candidate]) {
+				int entry1 = removed[candidate];
+				if (movedTo[candidate] != NONE
+						|| index1.hasDigest(entry1) && index2.hasDigest(entry) && !index1.digestEquals(entry1, index2, entry)) {
+					continue;
+				}
+				if (best == NONE && (next[candidate] == NONE)) {
+					// the only candidate left needs no score
+					best = candidate;
+					break;
+				}
+				if (name == null) {
+					name = index2.getName(entry);
+				}
+				if (removedNames[candidate] == null) {
+					removedNames[candidate] = index1.getName(entry1);
+				}
+				int score = similarity(removedNames[candidate], name);
+				if (score > bestScore) {
+					best = candidate;
+					bestScore = score;
+				}
+			}
+			if (best != NONE) {
+				movedTo[best] = k;
+			}
+		}
+		return movedTo;
+	}
+
+	private static boolean isCandidate(ArchiveIndex index, int entry) {
+		return !index.isDirectory(entry) && index.getSize(entry) > 0;
+	}
+
+	/**
+	 * @return the slot of the key, or the empty slot where it belongs
+	 */
+	private static int find(long[] sizes, long[] crcs, int[] first, long size, long crc) {
+		int mask = first.length - 1;
+		long hash = (size * 0x9E3779B97F4A7C15L) ^ crc;
+		int slot = (int) (hash ^ (hash >>> 32)) & mask;
+		while (first[slot] != NONE && (sizes[slot] != size || crcs[slot] != crc)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * @return the number of characters at the start and at the end the names have in common
+	 */
+	static int similarity(String name1, String name2) {
+		int length = Math.min(name1.length(), name2.length());
+		int prefix = 0;
+		while (prefix < length && name1.charAt(prefix) == name2.charAt(prefix)) {
+			prefix++;
+		}
+		int suffix = 0;
+		while (suffix < length - prefix
+				&& name1.charAt(name1.length() - 1 - suffix) == name2.charAt(name2.length() - 1 - suffix)) {
+			suffix++;
+		}
+		return prefix + suffix;
+	}
+}
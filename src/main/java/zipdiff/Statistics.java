@@ -0,0 +1,401 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import zipdiff.index.ArchiveIndex;
+
+/**
+ * Tells where the time of a comparison went: how long each phase took and how much it
+ * allocated, how many entries and embedded archives were indexed and how many bytes
+ * were read and inflated. A DifferenceCalculator only collects statistics if it is
+ * given an instance, which may be shared by the calculators of a batch. Phases are
+ * timed by the thread that runs them, so with -parallelism their times add up to more
+ * than the time that passed; allocations are only known for the thread that started a
+ * phase, not for the tasks it forked.
+ */
+public class Statistics implements StatisticsMBean {
+
+	/** the phases of a comparison, {@link #NESTED} is part of {@link #INDEX} */
+	public enum Phase {
+		INDEX, NESTED, COMPARE, REPORT
+	}
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	private static final AtomicInteger RUNS = new AtomicInteger();
+
+	private final Logger logger = Logger.getLogger(getClass().getName());
+
+	private ObjectName objectName;
+
+	private final AtomicLongArray nanos = new AtomicLongArray(Phase.values().length);
+
+	private final AtomicLongArray allocated = new AtomicLongArray(Phase.values().length);
+
+	private final AtomicLong indexesBuilt = new AtomicLong();
+
+	private final AtomicLong indexesFromCache = new AtomicLong();
+
+	private final AtomicLong entriesIndexed = new AtomicLong();
+
+	private final AtomicLong nestedArchives = new AtomicLong();
+
+	private final AtomicInteger maxNestingDepth = new AtomicInteger();
+
+	private final AtomicLong bytesRead = new AtomicLong();
+
+	private final AtomicLong bytesInflated = new AtomicLong();
+
+	/**
+	 * registers the statistics with the platform MBean server as
+	 * zipdiff:type=Statistics,run=n, so that they can be watched while the comparison runs
+	 */
+	public void register() {
+		try {
+			objectName = new ObjectName("zipdiff:type=Statistics,run=" + RUNS.incrementAndGet());
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		} catch (JMException e) {
+			logger.log(Level.WARNING, "cannot register the statistics with JMX", e);
+			objectName = null;
+		}
+	}
+
+	/**
+	 * removes the statistics from the platform MBean server
+	 */
+	public void unregister() {
+		if (objectName == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (JMException e) {
+			logger.log(Level.WARNING, "cannot unregister the statistics from JMX", e);
+		}
+		objectName = null;
+	}
+
+	/**
+	 * @return bytes allocated by the current thread so far, -1 if the JVM cannot tell
+	 */
+	public long allocatedBytes() {
+		if (THREADS instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+			if (threads.isThreadAllocatedMemoryEnabled()) {
+				return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * adds the time and the allocations of a phase that ends now
+	 *
+	 * @param phase the phase
+	 * @param started {@link System#nanoTime()} at the start of the phase
+	 * @param allocatedAtStart {@link #allocatedBytes()} at the start of the phase
+	 */
+	public void phase(Phase phase, long started, long allocatedAtStart) {
+		phase(phase, null, started, allocatedAtStart);
+	}
+
+	/**
+	 * adds the time and the allocations of a phase that ends now and that was part of
+	 * another phase, which they are taken from
+	 */
+	private void phase(Phase phase, Phase within, long started, long allocatedAtStart) {
+		long elapsed = System.nanoTime() - started;
+		nanos.addAndGet(phase.ordinal(), elapsed);
+		if (within != null) {
+			nanos.addAndGet(within.ordinal(), -elapsed);
+		}
+		if (allocatedAtStart >= 0) {
+			long allocatedNow = allocatedBytes();
+			if (allocatedNow >= allocatedAtStart) {
+				allocated.addAndGet(phase.ordinal(), allocatedNow - allocatedAtStart);
+				if (within != null) {
+					allocated.addAndGet(within.ordinal(), allocatedAtStart - allocatedNow);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Times a listener that writes the report as the differences are found. The
+	 * differences are reported while the comparison runs, so the time the listener
+	 * takes for them is moved from {@link Phase#COMPARE} to {@link Phase#REPORT}.
+	 *
+	 * @param listener listener that writes the report
+	 * @return a listener that reports to it
+	 */
+	public DifferenceListener timeReport(final DifferenceListener listener) {
+		return new DifferenceListener() {
+			@Override
+			public void start(String filename1, String filename2) {
+				long started = System.nanoTime();
+				long allocated = allocatedBytes();
+				try {
+					listener.start(filename1, filename2);
+				} finally {
+					phase(Phase.REPORT, started, allocated);
+				}
+			}
+
+			@Override
+			public void fileAdded(String fullFilePath, ZipEntry ze) {
+				long started = System.nanoTime();
+				long allocated = allocatedBytes();
+				try {
+					listener.fileAdded(fullFilePath, ze);
+				} finally {
+					phase(Phase.REPORT, Phase.COMPARE, started, allocated);
+				}
+			}
+
+			@Override
+			public void fileRemoved(String fullFilePath, ZipEntry ze) {
+				long started = System.nanoTime();
+				long allocated = allocatedBytes();
+				try {
+					listener.fileRemoved(fullFilePath, ze);
+				} finally {
+					phase(Phase.REPORT, Phase.COMPARE, started, allocated);
+				}
+			}
+
+			@Override
+			public void fileChanged(String fullFilePath, ZipEntry z1, ZipEntry z2) {
+				long started = System.nanoTime();
+				long allocated = allocatedBytes();
+				try {
+					listener.fileChanged(fullFilePath, z1, z2);
+				} finally {
+					phase(Phase.REPORT, Phase.COMPARE, started, allocated);
+				}
+			}
+
+			@Override
+			public void fileChanged(String fullFilePath, ZipEntry z1, ZipEntry z2, String reason) {
+				long started = System.nanoTime();
+				long allocated = allocatedBytes();
+				try {
+					listener.fileChanged(fullFilePath, z1, z2, reason);
+				} finally {
+					phase(Phase.REPORT, Phase.COMPARE, started, allocated);
+				}
+			}
+
+			@Override
+			public void fileMoved(String fromPath, String toPath, ZipEntry z1, ZipEntry z2) {
+				long started = System.nanoTime();
+				long allocated = allocatedBytes();
+				try {
+					listener.fileMoved(fromPath, toPath, z1, z2);
+				} finally {
+					phase(Phase.REPORT, Phase.COMPARE, started, allocated);
+				}
+			}
+
+			@Override
+			public void contentDiff(String fullFilePath, String unifiedDiff) {
+				long started = System.nanoTime();
+				long allocated = allocatedBytes();
+				try {
+					listener.contentDiff(fullFilePath, unifiedDiff);
+				} finally {
+					phase(Phase.REPORT, Phase.COMPARE, started, allocated);
+				}
+			}
+
+			@Override
+			public void end() {
+				long started = System.nanoTime();
+				long allocated = allocatedBytes();
+				try {
+					listener.end();
+				} finally {
+					phase(Phase.REPORT, started, allocated);
+				}
+			}
+		};
+	}
+
+	/**
+	 * counts the entries, the embedded archives and the bytes read and inflated to
+	 * index an input. Every entry of an embedded archive is inflated while it is read.
+	 *
+	 * @param index index that was just built
+	 */
+	public void indexed(ArchiveIndex index) {
+		indexesBuilt.incrementAndGet();
+		entriesIndexed.addAndGet(index.size());
+		long archives = 0;
+		int depth = 0;
+		long read = 0;
+		long inflated = 0;
+		for (int i = 0; i < index.size(); i++) {
+			boolean nested = index.getParent(i) != ArchiveIndex.NO_PARENT;
+			boolean archive = index.isArchive(i);
+			if (archive) {
+				archives++;
+				depth = Math.max(depth, index.getDepth(i) + 1);
+			}
+			if (nested || archive) {
+				if (!nested) {
+					read += index.getCompressedSize(i) >= 0 ? index.getCompressedSize(i) : Math.max(index.getSize(i), 0);
+				}
+				if (index.getMethod(i) == ZipEntry.DEFLATED && index.getSize(i) > 0) {
+					inflated += index.getSize(i);
+				}
+			}
+		}
+		nestedArchives.addAndGet(archives);
+		bytesRead.addAndGet(read);
+		bytesInflated.addAndGet(inflated);
+		int max = maxNestingDepth.get();
+		while (depth > max && !maxNestingDepth.compareAndSet(max, depth)) {
+			max = maxNestingDepth.get();
+		}
+	}
+
+	/**
+	 * counts an index taken from the cache
+	 */
+	public void indexLoaded() {
+		indexesFromCache.incrementAndGet();
+	}
+
+	/**
+	 * counts the bytes of an entry that is read to compare its content
+	 *
+	 * @param compressedSize bytes read from the input or from the embedded archive, -1 if unknown
+	 * @param size uncompressed size, -1 if unknown
+	 * @param method compression method of the entry
+	 * @param nested true if the entry is part of an embedded archive, which does not read from the input itself
+	 */
+	public void entryRead(long compressedSize, long size, int method, boolean nested) {
+		if (!nested) {
+			bytesRead.addAndGet(compressedSize >= 0 ? compressedSize : Math.max(size, 0));
+		}
+		if (method == ZipEntry.DEFLATED && size > 0) {
+			bytesInflated.addAndGet(size);
+		}
+	}
+
+	private long millis(Phase phase) {
+		return nanos.get(phase.ordinal()) / 1000000;
+	}
+
+	private long allocated(Phase phase) {
+		return allocatedBytes() < 0 ? -1 : allocated.get(phase.ordinal());
+	}
+
+	@Override
+	public long getIndexMillis() {
+		return millis(Phase.INDEX);
+	}
+
+	@Override
+	public long getNestedMillis() {
+		return millis(Phase.NESTED);
+	}
+
+	@Override
+	public long getCompareMillis() {
+		return millis(Phase.COMPARE);
+	}
+
+	@Override
+	public long getReportMillis() {
+		return millis(Phase.REPORT);
+	}
+
+	@Override
+	public long getIndexAllocatedBytes() {
+		return allocated(Phase.INDEX);
+	}
+
+	@Override
+	public long getCompareAllocatedBytes() {
+		return allocated(Phase.COMPARE);
+	}
+
+	@Override
+	public long getReportAllocatedBytes() {
+		return allocated(Phase.REPORT);
+	}
+
+	@Override
+	public long getIndexesBuilt() {
+		return indexesBuilt.get();
+	}
+
+	@Override
+	public long getIndexesFromCache() {
+		return indexesFromCache.get();
+	}
+
+	@Override
+	public long getEntriesIndexed() {
+		return entriesIndexed.get();
+	}
+
+	@Override
+	public long getEntriesPerSecond() {
+		long indexNanos = nanos.get(Phase.INDEX.ordinal());
+		return indexNanos > 0 ? entriesIndexed.get() * 1000000000L / indexNanos : 0;
+	}
+
+	@Override
+	public long getNestedArchives() {
+		return nestedArchives.get();
+	}
+
+	@Override
+	public int getMaxNestingDepth() {
+		return maxNestingDepth.get();
+	}
+
+	@Override
+	public long getBytesRead() {
+		return bytesRead.get();
+	}
+
+	@Override
+	public long getBytesInflated() {
+		return bytesInflated.get();
+	}
+
+	private static String megabytes(long bytes) {
+		return bytes < 0 ? "?" : String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("index:   %6d ms, %s allocated (%d built, %d from the cache)\n",
+				getIndexMillis(), megabytes(getIndexAllocatedBytes()), getIndexesBuilt(), getIndexesFromCache()));
+		sb.append(String.format("  of which embedded archives: %d ms\n", getNestedMillis()));
+		sb.append(String.format("compare: %6d ms, %s allocated\n", getCompareMillis(), megabytes(getCompareAllocatedBytes())));
+		sb.append(String.format("report:  %6d ms, %s allocated\n", getReportMillis(), megabytes(getReportAllocatedBytes())));
+		sb.append(String.format("entries: %d indexed, %d per second\n", getEntriesIndexed(), getEntriesPerSecond()));
+		sb.append(String.format("embedded archives: %d, nested up to %d deep\n", getNestedArchives(), getMaxNestingDepth()));
+		sb.append(String.format("bytes:   %s read, %s inflated\n", megabytes(getBytesRead()), megabytes(getBytesInflated())));
+		return sb.toString();
+	}
+}
@@ -0,0 +1,58 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff;
+
+/**
+ * The attributes under which {@link Statistics} are registered with JMX while a
+ * comparison runs with -stats. Times are summed over the threads that did the work.
+ */
+public interface StatisticsMBean {
+
+	/** @return milliseconds spent indexing the inputs, including the embedded archives */
+	long getIndexMillis();
+
+	/** @return milliseconds spent indexing embedded archives, part of {@link #getIndexMillis()} */
+	long getNestedMillis();
+
+	/** @return milliseconds spent comparing the indexes and the content of entries */
+	long getCompareMillis();
+
+	/** @return milliseconds spent writing the report */
+	long getReportMillis();
+
+	/** @return bytes allocated while indexing, -1 if the JVM cannot tell */
+	long getIndexAllocatedBytes();
+
+	/** @return bytes allocated while comparing, -1 if the JVM cannot tell */
+	long getCompareAllocatedBytes();
+
+	/** @return bytes allocated while writing the report, -1 if the JVM cannot tell */
+	long getReportAllocatedBytes();
+
+	/** @return number of inputs indexed */
+	long getIndexesBuilt();
+
+	/** @return number of inputs whose index was taken from the cache */
+	long getIndexesFromCache();
+
+	/** @return number of entries indexed, including those of embedded archives */
+	long getEntriesIndexed();
+
+	/** @return entries indexed per second of indexing */
+	long getEntriesPerSecond();
+
+	/** @return number of embedded archives indexed */
+	long getNestedArchives();
+
+	/** @return the deepest nesting of an embedded archive, 1 for an archive in an input */
+	int getMaxNestingDepth();
+
+	/** @return compressed bytes read from the inputs to index embedded archives and to compare content */
+	long getBytesRead();
+
+	/** @return bytes inflated to index embedded archives and to compare content */
+	long getBytesInflated();
+}
@@ -0,0 +1,157 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.compare;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares changed class files by their structure, see {@link ClassSignature}, and tells
+ * whether they differ in their api, in their behavior or only cosmetically. The signatures
+ * are cached by name, CRC and size of the class file, so a class that is compared again,
+ * e. g. against every candidate of a batch comparison, is only parsed once. The cache is
+ * thread safe and can be shared by several DifferenceCalculators.
+ */
+public class ClassComparator {
+
+	/** how two class files differ */
+	public enum Change {
+		API("api"), BEHAVIORAL("behavioral"), COSMETIC("cosmetic");
+
+		private final String label;
+
+		Change(String label) {
+			this.label = label;
+		}
+
+		/** @return the name used in the reports */
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	/** default number of signatures kept in the cache */
+	public static final int DEFAULT_CACHE_SIZE = 100000;
+
+	private final boolean bodies;
+
+	private final Map<String, ClassSignature> cache;
+
+	private int hits;
+
+	private int misses;
+
+	/**
+	 * @param bodies true to compare the method bodies, false to only compare the members
+	 * @param cacheSize maximum number of signatures to keep, the least recently used are dropped
+	 */
+	public ClassComparator(boolean bodies, final int cacheSize) {
+		this.bodies = bodies;
+		this.cache = new LinkedHashMap<String, ClassSignature>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, ClassSignature> eldest) {
+				return size() > cacheSize;
+			}
+		};
+	}
+
+	/**
+	 * @param name full name of an entry
+	 * @return true if the entry is a class file
+	 */
+	public boolean accepts(String name) {
+		return name.endsWith(".class");
+	}
+
+	/**
+	 * returns the cached signature of a class file
+	 *
+	 * @param name full name of the entry
+	 * @param crc CRC of the class file, -1 if unknown
+	 * @param size size of the class file
+	 * @return the signature, null if it is not in the cache
+	 */
+	public ClassSignature getCached(String name, long crc, long size) {
+		if (crc < 0) {
+			return null;
+		}
+		synchronized (cache) {
+			ClassSignature signature = cache.get(key(name, crc, size));
+			if (signature != null) {
+				hits++;
+			}
+			return signature;
+		}
+	}
+
+	/**
+	 * parses a class file and caches its signature
+	 *
+	 * @param name full name of the entry
+	 * @param crc CRC of the class file, -1 if unknown, which is not cached
+	 * @param size size of the class file
+	 * @param in content of the class file
+	 * @return the signature, null if the entry is not a well formed class file
+	 * @throws IOException in case of an input/output error
+	 */
+	public ClassSignature parse(String name, long crc, long size, InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(size > 0 && size < Integer.MAX_VALUE ? (int) size : 8192);
+		byte[] buffer = new byte[8192];
+		int count = in.read(buffer);
+		while (count > -1) {
+			out.write(buffer, 0, count);
+			count = in.read(buffer);
+		}
+		ClassSignature signature = ClassSignature.parse(out.toByteArray(), bodies);
+		synchronized (cache) {
+			misses++;
+			if (signature != null && crc >= 0) {
+				cache.put(key(name, crc, size), signature);
+			}
+		}
+		return signature;
+	}
+
+	private static String key(String name, long crc, long size) {
+		return name + '\0' + crc + '\0' + size;
+	}
+
+	/**
+	 * @return how the second class differs from the first one
+	 */
+	public static Change classify(ClassSignature signature1, ClassSignature signature2) {
+		if (signature1.apiDiffers(signature2)) {
+			return Change.API;
+		}
+		if (signature1.behaviorDiffers(signature2)) {
+			return Change.BEHAVIORAL;
+		}
+		return Change.COSMETIC;
+	}
+
+	/**
+	 * @return the number of signatures taken from the cache
+	 */
+	public int getHits() {
+		synchronized (cache) {
+			return hits;
+		}
+	}
+
+	/**
+	 * @return the number of class files parsed
+	 */
+	public int getMisses() {
+		synchronized (cache) {
+			return misses;
+		}
+	}
+}
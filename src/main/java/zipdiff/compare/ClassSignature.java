@@ -0,0 +1,650 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.compare;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The structure of a class file reduced to two digests. The api digest covers what other
+ * classes compile against: the class, its super types and its non-private, non-synthetic
+ * fields and methods with their access flags, descriptors, generic signatures, thrown
+ * exceptions and constants. The behavior digest covers the whole structure, including
+ * private members, runtime visible annotations and, optionally, the method bodies.
+ * <p>
+ * Constants are resolved to their values and members are sorted, so the order of the
+ * constant pool and of the members does not matter. Debug attributes such as line numbers,
+ * local variable names and the source file, as well as stack map frames, are ignored.
+ */
+public final class ClassSignature {
+
+	private static final int ACC_PRIVATE = 0x0002;
+
+	private static final int ACC_SYNTHETIC = 0x1000;
+
+	/** public, final, interface, abstract, annotation, enum */
+	private static final int CLASS_API_FLAGS = 0x0001 | 0x0010 | 0x0200 | 0x0400 | 0x2000 | 0x4000;
+
+	/** public, private, protected, static, final, enum */
+	private static final int FIELD_API_FLAGS = 0x0001 | 0x0002 | 0x0004 | 0x0008 | 0x0010 | 0x4000;
+
+	/** public, private, protected, static, final, varargs, abstract */
+	private static final int METHOD_API_FLAGS = 0x0001 | 0x0002 | 0x0004 | 0x0008 | 0x0010 | 0x0080 | 0x0400;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final byte[] apiDigest;
+
+	private final byte[] behaviorDigest;
+
+	private ClassSignature(byte[] apiDigest, byte[] behaviorDigest) {
+		this.apiDigest = apiDigest;
+		this.behaviorDigest = behaviorDigest;
+	}
+
+	/**
+	 * @return true if the classes differ in what other classes compile against
+	 */
+	public boolean apiDiffers(ClassSignature other) {
+		return !Arrays.equals(apiDigest, other.apiDigest);
+	}
+
+	/**
+	 * @return true if the classes differ in structure, apart from debug information
+	 */
+	public boolean behaviorDiffers(ClassSignature other) {
+		return !Arrays.equals(behaviorDigest, other.behaviorDigest);
+	}
+
+	/**
+	 * parses a class file
+	 *
+	 * @param data content of the class file
+	 * @param bodies true to include the method bodies in the behavior digest
+	 * @return the signature, null if the data is not a well formed class file
+	 */
+	public static ClassSignature parse(byte[] data, boolean bodies) {
+		try {
+			return new Parser(data, bodies).parse();
+		} catch (IOException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * reads one class file
+	 */
+	private static final class Parser {
+		private final byte[] data;
+
+		private int pos;
+
+		private final boolean bodies;
+
+		private int[] tags;
+
+		private int[] refs1;
+
+		private int[] refs2;
+
+		private Object[] values;
+
+		private String[] resolved;
+
+		/** start of each bootstrap method in bootstrapArguments */
+		private int[] bootstrapMethods;
+
+		/** the method handle of each bootstrap method followed by its arguments */
+		private int[] bootstrapArguments = new int[0];
+
+		/** the constants encoded as UTF-8, as they are written for every instruction using them */
+		private byte[][] encoded;
+
+		/** id and start of the Code attribute of each method */
+		private final List<Object> pendingCode = new ArrayList<>();
+
+		Parser(byte[] data, boolean bodies) {
+			this.data = data;
+			this.bodies = bodies;
+		}
+
+		private int u1() {
+			return data[pos++] & 0xff;
+		}
+
+		private int u2() {
+			int value = ClassSignature.u2(data, pos);
+			pos += 2;
+			return value;
+		}
+
+		private int s4() {
+			int value = ClassSignature.s4(data, pos);
+			pos += 4;
+			return value;
+		}
+
+		private long s8() {
+			long high = s4() & 0xffffffffL;
+			return (high << 32) | (s4() & 0xffffffffL);
+		}
+
+		/**
+		 * @return a string in the modified UTF-8 of class files
+		 */
+		private String utf8() throws IOException {
+			int length = u2();
+			int end = pos + length;
+			char[] chars = new char[length];
+			int n = 0;
+			while (pos < end) {
+				int c = data[pos++] & 0xff;
+				if (c < 0x80) {
+					chars[n++] = (char) c;
+				} else if ((c & 0xe0) == 0xc0) {
+					chars[n++] = (char) (((c & 0x1f) << 6) | (data[pos++] & 0x3f));
+				} else if ((c & 0xf0) == 0xe0) {
+					chars[n++] = (char) (((c & 0x0f) << 12) | ((data[pos++] & 0x3f) << 6) | (data[pos++] & 0x3f));
+				} else {
+					throw new IOException("malformed string at " + pos);
+				}
+			}
+			if (pos != end) {
+				throw new IOException("malformed string at " + pos);
+			}
+			return new String(chars, 0, n);
+		}
+
+		ClassSignature parse() throws IOException {
+			if (s4() != 0xCAFEBABE) {
+				return null;
+			}
+			u2();
+			int major = u2();
+			readConstantPool();
+
+			List<String> api = new ArrayList<>();
+			List<String> behavior = new ArrayList<>();
+			int access = u2();
+			String thisClass = constant(u2());
+			String superClass = constant(u2());
+			StringBuilder header = new StringBuilder();
+			header.append("class ").append(access & CLASS_API_FLAGS).append(' ').append(thisClass).append(" extends ").append(superClass);
+			int interfaceCount = u2();
+			List<String> interfaces = new ArrayList<>();
+			for (int i = 0; i < interfaceCount; i++) {
+				interfaces.add(constant(u2()));
+			}
+			Collections.sort(interfaces);
+			header.append(" implements ").append(interfaces);
+
+			List<String> fields = readMembers(false);
+			List<String> methods = readMembers(true);
+			StringBuilder classAttributes = new StringBuilder();
+			String classSignature = readAttributes(classAttributes, null, null);
+
+			// the method bodies may refer to bootstrap methods, which come last
+			List<String> bodyRecords = new ArrayList<>();
+			for (int i = 0; i < pendingCode.size(); i += 2) {
+				bodyRecords.add(pendingCode.get(i) + " " + code((Integer) pendingCode.get(i + 1)));
+			}
+
+			api.add(header.toString());
+			api.add("signature " + classSignature);
+			behavior.add("version " + major);
+			behavior.add(classAttributes.toString());
+			for (String field : fields) {
+				addMember(field, api, behavior);
+			}
+			for (String method : methods) {
+				addMember(method, api, behavior);
+			}
+			behavior.addAll(bodyRecords);
+			Collections.sort(api);
+			Collections.sort(behavior);
+			behavior.addAll(0, api);
+			return new ClassSignature(digest(api), digest(behavior));
+		}
+
+		/**
+		 * members are recorded as "api\tbehavior", with an empty api part for private members
+		 */
+		private static void addMember(String member, List<String> api, List<String> behavior) {
+			int tab = member.indexOf('\t');
+			if (tab > 0) {
+				api.add(member.substring(0, tab));
+			}
+			behavior.add(member.substring(tab + 1));
+		}
+
+		private void readConstantPool() throws IOException {
+			int count = u2();
+			tags = new int[count];
+			refs1 = new int[count];
+			refs2 = new int[count];
+			values = new Object[count];
+			resolved = new String[count];
+			encoded = new byte[count][];
+			for (int i = 1; i < count; i++) {
+				int tag = u1();
+				tags[i] = tag;
+				switch (tag) {
+				case 1:
+					values[i] = utf8();
+					break;
+				case 3:
+					values[i] = "I" + s4();
+					break;
+				case 4:
+					values[i] = "F" + s4();
+					break;
+				case 5:
+					values[i] = "J" + s8();
+					i++;
+					break;
+				case 6:
+					values[i] = "D" + s8();
+					i++;
+					break;
+				case 7:
+				case 8:
+				case 16:
+				case 19:
+				case 20:
+					refs1[i] = u2();
+					break;
+				case 9:
+				case 10:
+				case 11:
+				case 12:
+				case 17:
+				case 18:
+					refs1[i] = u2();
+					refs2[i] = u2();
+					break;
+				case 15:
+					refs1[i] = u1();
+					refs2[i] = u2();
+					break;
+				default:
+					throw new IOException("unknown constant pool tag " + tag);
+				}
+			}
+		}
+
+		/**
+		 * @return the value of a constant, independent of its position in the pool
+		 */
+		private String constant(int index) {
+			if (index == 0) {
+				return "";
+			}
+			String result = resolved[index];
+			if (result != null) {
+				return result;
+			}
+			switch (tags[index]) {
+			case 1:
+			case 3:
+			case 4:
+			case 5:
+			case 6:
+				result = (String) values[index];
+				break;
+			case 7:
+				result = "C" + constant(refs1[index]);
+				break;
+			case 8:
+				result = "S" + constant(refs1[index]);
+				break;
+			case 16:
+				result = "T" + constant(refs1[index]);
+				break;
+			case 19:
+			case 20:
+				result = "P" + constant(refs1[index]);
+				break;
+			case 9:
+			case 10:
+			case 11:
+				result = "R" + tags[index] + constant(refs1[index]) + "." + constant(refs2[index]);
+				break;
+			case 12:
+				result = constant(refs1[index]) + ":" + constant(refs2[index]);
+				break;
+			case 15:
+				result = "H" + refs1[index] + constant(refs2[index]);
+				break;
+			case 17:
+			case 18:
+				result = "Y" + bootstrapMethod(refs1[index]) + constant(refs2[index]);
+				break;
+			default:
+				throw new IllegalArgumentException("no constant at " + index);
+			}
+			resolved[index] = result;
+			return result;
+		}
+
+		private String bootstrapMethod(int i) {
+			if (bootstrapMethods == null) {
+				// resolved from the method bodies only, after the class attributes have been read
+				throw new IllegalStateException("bootstrap methods not read yet");
+			}
+			int start = bootstrapMethods[i];
+			int end = i + 1 < bootstrapMethods.length ? bootstrapMethods[i + 1] : bootstrapArguments.length;
+			StringBuilder sb = new StringBuilder("(");
+			for (int k = start; k < end; k++) {
+				sb.append(constant(bootstrapArguments[k])).append(',');
+			}
+			return sb.append(')').toString();
+		}
+
+		/**
+		 * @return one record per member, "api\tbehavior"
+		 */
+		private List<String> readMembers(boolean methods) throws IOException {
+			int count = u2();
+			List<String> members = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				int access = u2();
+				String name = constant(u2());
+				String descriptor = constant(u2());
+				String id = (methods ? "method " : "field ") + name + descriptor;
+				StringBuilder apiAttributes = new StringBuilder();
+				StringBuilder behaviorAttributes = new StringBuilder();
+				int[] code = { -1 };
+				String signature = readAttributes(behaviorAttributes, apiAttributes, code);
+				if (code[0] >= 0) {
+					pendingCode.add(id);
+					pendingCode.add(Integer.valueOf(code[0]));
+				}
+
+				boolean api = (access & (ACC_PRIVATE | ACC_SYNTHETIC)) == 0;
+				int apiFlags = access & (methods ? METHOD_API_FLAGS : FIELD_API_FLAGS);
+				String apiRecord = api ? id + " " + apiFlags + " " + signature + apiAttributes : "";
+				members.add(apiRecord + "\t" + id + " " + access + " " + signature + apiAttributes + behaviorAttributes);
+			}
+			return members;
+		}
+
+		/**
+		 * reads the attributes of the class or of a member
+		 *
+		 * @param behavior receives the canonical form of the runtime visible annotations
+		 * @param api receives thrown exceptions, constant values and annotation defaults,
+		 * null for the class
+		 * @param code receives the start of the Code attribute, null for the class
+		 * @return the generic signature, empty if there is none
+		 */
+		private String readAttributes(StringBuilder behavior, StringBuilder api, int[] code) throws IOException {
+			String signature = "";
+			int count = u2();
+			for (int i = 0; i < count; i++) {
+				String name = constant(u2());
+				int length = s4();
+				if ("Signature".equals(name)) {
+					signature = constant(u2());
+				} else if (api != null && "ConstantValue".equals(name)) {
+					api.append(" = ").append(constant(u2()));
+				} else if (api != null && "Exceptions".equals(name)) {
+					int n = u2();
+					List<String> exceptions = new ArrayList<>(n);
+					for (int k = 0; k < n; k++) {
+						exceptions.add(constant(u2()));
+					}
+					Collections.sort(exceptions);
+					api.append(" throws ").append(exceptions);
+				} else if (api != null && "AnnotationDefault".equals(name)) {
+					api.append(" default ");
+					elementValue(api);
+				} else if (code != null && "Code".equals(name)) {
+					code[0] = pos;
+					pos += length;
+				} else if ("RuntimeVisibleAnnotations".equals(name)) {
+					behavior.append(" @");
+					annotations(behavior);
+				} else if ("RuntimeVisibleParameterAnnotations".equals(name)) {
+					int n = u1();
+					behavior.append(" @params");
+					for (int k = 0; k < n; k++) {
+						annotations(behavior);
+					}
+				} else if (code == null && "BootstrapMethods".equals(name)) {
+					readBootstrapMethods();
+				} else {
+					// debug information, stack map frames and everything else
+					pos += length;
+				}
+			}
+			return signature;
+		}
+
+		private void readBootstrapMethods() throws IOException {
+			int n = u2();
+			bootstrapMethods = new int[n];
+			int[] arguments = new int[16];
+			int count = 0;
+			for (int i = 0; i < n; i++) {
+				bootstrapMethods[i] = count;
+				int methodHandle = u2();
+				int argumentCount = u2();
+				if (count + argumentCount + 1 > arguments.length) {
+					arguments = Arrays.copyOf(arguments, 2 * (count + argumentCount + 1));
+				}
+				arguments[count++] = methodHandle;
+				for (int k = 0; k < argumentCount; k++) {
+					arguments[count++] = u2();
+				}
+			}
+			bootstrapArguments = Arrays.copyOf(arguments, count);
+		}
+
+		private void annotations(StringBuilder sb) throws IOException {
+			int n = u2();
+			List<String> annotations = new ArrayList<>(n);
+			for (int i = 0; i < n; i++) {
+				StringBuilder annotation = new StringBuilder();
+				annotation(annotation);
+				annotations.add(annotation.toString());
+			}
+			Collections.sort(annotations);
+			sb.append(annotations);
+		}
+
+		private void annotation(StringBuilder sb) throws IOException {
+			sb.append(constant(u2())).append('(');
+			int pairs = u2();
+			List<String> values = new ArrayList<>(pairs);
+			for (int i = 0; i < pairs; i++) {
+				StringBuilder pair = new StringBuilder(constant(u2())).append('=');
+				elementValue(pair);
+				values.add(pair.toString());
+			}
+			Collections.sort(values);
+			sb.append(values).append(')');
+		}
+
+		private void elementValue(StringBuilder sb) throws IOException {
+			char tag = (char) u1();
+			sb.append(tag);
+			switch (tag) {
+			case 'e':
+				sb.append(constant(u2())).append('.');
+				sb.append(constant(u2()));
+				break;
+			case '@':
+				annotation(sb);
+				break;
+			case '[':
+				int n = u2();
+				sb.append('{');
+				for (int i = 0; i < n; i++) {
+					elementValue(sb);
+					sb.append(',');
+				}
+				sb.append('}');
+				break;
+			default:
+				// B C D F I J S Z s c
+				sb.append(constant(u2()));
+			}
+		}
+
+		/**
+		 * @return a digest of the bytecode and the exception handlers, with the constants
+		 * resolved, or nothing if the bodies are not compared
+		 */
+		private String code(int start) {
+			if (!bodies) {
+				return "";
+			}
+			pos = start + 4;
+			int length = s4();
+			int codeStart = pos;
+			pos += length;
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream(length * 2);
+			writeBytecode(codeStart, length, out);
+			int handlers = u2();
+			for (int i = 0; i < handlers; i++) {
+				String handler = "catch " + u2() + "," + u2() + "," + u2() + "," + constant(u2()) + "\n";
+				byte[] b = handler.getBytes(StandardCharsets.UTF_8);
+				out.write(b, 0, b.length);
+			}
+			// the attributes of the code are line numbers, local variables and stack maps
+			return hex(digest(out.toByteArray()));
+		}
+
+		/**
+		 * writes the instructions with their constant pool operands replaced by the constants
+		 */
+		private void writeBytecode(int start, int length, ByteArrayOutputStream out) {
+			byte[] bytecode = data;
+			int end = start + length;
+			int pc = start;
+			while (pc < end) {
+				int opcode = bytecode[pc] & 0xff;
+				int size;
+				int constant = -1;
+				if (opcode == 0x12) {
+					// ldc and ldc_w only differ in the size of the index
+					opcode = 0x13;
+					constant = bytecode[pc + 1] & 0xff;
+					size = 2;
+				} else if (opcode == 0x13 || opcode == 0x14 || (opcode >= 0xb2 && opcode <= 0xb8)
+						|| opcode == 0xbb || opcode == 0xbd || opcode == 0xc0 || opcode == 0xc1) {
+					constant = ClassSignature.u2(bytecode, pc + 1);
+					size = 3;
+				} else if (opcode == 0xb9 || opcode == 0xba) {
+					constant = ClassSignature.u2(bytecode, pc + 1);
+					size = 5;
+				} else if (opcode == 0xc5) {
+					constant = ClassSignature.u2(bytecode, pc + 1);
+					size = 4;
+				} else if (opcode == 0xaa) {
+					int pad = 3 - ((pc - start) % 4);
+					int low = ClassSignature.s4(bytecode, pc + 1 + pad + 4);
+					int high = ClassSignature.s4(bytecode, pc + 1 + pad + 8);
+					size = 1 + pad + 12 + 4 * (high - low + 1);
+				} else if (opcode == 0xab) {
+					int pad = 3 - ((pc - start) % 4);
+					int pairs = ClassSignature.s4(bytecode, pc + 1 + pad + 4);
+					size = 1 + pad + 8 + 8 * pairs;
+				} else if (opcode == 0xc4) {
+					size = (bytecode[pc + 1] & 0xff) == 0x84 ? 6 : 4;
+				} else {
+					size = LENGTHS[opcode];
+					if (size == 0) {
+						throw new IllegalArgumentException("unknown opcode " + opcode + " at " + (pc - start));
+					}
+				}
+
+				out.write(opcode);
+				if (constant >= 0) {
+					byte[] b = encoded[constant];
+					if (b == null) {
+						b = constant(constant).getBytes(StandardCharsets.UTF_8);
+						encoded[constant] = b;
+					}
+					out.write(b, 0, b.length);
+					out.write(0);
+					// operands after the index, e.g. the dimensions of multianewarray
+					int rest = opcode == 0x13 ? 3 : size;
+					if (rest > 3) {
+						out.write(bytecode, pc + 3, rest - 3);
+					}
+				} else {
+					out.write(bytecode, pc + 1, size - 1);
+				}
+				pc += size;
+			}
+		}
+	}
+
+	/** length of the instructions with a fixed length, 0 for the others and unknown opcodes */
+	private static final int[] LENGTHS = new int[256];
+
+	static {
+		Arrays.fill(LENGTHS, 0x00, 0x10, 1);
+		LENGTHS[0x10] = 2;
+		LENGTHS[0x11] = 3;
+		Arrays.fill(LENGTHS, 0x15, 0x1a, 2);
+		Arrays.fill(LENGTHS, 0x1a, 0x36, 1);
+		Arrays.fill(LENGTHS, 0x36, 0x3b, 2);
+		Arrays.fill(LENGTHS, 0x3b, 0x84, 1);
+		LENGTHS[0x84] = 3;
+		Arrays.fill(LENGTHS, 0x85, 0x99, 1);
+		Arrays.fill(LENGTHS, 0x99, 0xa9, 3);
+		LENGTHS[0xa9] = 2;
+		Arrays.fill(LENGTHS, 0xac, 0xb2, 1);
+		LENGTHS[0xbc] = 2;
+		LENGTHS[0xbe] = 1;
+		LENGTHS[0xbf] = 1;
+		LENGTHS[0xc2] = 1;
+		LENGTHS[0xc3] = 1;
+		LENGTHS[0xc6] = 3;
+		LENGTHS[0xc7] = 3;
+		LENGTHS[0xc8] = 5;
+		LENGTHS[0xc9] = 5;
+	}
+
+	private static int u2(byte[] b, int i) {
+		return ((b[i] & 0xff) << 8) | (b[i + 1] & 0xff);
+	}
+
+	private static int s4(byte[] b, int i) {
+		return ((b[i] & 0xff) << 24) | ((b[i + 1] & 0xff) << 16) | ((b[i + 2] & 0xff) << 8) | (b[i + 3] & 0xff);
+	}
+
+	private static byte[] digest(List<String> records) {
+		MessageDigest md = DigestAlgorithm.SHA_1.newMessageDigest();
+		for (String record : records) {
+			md.update(record.getBytes(StandardCharsets.UTF_8));
+			md.update((byte) '\n');
+		}
+		return md.digest();
+	}
+
+	private static byte[] digest(byte[] data) {
+		return DigestAlgorithm.SHA_1.newMessageDigest().digest(data);
+	}
+
+	private static String hex(byte[] bytes) {
+		char[] chars = new char[2 * bytes.length];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+			chars[2 * i + 1] = HEX[bytes[i] & 0xf];
+		}
+		return new String(chars);
+	}
+}
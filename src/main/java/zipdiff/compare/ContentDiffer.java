@@ -0,0 +1,138 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.compare;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Shows how the content of a changed text entry changed, as the hunks of a unified diff.
+ * At most maxSize bytes of each entry are read, larger entries and entries that look
+ * binary are only noted.
+ */
+public class ContentDiffer {
+
+	/** default number of unchanged lines shown around a change */
+	public static final int DEFAULT_CONTEXT = 3;
+
+	/** default limit of the size of an entry, 1 MB */
+	public static final int DEFAULT_MAX_SIZE = 1024 * 1024;
+
+	private final Pattern pattern;
+
+	private final int maxSize;
+
+	private final int context;
+
+	/**
+	 * @param pattern regex of the names of the entries to compare line by line
+	 * @param maxSize entries with more bytes are not compared
+	 * @param context number of unchanged lines shown around a change
+	 */
+	public ContentDiffer(Pattern pattern, int maxSize, int context) {
+		this.pattern = pattern;
+		this.maxSize = maxSize;
+		this.context = context;
+	}
+
+	/**
+	 * @param name full name of an entry
+	 * @return true if the entry is compared line by line
+	 */
+	public boolean accepts(String name) {
+		return pattern.matcher(name).matches();
+	}
+
+	/**
+	 * compares the content of an entry line by line
+	 *
+	 * @param name full name of the entry
+	 * @param in1 content of the old entry
+	 * @param in2 content of the new entry
+	 * @return header and hunks of a unified diff, or a line that says why there are none
+	 * @throws IOException in case of an input/output error
+	 */
+	public String diff(String name, InputStream in1, InputStream in2) throws IOException {
+		byte[] content1 = read(in1);
+		byte[] content2 = read(in2);
+		if (content1 == null || content2 == null) {
+			return "(not compared: larger than " + maxSize + " bytes)\n";
+		}
+		if (isBinary(content1) || isBinary(content2)) {
+			return "(not compared: binary content)\n";
+		}
+		LineDiff diff = new LineDiff(lines(content1), lines(content2));
+		if (!diff.hasDifferences()) {
+			return "(no line differences: only the line endings or the encoding differ)\n";
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append("--- a/").append(name).append('\n');
+		sb.append("+++ b/").append(name).append('\n');
+		diff.writeHunks(context, sb);
+		return sb.toString();
+	}
+
+	/**
+	 * @return the content, null if it has more than maxSize bytes
+	 */
+	private byte[] read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int count = in.read(buffer);
+		while (count > -1) {
+			if (out.size() + count > maxSize) {
+				return null;
+			}
+			out.write(buffer, 0, count);
+			count = in.read(buffer);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return true if there is a NUL byte in the first 8000 bytes, like git does
+	 */
+	private static boolean isBinary(byte[] content) {
+		int n = Math.min(content.length, 8000);
+		for (int i = 0; i < n; i++) {
+			if (content[i] == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * splits UTF-8 content into lines without their line terminators
+	 */
+	static List<String> lines(byte[] content) {
+		String text = new String(content, StandardCharsets.UTF_8);
+		List<String> lines = new ArrayList<>();
+		int start = 0;
+		int length = text.length();
+		while (start < length) {
+			int end = text.indexOf('\n', start);
+			int next;
+			if (end < 0) {
+				end = length;
+				next = length;
+			} else {
+				next = end + 1;
+			}
+			if (end > start && text.charAt(end - 1) == '\r') {
+				end--;
+			}
+			lines.add(text.substring(start, end));
+			start = next;
+		}
+		return lines;
+	}
+}
@@ -0,0 +1,90 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.compare;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Computes digests of the uncompressed content of entries. Each thread reuses
+ * its own digest and read buffer, so one instance can be shared by indexing tasks.
+ */
+public class ContentDigester {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[BUFFER_SIZE];
+		}
+	};
+
+	private final DigestAlgorithm algorithm;
+
+	private final ThreadLocal<MessageDigest> digest;
+
+	public ContentDigester(final DigestAlgorithm algorithm) {
+		this.algorithm = algorithm;
+		this.digest = new ThreadLocal<MessageDigest>() {
+			@Override
+			protected MessageDigest initialValue() {
+				return algorithm.newMessageDigest();
+			}
+		};
+	}
+
+	public DigestAlgorithm getAlgorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * @return the length of the digests in bytes
+	 */
+	public int getDigestLength() {
+		return digest.get().getDigestLength();
+	}
+
+	/**
+	 * reads the stream up to its end and digests everything read
+	 *
+	 * @param is InputStream, it is not closed
+	 * @return digest
+	 * @throws IOException in case of an input/output error
+	 */
+	public byte[] digest(InputStream is) throws IOException {
+		MessageDigest md = digest.get();
+		byte[] buffer = BUFFER.get();
+		int count = is.read(buffer);
+		while (count > -1) {
+			md.update(buffer, 0, count);
+			count = is.read(buffer);
+		}
+		return md.digest();
+	}
+
+	/**
+	 * digests the entries of an embedded archive, so that two archives with the same entries
+	 * have the same digest no matter how they were compressed or in which order the entries
+	 * were written.
+	 *
+	 * @param entries digests of the entries by name
+	 * @return digest
+	 */
+	public byte[] digest(SortedMap<String, byte[]> entries) {
+		MessageDigest md = digest.get();
+		for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+			md.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+			md.update((byte) 0);
+			md.update(entry.getValue());
+		}
+		return md.digest();
+	}
+}
@@ -0,0 +1,109 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.compare;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+/**
+ * Digest algorithms that can be used to compare the content of entries.
+ */
+public enum DigestAlgorithm {
+
+	CRC32("crc32"),
+
+	MD5("md5"),
+
+	SHA_1("sha-1"),
+
+	SHA_256("sha-256");
+
+	private final String name;
+
+	DigestAlgorithm(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @return the name used on the command line
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * creates a new, not thread safe, digest for this algorithm
+	 *
+	 * @return MessageDigest
+	 */
+	public MessageDigest newMessageDigest() {
+		if (this == CRC32) {
+			return new Crc32MessageDigest();
+		}
+		try {
+			return MessageDigest.getInstance(name.toUpperCase());
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform has to support MD5, SHA-1 and SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * looks up an algorithm by its command line name
+	 *
+	 * @param name name of the algorithm, e. g. "sha-256"
+	 * @return DigestAlgorithm
+	 * @throws IllegalArgumentException if there is no such algorithm
+	 */
+	public static DigestAlgorithm forName(String name) {
+		for (DigestAlgorithm algorithm : values()) {
+			if (algorithm.name.equalsIgnoreCase(name)) {
+				return algorithm;
+			}
+		}
+		throw new IllegalArgumentException("unknown digest algorithm: " + name);
+	}
+
+	/**
+	 * exposes java.util.zip.CRC32, which the JIT compiles to the CPU's CRC instructions,
+	 * as a MessageDigest
+	 */
+	private static class Crc32MessageDigest extends MessageDigest {
+		private final CRC32 crc = new CRC32();
+
+		Crc32MessageDigest() {
+			super("CRC32");
+		}
+
+		@Override
+		protected void engineUpdate(byte input) {
+			crc.update(input);
+		}
+
+		@Override
+		protected void engineUpdate(byte[] input, int offset, int len) {
+			crc.update(input, offset, len);
+		}
+
+		@Override
+		protected byte[] engineDigest() {
+			int value = (int) crc.getValue();
+			crc.reset();
+			return new byte[] { (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value };
+		}
+
+		@Override
+		protected int engineGetDigestLength() {
+			return 4;
+		}
+
+		@Override
+		protected void engineReset() {
+			crc.reset();
+		}
+	}
+}
@@ -0,0 +1,243 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.compare;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the differences between two lists of lines with the linear space variant of
+ * Myers' O(ND) algorithm and formats them as the hunks of a unified diff. Lines are
+ * mapped to numbers first, so the algorithm only compares ints, and the common start
+ * and end of both lists are skipped before it runs.
+ */
+public class LineDiff {
+
+	private final List<String> lines1;
+
+	private final List<String> lines2;
+
+	private final int[] a;
+
+	private final int[] b;
+
+	private final boolean[] deleted;
+
+	private final boolean[] inserted;
+
+	private int[] forward;
+
+	private int[] backward;
+
+	/**
+	 * computes the differences
+	 *
+	 * @param lines1 the old lines
+	 * @param lines2 the new lines
+	 */
+	public LineDiff(List<String> lines1, List<String> lines2) {
+		this.lines1 = lines1;
+		this.lines2 = lines2;
+		Map<String, Integer> ids = new HashMap<>();
+		a = toIds(lines1, ids);
+		b = toIds(lines2, ids);
+		deleted = new boolean[a.length];
+		inserted = new boolean[b.length];
+		diff(0, a.length, 0, b.length);
+		forward = null;
+		backward = null;
+	}
+
+	private static int[] toIds(List<String> lines, Map<String, Integer> ids) {
+		int[] result = new int[lines.size()];
+		for (int i = 0; i < result.length; i++) {
+			String line = lines.get(i);
+			Integer id = ids.get(line);
+			if (id == null) {
+				id = Integer.valueOf(ids.size());
+				ids.put(line, id);
+			}
+			result[i] = id.intValue();
+		}
+		return result;
+	}
+
+	/**
+	 * marks the lines to delete from a[aStart, aEnd) and to insert from b[bStart, bEnd)
+	 */
+	private void diff(int aStart, int aEnd, int bStart, int bEnd) {
+		while (aStart < aEnd && bStart < bEnd && a[aStart] == b[bStart]) {
+			aStart++;
+			bStart++;
+		}
+		while (aStart < aEnd && bStart < bEnd && a[aEnd - 1] == b[bEnd - 1]) {
+			aEnd--;
+			bEnd--;
+		}
+		if (aStart == aEnd) {
+			for (int j = bStart; j < bEnd; j++) {
+				inserted[j] = true;
+			}
+			return;
+		}
+		if (bStart == bEnd) {
+			for (int i = aStart; i < aEnd; i++) {
+				deleted[i] = true;
+			}
+			return;
+		}
+		int[] snake = middleSnake(aStart, aEnd, bStart, bEnd);
+		diff(aStart, snake[0], bStart, snake[1]);
+		diff(snake[2], aEnd, snake[3], bEnd);
+	}
+
+	/**
+	 * finds the middle snake of an edit script between a[aStart, aEnd) and b[bStart, bEnd),
+	 * searching forward from the start and backward from the end at the same time
+	 *
+	 * @return start x, start y, end x and end y of the snake
+	 */
+	private int[] middleSnake(int aStart, int aEnd, int bStart, int bEnd) {
+		int n = aEnd - aStart;
+		int m = bEnd - bStart;
+		int delta = n - m;
+		boolean odd = (delta & 1) != 0;
+		int max = (n + m + 1) / 2;
+		int offset = max + 1;
+		int size = 2 * max + 3;
+		if (forward == null || forward.length < size) {
+			forward = new int[size];
+			backward = new int[size];
+		}
+		int[] vf = forward;
+		int[] vb = backward;
+		vf[offset + 1] = 0;
+		vb[offset + 1] = 0;
+
+		for (int d = 0; d <= max; d++) {
+			for (int k = -d; k <= d; k += 2) {
+				int x = (k == -d || (k != d && vf[offset + k - 1] < vf[offset + k + 1])) ? vf[offset + k + 1] : vf[offset + k - 1] + 1;
+				int y = x - k;
+				int x0 = x;
+				int y0 = y;
+				while (x < n && y < m && a[aStart + x] == b[bStart + y]) {
+					x++;
+					y++;
+				}
+				vf[offset + k] = x;
+				int kb = delta - k;
+				if (odd && kb >= -(d - 1) && kb <= d - 1 && x + vb[offset + kb] >= n) {
+					return new int[] { aStart + x0, bStart + y0, aStart + x, bStart + y };
+				}
+			}
+			for (int k = -d; k <= d; k += 2) {
+				int x = (k == -d || (k != d && vb[offset + k - 1] < vb[offset + k + 1])) ? vb[offset + k + 1] : vb[offset + k - 1] + 1;
+				int y = x - k;
+				int x0 = x;
+				int y0 = y;
+				while (x < n && y < m && a[aEnd - 1 - x] == b[bEnd - 1 - y]) {
+					x++;
+					y++;
+				}
+				vb[offset + k] = x;
+				int kf = delta - k;
+				if (!odd && kf >= -d && kf <= d && x + vf[offset + kf] >= n) {
+					return new int[] { aEnd - x, bEnd - y, aEnd - x0, bEnd - y0 };
+				}
+			}
+		}
+		throw new IllegalStateException("no middle snake found");
+	}
+
+	/**
+	 * @return true if the lists have different lines
+	 */
+	public boolean hasDifferences() {
+		for (boolean d : deleted) {
+			if (d) {
+				return true;
+			}
+		}
+		for (boolean i : inserted) {
+			if (i) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * formats the differences as the hunks of a unified diff, without the file header
+	 *
+	 * @param context number of unchanged lines to show around the changes
+	 * @param out receives the lines of the hunks, each terminated by a newline
+	 */
+	public void writeHunks(int context, StringBuilder out) {
+		int i = 0;
+		int j = 0;
+		while (i < a.length || j < b.length) {
+			// skip to the next change
+			int start1 = i;
+			int start2 = j;
+			while (i < a.length && j < b.length && !deleted[i] && !inserted[j]) {
+				i++;
+				j++;
+			}
+			if (i == a.length && j == b.length) {
+				break;
+			}
+			int lead = Math.min(context, i - start1);
+			int hunk1 = i - lead;
+			int hunk2 = j - lead;
+
+			// extend the hunk while the unchanged lines between changes are few enough
+			int end1 = i;
+			int end2 = j;
+			while (true) {
+				while ((end1 < a.length && deleted[end1]) || (end2 < b.length && inserted[end2])) {
+					if (end1 < a.length && deleted[end1]) {
+						end1++;
+					} else {
+						end2++;
+					}
+				}
+				int same = 0;
+				while (end1 + same < a.length && end2 + same < b.length && !deleted[end1 + same] && !inserted[end2 + same]) {
+					same++;
+				}
+				boolean last = end1 + same == a.length && end2 + same == b.length;
+				if (last || same > 2 * context) {
+					int trail = Math.min(context, same);
+					end1 += trail;
+					end2 += trail;
+					break;
+				}
+				end1 += same;
+				end2 += same;
+			}
+
+			int length1 = end1 - hunk1;
+			int length2 = end2 - hunk2;
+			out.append("@@ -").append(length1 == 0 ? hunk1 : hunk1 + 1).append(',').append(length1)
+					.append(" +").append(length2 == 0 ? hunk2 : hunk2 + 1).append(',').append(length2).append(" @@\n");
+			int x = hunk1;
+			int y = hunk2;
+			while (x < end1 || y < end2) {
+				if (x < end1 && deleted[x]) {
+					out.append('-').append(lines1.get(x++)).append('\n');
+				} else if (y < end2 && inserted[y]) {
+					out.append('+').append(lines2.get(y++)).append('\n');
+				} else {
+					out.append(' ').append(lines1.get(x++)).append('\n');
+					y++;
+				}
+			}
+			i = end1;
+			j = end2;
+		}
+	}
+}
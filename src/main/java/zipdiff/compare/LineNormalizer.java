@@ -0,0 +1,142 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.compare;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Normalizes text line by line. Only one line is kept in memory at a time; lines are
+ * passed to {@link #normalizeLine(String)} without their line terminator and written
+ * back with a '\n', so the line endings do not matter. Bytes are read as ISO-8859-1,
+ * which maps each byte to one char and back, so other encodings pass unchanged.
+ */
+public abstract class LineNormalizer implements Normalizer {
+
+	@Override
+	public InputStream normalize(InputStream in) {
+		return new LineFilterInputStream(new BufferedInputStream(in), newLineFilter());
+	}
+
+	/**
+	 * @return a filter for the lines of one entry, it may keep state between lines
+	 */
+	protected abstract LineFilter newLineFilter();
+
+	/**
+	 * filters the lines of one entry
+	 */
+	protected interface LineFilter {
+
+		/**
+		 * @param line a line without its terminator
+		 * @return the line to keep, null to drop it
+		 */
+		String normalizeLine(String line);
+	}
+
+	private static class LineFilterInputStream extends FilterInputStream {
+
+		private final LineFilter filter;
+
+		private final StringBuilder line = new StringBuilder();
+
+		private byte[] pending = new byte[0];
+
+		private int position;
+
+		private boolean eof;
+
+		LineFilterInputStream(InputStream in, LineFilter filter) {
+			super(in);
+			this.filter = filter;
+		}
+
+		/**
+		 * @return false if there are no more lines
+		 */
+		private boolean fill() throws IOException {
+			while (position == pending.length) {
+				if (eof) {
+					return false;
+				}
+				line.setLength(0);
+				int b = in.read();
+				while (b != -1 && b != '\n') {
+					line.append((char) b);
+					b = in.read();
+				}
+				if (b == -1) {
+					eof = true;
+					if (line.length() == 0) {
+						return false;
+					}
+				}
+				int length = line.length();
+				if (length > 0 && line.charAt(length - 1) == '\r') {
+					line.setLength(length - 1);
+				}
+				String normalized = filter.normalizeLine(line.toString());
+				if (normalized != null) {
+					pending = (normalized + '\n').getBytes(StandardCharsets.ISO_8859_1);
+					position = 0;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return fill() ? pending[position++] & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			int count = 0;
+			while (count < len && fill()) {
+				int n = Math.min(len - count, pending.length - position);
+				System.arraycopy(pending, position, b, off + count, n);
+				position += n;
+				count += n;
+			}
+			return count == 0 ? -1 : count;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = 0;
+			while (skipped < n && read() != -1) {
+				skipped++;
+			}
+			return skipped;
+		}
+
+		@Override
+		public int available() {
+			return pending.length - position;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		@Override
+		public void mark(int readlimit) {
+		}
+
+		@Override
+		public void reset() throws IOException {
+			throw new IOException("mark/reset not supported");
+		}
+	}
+}
@@ -0,0 +1,57 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.compare;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Drops the headers of a manifest that tell when, where and by whom it was built, together
+ * with their continuation lines. Header names are compared ignoring case, as the jar
+ * specification says.
+ */
+public class ManifestNormalizer extends LineNormalizer {
+
+	/** headers dropped by default */
+	public static final Collection<String> DEFAULT_HEADERS = Arrays.asList("Build-Date", "Build-Time", "Build-Timestamp",
+			"Build-Jdk", "Build-Jdk-Spec", "Build-Host", "Build-OS", "Built-By", "Built-Date", "Built-Host", "Built-OS",
+			"Built-Status", "Bnd-LastModified", "Created-By", "Implementation-Build-Date", "Originally-Created-By", "Tool");
+
+	private final Set<String> headers = new TreeSet<>();
+
+	public ManifestNormalizer() {
+		this(DEFAULT_HEADERS);
+	}
+
+	/**
+	 * @param headers names of the headers to drop
+	 */
+	public ManifestNormalizer(Collection<String> headers) {
+		for (String header : headers) {
+			this.headers.add(header.toLowerCase(Locale.ROOT));
+		}
+	}
+
+	@Override
+	protected LineFilter newLineFilter() {
+		return new LineFilter() {
+			private boolean dropping;
+
+			@Override
+			public String normalizeLine(String line) {
+				if (line.startsWith(" ")) {
+					return dropping ? null : line;
+				}
+				int colon = line.indexOf(':');
+				dropping = colon > 0 && headers.contains(line.substring(0, colon).toLowerCase(Locale.ROOT));
+				return dropping ? null : line;
+			}
+		};
+	}
+}
@@ -0,0 +1,24 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.compare;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Removes the noise from the content of an entry, e.g. the time of the build, so that
+ * entries that only differ in noise are equal after normalizing. The content is
+ * transformed as it is read; implementations must be thread safe.
+ */
+public interface Normalizer {
+
+	/**
+	 * @param in content of an entry
+	 * @return the normalized content, closing it closes in
+	 * @throws IOException in case of an input/output error
+	 */
+	InputStream normalize(InputStream in) throws IOException;
+}
@@ -0,0 +1,61 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.compare;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The normalizers applied to changed entries, by pattern of the entry names. The first
+ * normalizer whose pattern matches the full name of an entry is used.
+ */
+public class NormalizerRegistry {
+
+	/** manifests, also of embedded zip files */
+	public static final String MANIFEST = "(.*[/!])?META-INF/MANIFEST\\.MF";
+
+	/** properties written by Maven and by the git-commit-id plugin */
+	public static final String BUILD_PROPERTIES = "(.*[/!])?(META-INF/maven/.*/pom|git)\\.properties";
+
+	private final List<Pattern> patterns = new ArrayList<>();
+
+	private final List<Normalizer> normalizers = new ArrayList<>();
+
+	/**
+	 * @return a registry with the normalizers for manifests and build properties
+	 */
+	public static NormalizerRegistry withDefaults() {
+		NormalizerRegistry registry = new NormalizerRegistry();
+		registry.register(MANIFEST, new ManifestNormalizer());
+		registry.register(BUILD_PROPERTIES, new PropertiesNormalizer());
+		return registry;
+	}
+
+	/**
+	 * adds a normalizer, after the ones registered before
+	 *
+	 * @param regex regex matched against the full name of an entry
+	 * @param normalizer normalizer of the matching entries
+	 */
+	public void register(String regex, Normalizer normalizer) {
+		patterns.add(Pattern.compile(regex));
+		normalizers.add(normalizer);
+	}
+
+	/**
+	 * @param name full name of an entry
+	 * @return the normalizer of the entry, null if its content is compared as it is
+	 */
+	public Normalizer find(String name) {
+		for (int i = 0; i < patterns.size(); i++) {
+			if (patterns.get(i).matcher(name).matches()) {
+				return normalizers.get(i);
+			}
+		}
+		return null;
+	}
+}
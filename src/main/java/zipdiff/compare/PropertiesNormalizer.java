@@ -0,0 +1,93 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.compare;
+
+import java.util.regex.Pattern;
+
+/**
+ * Drops the comments of a properties file, where tools such as Maven write the date of
+ * the build, and the properties whose keys match a pattern. Continuation lines of a
+ * dropped property are dropped as well.
+ */
+public class PropertiesNormalizer extends LineNormalizer {
+
+	/** keys dropped by default, e.g. build.time or git.build.time */
+	public static final String DEFAULT_KEYS = "(?i)(.*[.\\-_])?(build[.\\-_]?(time|date|timestamp)|timestamp)";
+
+	private final Pattern keys;
+
+	public PropertiesNormalizer() {
+		this(Pattern.compile(DEFAULT_KEYS));
+	}
+
+	/**
+	 * @param keys pattern of the keys to drop, null to only drop comments
+	 */
+	public PropertiesNormalizer(Pattern keys) {
+		this.keys = keys;
+	}
+
+	@Override
+	protected LineFilter newLineFilter() {
+		return new LineFilter() {
+			private boolean continued;
+
+			private boolean dropping;
+
+			@Override
+			public String normalizeLine(String line) {
+				if (continued) {
+					continued = endsWithContinuation(line);
+					return dropping ? null : line;
+				}
+				String trimmed = trimLeading(line);
+				if (trimmed.startsWith("#") || trimmed.startsWith("!")) {
+					return null;
+				}
+				continued = endsWithContinuation(line);
+				dropping = keys != null && keys.matcher(key(trimmed)).matches();
+				return dropping ? null : line;
+			}
+		};
+	}
+
+	private static String trimLeading(String line) {
+		int i = 0;
+		while (i < line.length() && (line.charAt(i) == ' ' || line.charAt(i) == '\t' || line.charAt(i) == '\f')) {
+			i++;
+		}
+		return line.substring(i);
+	}
+
+	/**
+	 * @return true if the line ends with an odd number of backslashes
+	 */
+	private static boolean endsWithContinuation(String line) {
+		int count = 0;
+		for (int i = line.length() - 1; i >= 0 && line.charAt(i) == '\\'; i--) {
+			count++;
+		}
+		return (count & 1) == 1;
+	}
+
+	/**
+	 * @return the key of a property line without its escapes
+	 */
+	private static String key(String line) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '\\' && i + 1 < line.length()) {
+				sb.append(line.charAt(++i));
+			} else if (c == '=' || c == ':' || c == ' ' || c == '\t' || c == '\f') {
+				break;
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+}
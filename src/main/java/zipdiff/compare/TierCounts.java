@@ -0,0 +1,106 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.compare;
+
+/**
+ * Counts how the entries present in both files were decided when their content is
+ * compared: by size, by CRC, or by reading and digesting their data.
+ */
+public class TierCounts {
+
+	private long sizeRejected;
+
+	private long crcAccepted;
+
+	private long crcRejected;
+
+	private long indexDigestCompared;
+
+	private long digestAccepted;
+
+	private long digestRejected;
+
+	private long entriesRead;
+
+	private long bytesRead;
+
+	public void sizeRejected() {
+		sizeRejected++;
+	}
+
+	public void crcDecided(boolean match) {
+		if (match) {
+			crcAccepted++;
+		} else {
+			crcRejected++;
+		}
+	}
+
+	public void indexDigestCompared() {
+		indexDigestCompared++;
+	}
+
+	public void digestDecided(boolean match) {
+		if (match) {
+			digestAccepted++;
+		} else {
+			digestRejected++;
+		}
+	}
+
+	public void entryRead(long bytes) {
+		entriesRead++;
+		bytesRead += bytes;
+	}
+
+	/** @return number of entries rejected because their sizes differ */
+	public long getSizeRejected() {
+		return sizeRejected;
+	}
+
+	/** @return number of entries accepted because their CRCs are equal */
+	public long getCrcAccepted() {
+		return crcAccepted;
+	}
+
+	/** @return number of entries rejected because their CRCs differ */
+	public long getCrcRejected() {
+		return crcRejected;
+	}
+
+	/** @return number of entries compared by digests computed while indexing embedded archives */
+	public long getIndexDigestCompared() {
+		return indexDigestCompared;
+	}
+
+	/** @return number of entries whose data had to be digested and turned out to be equal */
+	public long getDigestAccepted() {
+		return digestAccepted;
+	}
+
+	/** @return number of entries whose data had to be digested and turned out to differ */
+	public long getDigestRejected() {
+		return digestRejected;
+	}
+
+	/** @return number of entries read to compute a digest */
+	public long getEntriesRead() {
+		return entriesRead;
+	}
+
+	/** @return number of uncompressed bytes read to compute digests */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("size: %d rejected; crc: %d accepted, %d rejected; embedded digest: %d compared; "
+				+ "content digest: %d accepted, %d rejected (%d entries, %d bytes read)",
+				sizeRejected, crcAccepted, crcRejected, indexDigestCompared,
+				digestAccepted, digestRejected, entriesRead, bytesRead);
+	}
+}
@@ -0,0 +1,741 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.index;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+
+/**
+ * The entries of a zip file, including the entries of embedded zip files, kept in
+ * parallel primitive arrays instead of one ZipEntry per entry.
+ * <p>
+ * The name of an entry is split into its directory, which is shared by all entries
+ * in that directory, and its file name, which is stored in a single char array.
+ * Entries of embedded zip files point to the entry of the zip file they are part of,
+ * so the name of the embedded zip file is not repeated in each of their names. The
+ * full name of such an entry is the name of its parent, "!" and its own name.
+ * <p>
+ * An ArchiveIndex is immutable once built and may be shared between threads.
+ */
+public final class ArchiveIndex {
+
+	/** parent of the entries of the zip file itself */
+	public static final int NO_PARENT = -1;
+
+	static final byte FLAG_CRC = 1;
+
+	static final byte FLAG_ARCHIVE = 2;
+
+	static final byte FLAG_DIGEST = 4;
+
+	static final String[] NO_STRINGS = new String[0];
+
+	final int count;
+
+	final int[] parents;
+
+	/** directory part of the entry names after skipping prefixes, shared between entries */
+	final String[] dirs;
+
+	/** prefix skipped from the entry names, null if nothing is skipped */
+	final String[] skipped;
+
+	/** the file name of entry i is stored from leafStarts[i] up to leafStarts[i + 1] */
+	final int[] leafStarts;
+
+	/** the file names if they only contain ISO-8859-1 characters, one byte per character, or null */
+	final byte[] leafLatin1;
+
+	/** the file names if they contain other characters, or null */
+	final char[] leafChars;
+
+	final long[] sizes;
+
+	final long[] compressedSizes;
+
+	final long[] times;
+
+	final int[] crcs;
+
+	final byte[] methods;
+
+	final byte[] flags;
+
+	final int digestLength;
+
+	final byte[] digests;
+
+	private volatile int[] sortedOrder;
+
+	ArchiveIndex(int count, int[] parents, String[] dirs, String[] skipped, int[] leafStarts, byte[] leafLatin1, char[] leafChars,
+			long[] sizes, long[] compressedSizes, long[] times, int[] crcs, byte[] methods, byte[] flags,
+			int digestLength, byte[] digests) {
+		this.count = count;
+		this.parents = parents;
+		this.dirs = dirs;
+		this.skipped = skipped;
+		this.leafStarts = leafStarts;
+		this.leafLatin1 = leafLatin1;
+		this.leafChars = leafChars;
+		this.sizes = sizes;
+		this.compressedSizes = compressedSizes;
+		this.times = times;
+		this.crcs = crcs;
+		this.methods = methods;
+		this.flags = flags;
+		this.digestLength = digestLength;
+		this.digests = digests;
+	}
+
+	/**
+	 * @return number of entries
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * @return an estimate of the bytes the index takes up on the heap, counting each
+	 * directory name once for the entries next to each other that share it
+	 */
+	long memorySize() {
+		long size = 64 + 4L * parents.length + 4L * dirs.length + 4L * leafStarts.length
+				+ (leafLatin1 != null ? leafLatin1.length : 2L * leafChars.length)
+				+ 8L * sizes.length + 8L * compressedSizes.length + 8L * times.length + 4L * crcs.length
+				+ methods.length + flags.length + digests.length + 4L * count;
+		for (int i = 0; i < count; i++) {
+			if (i == 0 || dirs[i] != dirs[i - 1]) {
+				size += 40 + 2L * dirs[i].length();
+			}
+		}
+		if (skipped != null) {
+			size += 4L * skipped.length;
+		}
+		return size;
+	}
+
+	/**
+	 * @param i entry
+	 * @return the entry of the embedded zip file entry i is part of, or {@link #NO_PARENT}
+	 */
+	public int getParent(int i) {
+		return parents[i];
+	}
+
+	/**
+	 * @param i entry
+	 * @return number of embedded zip files entry i is nested in
+	 */
+	public int getDepth(int i) {
+		int depth = 0;
+		for (int p = parents[i]; p != NO_PARENT; p = parents[p]) {
+			depth++;
+		}
+		return depth;
+	}
+
+	/**
+	 * @param i entry
+	 * @return the full name of the entry, as used in the differences
+	 */
+	public String getName(int i) {
+		StringBuilder sb = new StringBuilder();
+		appendName(sb, i);
+		return sb.toString();
+	}
+
+	private void appendName(StringBuilder sb, int i) {
+		if (parents[i] != NO_PARENT) {
+			appendName(sb, parents[i]);
+			sb.append('!');
+		}
+		sb.append(dirs[i]);
+		appendLeaf(sb, i);
+	}
+
+	private void appendLeaf(StringBuilder sb, int i) {
+		if (leafChars != null) {
+			sb.append(leafChars, leafStarts[i], leafStarts[i + 1] - leafStarts[i]);
+		} else {
+			for (int pos = leafStarts[i]; pos < leafStarts[i + 1]; pos++) {
+				sb.append((char) (leafLatin1[pos] & 0xFF));
+			}
+		}
+	}
+
+	private char leafChar(int pos) {
+		return leafChars != null ? leafChars[pos] : (char) (leafLatin1[pos] & 0xFF);
+	}
+
+	/**
+	 * @param i entry
+	 * @return the name of the entry within the zip file it is part of, without skipping prefixes
+	 */
+	public String getEntryName(int i) {
+		StringBuilder sb = new StringBuilder();
+		if (skipped != null) {
+			sb.append(skipped[i]);
+		}
+		sb.append(dirs[i]);
+		appendLeaf(sb, i);
+		return sb.toString();
+	}
+
+	public boolean isDirectory(int i) {
+		int end = leafStarts[i + 1];
+		return end == leafStarts[i] ? dirs[i].endsWith("/") : leafChar(end - 1) == '/';
+	}
+
+	/**
+	 * @return the uncompressed size, -1 if unknown
+	 */
+	public long getSize(int i) {
+		return sizes[i];
+	}
+
+	/**
+	 * @return the compressed size, -1 if unknown
+	 */
+	public long getCompressedSize(int i) {
+		return compressedSizes[i];
+	}
+
+	/**
+	 * @return the modification time, -1 if unknown
+	 */
+	public long getTime(int i) {
+		return times[i];
+	}
+
+	/**
+	 * @return the CRC-32 of the uncompressed data, -1 if unknown
+	 */
+	public long getCrc(int i) {
+		return (flags[i] & FLAG_CRC) != 0 ? crcs[i] & 0xFFFFFFFFL : -1;
+	}
+
+	/**
+	 * @return the compression method, -1 if unknown
+	 */
+	public int getMethod(int i) {
+		return methods[i];
+	}
+
+	/**
+	 * @return true if the entry is an embedded zip file whose entries are part of the index
+	 */
+	public boolean isArchive(int i) {
+		return (flags[i] & FLAG_ARCHIVE) != 0;
+	}
+
+	/**
+	 * @return true if the digest of the content of the entry has been computed while indexing
+	 */
+	public boolean hasDigest(int i) {
+		return (flags[i] & FLAG_DIGEST) != 0;
+	}
+
+	/**
+	 * @return a copy of the digest of the content of the entry, null if there is none
+	 */
+	public byte[] getDigest(int i) {
+		if (!hasDigest(i)) {
+			return null;
+		}
+		return Arrays.copyOfRange(digests, i * digestLength, (i + 1) * digestLength);
+	}
+
+	/**
+	 * @return true if both entries have digests and these are equal
+	 */
+	public boolean digestEquals(int i, ArchiveIndex other, int j) {
+		if (!hasDigest(i) || !other.hasDigest(j) || digestLength != other.digestLength) {
+			return false;
+		}
+		int a = i * digestLength;
+		int b = j * other.digestLength;
+		for (int k = 0; k < digestLength; k++) {
+			if (digests[a + k] != other.digests[b + k]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * creates a ZipEntry with the metadata of an entry, named as within its zip file
+	 *
+	 * @param i entry
+	 * @return ZipEntry
+	 */
+	public ZipEntry toZipEntry(int i) {
+		ZipEntry entry = new ZipEntry(getEntryName(i));
+		if (methods[i] == ZipEntry.STORED || methods[i] == ZipEntry.DEFLATED) {
+			entry.setMethod(methods[i]);
+		}
+		if (times[i] != -1) {
+			entry.setTime(times[i]);
+		}
+		if (sizes[i] >= 0) {
+			entry.setSize(sizes[i]);
+		}
+		if (compressedSizes[i] >= 0) {
+			entry.setCompressedSize(compressedSizes[i]);
+		}
+		if ((flags[i] & FLAG_CRC) != 0) {
+			entry.setCrc(getCrc(i));
+		}
+		return entry;
+	}
+
+	/**
+	 * Returns the entries ordered by their full names. If several entries have the same
+	 * name only the one added last is included.
+	 *
+	 * @return entry numbers
+	 */
+	public int[] sortedOrder() {
+		int[] order = sortedOrder;
+		if (order == null) {
+			order = new int[count];
+			for (int i = 0; i < count; i++) {
+				order[i] = i;
+			}
+			final NameComparator comparator = new NameComparator();
+			int[] tmp = new int[count];
+			mergeSort(order, tmp, 0, count, comparator);
+
+			int unique = 0;
+			for (int k = 0; k < count; k++) {
+				// the sort is stable, so the entry added last comes last among equal names
+				if (k + 1 < count && comparator.compare(this, order[k], this, order[k + 1]) == 0) {
+					continue;
+				}
+				order[unique++] = order[k];
+			}
+			sortedOrder = order = unique == count ? order : Arrays.copyOf(order, unique);
+		}
+		return order;
+	}
+
+	private void mergeSort(int[] a, int[] tmp, int from, int to, NameComparator comparator) {
+		if (to - from < 2) {
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(a, tmp, from, mid, comparator);
+		mergeSort(a, tmp, mid, to, comparator);
+		if (comparator.compare(this, a[mid - 1], this, a[mid]) <= 0) {
+			return;
+		}
+		System.arraycopy(a, from, tmp, from, to - from);
+		int i = from;
+		int j = mid;
+		for (int k = from; k < to; k++) {
+			if (j >= to || (i < mid && comparator.compare(this, tmp[i], this, tmp[j]) <= 0)) {
+				a[k] = tmp[i++];
+			} else {
+				a[k] = tmp[j++];
+			}
+		}
+	}
+
+	/**
+	 * looks up an entry by its full name
+	 *
+	 * @param name full name
+	 * @return entry, or -1 if there is none
+	 */
+	public int find(String name) {
+		int[] order = sortedOrder();
+		NameComparator comparator = new NameComparator();
+		int low = 0;
+		int high = order.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = comparator.compare(this, order[mid], name);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return order[mid];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Compares full names of entries in the same order as String.compareTo, without
+	 * building the names. An instance keeps some state and must not be shared between threads.
+	 */
+	public static final class NameComparator {
+		private final NameCursor cursor1 = new NameCursor();
+
+		private final NameCursor cursor2 = new NameCursor();
+
+		public int compare(ArchiveIndex index1, int i, ArchiveIndex index2, int j) {
+			cursor1.reset(index1, i);
+			cursor2.reset(index2, j);
+			while (true) {
+				int c1 = cursor1.next();
+				int c2 = cursor2.next();
+				if (c1 != c2) {
+					return c1 - c2;
+				}
+				if (c1 < 0) {
+					return 0;
+				}
+			}
+		}
+
+		public int compare(ArchiveIndex index, int i, String name) {
+			cursor1.reset(index, i);
+			int length = name.length();
+			for (int k = 0; ; k++) {
+				int c1 = cursor1.next();
+				int c2 = k < length ? name.charAt(k) : -1;
+				if (c1 != c2) {
+					return c1 - c2;
+				}
+				if (c1 < 0) {
+					return 0;
+				}
+			}
+		}
+	}
+
+	/**
+	 * walks the characters of the full name of an entry
+	 */
+	private static final class NameCursor {
+		private ArchiveIndex index;
+
+		private int[] chain = new int[8];
+
+		private int level;
+
+		private int depth;
+
+		/** 0: directory, 1: file name, 2: separator */
+		private int part;
+
+		private int pos;
+
+		void reset(ArchiveIndex index, int i) {
+			this.index = index;
+			depth = 0;
+			for (int e = i; e != NO_PARENT; e = index.parents[e]) {
+				if (depth == chain.length) {
+					chain = Arrays.copyOf(chain, depth * 2);
+				}
+				chain[depth++] = e;
+			}
+			level = depth - 1;
+			part = 0;
+			pos = 0;
+		}
+
+		int next() {
+			while (level >= 0) {
+				int e = chain[level];
+				if (part == 0) {
+					String dir = index.dirs[e];
+					if (pos < dir.length()) {
+						return dir.charAt(pos++);
+					}
+					part = 1;
+					pos = index.leafStarts[e];
+				}
+				if (part == 1) {
+					if (pos < index.leafStarts[e + 1]) {
+						return index.leafChar(pos++);
+					}
+					part = 2;
+				}
+				level--;
+				part = 0;
+				pos = 0;
+				if (level >= 0) {
+					return '!';
+				}
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * Collects the entries of an ArchiveIndex. Not thread safe, parallel indexing
+	 * uses one Builder per task and appends them afterwards.
+	 */
+	public static final class Builder {
+		private final int digestLength;
+
+		private final Map<String, String> strings;
+
+		private int count;
+
+		private int[] parents;
+
+		private String[] dirs;
+
+		private String[] skipped;
+
+		private int[] leafStarts;
+
+		/** replaced by leafChars as soon as a character does not fit into a byte */
+		private byte[] leafLatin1;
+
+		private char[] leafChars;
+
+		private long[] sizes;
+
+		private long[] compressedSizes;
+
+		private long[] times;
+
+		private int[] crcs;
+
+		private byte[] methods;
+
+		private byte[] flags;
+
+		private byte[] digests;
+
+		private boolean rootIsArchive;
+
+		private byte[] rootDigest;
+
+		/**
+		 * @param digestLength length of the content digests that will be set, 0 if there are none
+		 */
+		public Builder(int digestLength) {
+			this(digestLength, 64);
+		}
+
+		Builder(int digestLength, int capacity) {
+			this.digestLength = digestLength;
+			this.strings = new HashMap<>();
+			capacity = Math.max(capacity, 1);
+			parents = new int[capacity];
+			dirs = new String[capacity];
+			leafStarts = new int[capacity + 1];
+			leafLatin1 = new byte[capacity * 16];
+			sizes = new long[capacity];
+			compressedSizes = new long[capacity];
+			times = new long[capacity];
+			crcs = new int[capacity];
+			methods = new byte[capacity];
+			flags = new byte[capacity];
+			digests = new byte[capacity * digestLength];
+		}
+
+		public int size() {
+			return count;
+		}
+
+		/**
+		 * adds an entry
+		 *
+		 * @param parent the embedded zip file entry the entry is part of, or {@link #NO_PARENT}
+		 * @param skippedPrefix part of the entry name that has been skipped
+		 * @param name name of the entry after skipping the prefix
+		 * @param entry metadata of the entry
+		 * @return number of the new entry
+		 */
+		public int add(int parent, String skippedPrefix, String name, ZipEntry entry) {
+			int slash = name.lastIndexOf('/', name.length() - 2);
+			String dir = slash < 0 ? "" : name.substring(0, slash + 1);
+			int i = add(parent, skippedPrefix, dir, name.length() - slash - 1);
+			int pos = leafStarts[i];
+			for (int k = slash + 1; k < name.length(); k++) {
+				putLeafChar(pos++, name.charAt(k));
+			}
+			update(i, entry);
+			return i;
+		}
+
+		private int add(int parent, String skippedPrefix, String dir, int leafLength) {
+			ensureCapacity(count + 1, leafStarts[count] + leafLength);
+			int i = count++;
+			parents[i] = parent;
+			dirs[i] = intern(dir);
+			if (skippedPrefix != null && !skippedPrefix.isEmpty()) {
+				if (skipped == null) {
+					skipped = new String[parents.length];
+					Arrays.fill(skipped, 0, i, "");
+				}
+				skipped[i] = intern(skippedPrefix);
+			} else if (skipped != null) {
+				skipped[i] = "";
+			}
+			leafStarts[i + 1] = leafStarts[i] + leafLength;
+			sizes[i] = -1;
+			compressedSizes[i] = -1;
+			times[i] = -1;
+			methods[i] = -1;
+			return i;
+		}
+
+		/**
+		 * updates the metadata of an entry, e. g. once an entry of an embedded zip
+		 * file has been read and its size and CRC are known
+		 *
+		 * @param i entry
+		 * @param entry metadata
+		 */
+		public void update(int i, ZipEntry entry) {
+			sizes[i] = entry.getSize();
+			compressedSizes[i] = entry.getCompressedSize();
+			times[i] = entry.getTime();
+			methods[i] = (byte) entry.getMethod();
+			if (entry.getCrc() >= 0) {
+				crcs[i] = (int) entry.getCrc();
+				flags[i] |= FLAG_CRC;
+			}
+		}
+
+		/**
+		 * marks an entry as an embedded zip file whose entries have been added
+		 */
+		public void markArchive(int i) {
+			flags[i] |= FLAG_ARCHIVE;
+		}
+
+		public void setDigest(int i, byte[] digest) {
+			if (digest.length != digestLength) {
+				throw new IllegalArgumentException("digest length " + digest.length + ", expected " + digestLength);
+			}
+			System.arraycopy(digest, 0, digests, i * digestLength, digestLength);
+			flags[i] |= FLAG_DIGEST;
+		}
+
+		public byte[] getDigest(int i) {
+			if ((flags[i] & FLAG_DIGEST) == 0) {
+				return null;
+			}
+			return Arrays.copyOfRange(digests, i * digestLength, (i + 1) * digestLength);
+		}
+
+		/**
+		 * Marks the embedded zip file this Builder collects the entries of. It is applied to
+		 * the parent entry when the Builder is appended.
+		 *
+		 * @param digest digest of the embedded zip file, or null
+		 */
+		public void setRoot(byte[] digest) {
+			rootIsArchive = true;
+			rootDigest = digest;
+		}
+
+		/**
+		 * appends all entries of another Builder
+		 *
+		 * @param other Builder to append
+		 * @param rootParent parent of the entries of the other Builder that have no parent
+		 */
+		public void append(Builder other, int rootParent) {
+			int base = count;
+			for (int k = 0; k < other.count; k++) {
+				int parent = other.parents[k] == NO_PARENT ? rootParent : other.parents[k] + base;
+				String skippedPrefix = other.skipped == null ? null : other.skipped[k];
+				int i = add(parent, skippedPrefix, other.dirs[k], other.leafStarts[k + 1] - other.leafStarts[k]);
+				int pos = leafStarts[i];
+				for (int from = other.leafStarts[k]; from < other.leafStarts[k + 1]; from++) {
+					putLeafChar(pos++, other.leafChar(from));
+				}
+				sizes[i] = other.sizes[k];
+				compressedSizes[i] = other.compressedSizes[k];
+				times[i] = other.times[k];
+				crcs[i] = other.crcs[k];
+				methods[i] = other.methods[k];
+				flags[i] = other.flags[k];
+				System.arraycopy(other.digests, k * digestLength, digests, i * digestLength, digestLength);
+			}
+			if (rootParent != NO_PARENT && other.rootIsArchive) {
+				markArchive(rootParent);
+				if (other.rootDigest != null) {
+					setDigest(rootParent, other.rootDigest);
+				}
+			}
+		}
+
+		private char leafChar(int pos) {
+			return leafChars != null ? leafChars[pos] : (char) (leafLatin1[pos] & 0xFF);
+		}
+
+		private void putLeafChar(int pos, char c) {
+			if (leafChars != null) {
+				leafChars[pos] = c;
+			} else if (c <= 0xFF) {
+				leafLatin1[pos] = (byte) c;
+			} else {
+				leafChars = new char[leafLatin1.length];
+				for (int k = 0; k < leafLatin1.length; k++) {
+					leafChars[k] = (char) (leafLatin1[k] & 0xFF);
+				}
+				leafLatin1 = null;
+				leafChars[pos] = c;
+			}
+		}
+
+		private String intern(String s) {
+			String interned = strings.get(s);
+			if (interned == null) {
+				strings.put(s, s);
+				interned = s;
+			}
+			return interned;
+		}
+
+		private void ensureCapacity(int entries, int chars) {
+			if (entries > parents.length) {
+				int capacity = Math.max(entries, parents.length * 2);
+				parents = Arrays.copyOf(parents, capacity);
+				dirs = Arrays.copyOf(dirs, capacity);
+				if (skipped != null) {
+					skipped = Arrays.copyOf(skipped, capacity);
+				}
+				leafStarts = Arrays.copyOf(leafStarts, capacity + 1);
+				sizes = Arrays.copyOf(sizes, capacity);
+				compressedSizes = Arrays.copyOf(compressedSizes, capacity);
+				times = Arrays.copyOf(times, capacity);
+				crcs = Arrays.copyOf(crcs, capacity);
+				methods = Arrays.copyOf(methods, capacity);
+				flags = Arrays.copyOf(flags, capacity);
+				digests = Arrays.copyOf(digests, capacity * digestLength);
+			}
+			if (leafChars != null && chars > leafChars.length) {
+				leafChars = Arrays.copyOf(leafChars, Math.max(chars, leafChars.length * 2));
+			} else if (leafLatin1 != null && chars > leafLatin1.length) {
+				leafLatin1 = Arrays.copyOf(leafLatin1, Math.max(chars, leafLatin1.length * 2));
+			}
+		}
+
+		/**
+		 * @return the index, with arrays trimmed to the number of entries
+		 */
+		public ArchiveIndex build() {
+			return new ArchiveIndex(count,
+					Arrays.copyOf(parents, count),
+					Arrays.copyOf(dirs, count),
+					skipped == null ? null : Arrays.copyOf(skipped, count),
+					Arrays.copyOf(leafStarts, count + 1),
+					leafLatin1 == null ? null : Arrays.copyOf(leafLatin1, leafStarts[count]),
+					leafChars == null ? null : Arrays.copyOf(leafChars, leafStarts[count]),
+					Arrays.copyOf(sizes, count),
+					Arrays.copyOf(compressedSizes, count),
+					Arrays.copyOf(times, count),
+					Arrays.copyOf(crcs, count),
+					Arrays.copyOf(methods, count),
+					Arrays.copyOf(flags, count),
+					digestLength,
+					Arrays.copyOf(digests, count * digestLength));
+		}
+	}
+}
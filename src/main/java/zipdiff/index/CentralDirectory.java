@@ -0,0 +1,305 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the central directory of a zip file through a memory mapped FileChannel.
+ * Only the end of central directory record and the central directory itself are
+ * mapped, the entry data is never touched.
+ */
+public class CentralDirectory {
+
+	private static final int EOCD_SIGNATURE = 0x06054b50;
+
+	private static final int EOCD_LENGTH = 22;
+
+	private static final int ZIP64_EOCD_LOCATOR_SIGNATURE = 0x07064b50;
+
+	private static final int ZIP64_EOCD_LOCATOR_LENGTH = 20;
+
+	private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+
+	private static final int CEN_SIGNATURE = 0x02014b50;
+
+	private static final int CEN_HEADER_LENGTH = 46;
+
+	private static final int ZIP64_EXTRA_ID = 0x0001;
+
+	private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+	private final List<Entry> entries;
+
+	private CentralDirectory(List<Entry> entries) {
+		this.entries = entries;
+	}
+
+	/**
+	 * @return the entries in the order they appear in the central directory
+	 */
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * reads the central directory of a zip file
+	 *
+	 * @param file zip file
+	 * @return the central directory
+	 * @throws IOException in case of an input/output error or if the file is not a zip file
+	 */
+	public static CentralDirectory read(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long length = channel.size();
+			if (length < EOCD_LENGTH) {
+				throw new ZipException("not a zip file: " + file);
+			}
+
+			long tailLength = Math.min(length, EOCD_LENGTH + 0xFFFF + ZIP64_EOCD_LOCATOR_LENGTH);
+			long tailStart = length - tailLength;
+			MappedByteBuffer tail = map(channel, tailStart, tailLength);
+
+			int eocd = findEndOfCentralDirectory(tail);
+			if (eocd < 0) {
+				throw new ZipException("end of central directory not found: " + file);
+			}
+			long count = tail.getShort(eocd + 10) & 0xFFFF;
+			long cenSize = tail.getInt(eocd + 12) & ZIP64_MAGIC;
+			long cenOffset = tail.getInt(eocd + 16) & ZIP64_MAGIC;
+
+			int locator = eocd - ZIP64_EOCD_LOCATOR_LENGTH;
+			if (locator >= 0 && tail.getInt(locator) == ZIP64_EOCD_LOCATOR_SIGNATURE) {
+				long zip64Offset = tail.getLong(locator + 8);
+				MappedByteBuffer zip64 = map(channel, zip64Offset, 56);
+				if (zip64.getInt(0) != ZIP64_EOCD_SIGNATURE) {
+					throw new ZipException("invalid zip64 end of central directory: " + file);
+				}
+				count = zip64.getLong(32);
+				cenSize = zip64.getLong(40);
+				cenOffset = zip64.getLong(48);
+			}
+
+			if (cenOffset + cenSize > length || cenSize > Integer.MAX_VALUE) {
+				throw new ZipException("invalid central directory: " + file);
+			}
+			return new CentralDirectory(readEntries(map(channel, cenOffset, cenSize), count));
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		return buffer;
+	}
+
+	private static int findEndOfCentralDirectory(MappedByteBuffer tail) {
+		for (int pos = tail.limit() - EOCD_LENGTH; pos >= 0; pos--) {
+			if (tail.getInt(pos) == EOCD_SIGNATURE) {
+				int commentLength = tail.getShort(pos + 20) & 0xFFFF;
+				if (pos + EOCD_LENGTH + commentLength == tail.limit()) {
+					return pos;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private static List<Entry> readEntries(MappedByteBuffer cen, long count) throws ZipException {
+		List<Entry> entries = new ArrayList<>((int) Math.min(count, 1 << 20));
+		int pos = 0;
+		while (pos + CEN_HEADER_LENGTH <= cen.limit()) {
+			if (cen.getInt(pos) != CEN_SIGNATURE) {
+				throw new ZipException("invalid central directory header at " + pos);
+			}
+			int flags = cen.getShort(pos + 8) & 0xFFFF;
+			int method = cen.getShort(pos + 10) & 0xFFFF;
+			long dosTime = cen.getInt(pos + 12) & ZIP64_MAGIC;
+			long crc = cen.getInt(pos + 16) & ZIP64_MAGIC;
+			long compressedSize = cen.getInt(pos + 20) & ZIP64_MAGIC;
+			long size = cen.getInt(pos + 24) & ZIP64_MAGIC;
+			int nameLength = cen.getShort(pos + 28) & 0xFFFF;
+			int extraLength = cen.getShort(pos + 30) & 0xFFFF;
+			int commentLength = cen.getShort(pos + 32) & 0xFFFF;
+			long localHeaderOffset = cen.getInt(pos + 42) & ZIP64_MAGIC;
+
+			byte[] nameBytes = new byte[nameLength];
+			cen.position(pos + CEN_HEADER_LENGTH);
+			cen.get(nameBytes);
+			String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+			// sizes and offset that do not fit into 32 bit are stored in the zip64 extra field
+			int extra = pos + CEN_HEADER_LENGTH + nameLength;
+			int extraEnd = extra + extraLength;
+			while (extra + 4 <= extraEnd) {
+				int id = cen.getShort(extra) & 0xFFFF;
+				int dataLength = cen.getShort(extra + 2) & 0xFFFF;
+				if (id == ZIP64_EXTRA_ID) {
+					int field = extra + 4;
+					if (size == ZIP64_MAGIC) {
+						size = cen.getLong(field);
+						field += 8;
+					}
+					if (compressedSize == ZIP64_MAGIC) {
+						compressedSize = cen.getLong(field);
+						field += 8;
+					}
+					if (localHeaderOffset == ZIP64_MAGIC) {
+						localHeaderOffset = cen.getLong(field);
+					}
+				}
+				extra += 4 + dataLength;
+			}
+
+			byte[] extraBytes = null;
+			if (extraLength > 0) {
+				extraBytes = new byte[extraLength];
+				cen.position(pos + CEN_HEADER_LENGTH + nameLength);
+				cen.get(extraBytes);
+			}
+
+			entries.add(new Entry(name, flags, method, dosTime, crc, compressedSize, size, localHeaderOffset, extraBytes));
+			pos = extraEnd + commentLength;
+		}
+		if (entries.size() != count && count != 0xFFFF) {
+			throw new ZipException("central directory has " + entries.size() + " entries, expected " + count);
+		}
+		return Collections.unmodifiableList(entries);
+	}
+
+	/**
+	 * converts a MS-DOS date and time to milliseconds since the epoch, in local time as
+	 * {@link ZipEntry#setTime(long)} expects.
+	 */
+	static long dosToJavaTime(long dosTime) {
+		try {
+			LocalDateTime time = LocalDateTime.of(
+					(int) ((dosTime >> 25) & 0x7f) + 1980,
+					(int) ((dosTime >> 21) & 0x0f),
+					(int) ((dosTime >> 16) & 0x1f),
+					(int) ((dosTime >> 11) & 0x1f),
+					(int) ((dosTime >> 5) & 0x3f),
+					(int) ((dosTime << 1) & 0x3e));
+			return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+		} catch (DateTimeException e) {
+			// not a valid date, ZipFile reports these as unknown as well
+			return -1;
+		}
+	}
+
+	/**
+	 * a single central directory record
+	 */
+	public static class Entry {
+		private final String name;
+		private final int flags;
+		private final int method;
+		private final long dosTime;
+		private final long crc;
+		private final long compressedSize;
+		private final long size;
+		private final long localHeaderOffset;
+		private final byte[] extra;
+
+		Entry(String name, int flags, int method, long dosTime, long crc, long compressedSize, long size, long localHeaderOffset, byte[] extra) {
+			this.name = name;
+			this.flags = flags;
+			this.method = method;
+			this.dosTime = dosTime;
+			this.crc = crc;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.localHeaderOffset = localHeaderOffset;
+			this.extra = extra;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getFlags() {
+			return flags;
+		}
+
+		public int getMethod() {
+			return method;
+		}
+
+		/**
+		 * @return the time as MS-DOS date and time, as it is stored in the headers
+		 */
+		public long getDosTime() {
+			return dosTime;
+		}
+
+		public long getCrc() {
+			return crc;
+		}
+
+		public long getCompressedSize() {
+			return compressedSize;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public long getLocalHeaderOffset() {
+			return localHeaderOffset;
+		}
+
+		public boolean isDirectory() {
+			return name.endsWith("/");
+		}
+
+		/**
+		 * @return the extra field of the central directory record, or null if it has none
+		 */
+		public byte[] getExtra() {
+			return extra;
+		}
+
+		/**
+		 * @return a ZipEntry carrying the metadata of this record. The extra field is passed
+		 * on, so that the entry has the extended timestamps ZipFile reads from it.
+		 */
+		public ZipEntry toZipEntry() {
+			ZipEntry entry = new ZipEntry(name);
+			if (method == ZipEntry.STORED || method == ZipEntry.DEFLATED) {
+				entry.setMethod(method);
+			}
+			long time = dosToJavaTime(dosTime);
+			if (time != -1) {
+				entry.setTime(time);
+			}
+			if (extra != null) {
+				entry.setExtra(extra);
+			}
+			entry.setCrc(crc);
+			entry.setCompressedSize(compressedSize);
+			entry.setSize(size);
+			return entry;
+		}
+	}
+}
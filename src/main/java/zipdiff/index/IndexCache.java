@@ -0,0 +1,405 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An on-disk cache of archive indexes. An entry is keyed by the canonical path, size and
+ * modification time of the zip file and by the settings used to index it, and stored
+ * in a compressed binary file. The least recently used files are deleted once the
+ * cache grows beyond its size limit.
+ * <p>
+ * A process that compares many files, such as {@link zipdiff.DiffServer}, can also keep
+ * the most recently used indexes in memory, in front of the files or without them. The
+ * cache may be shared by several threads.
+ */
+public class IndexCache {
+
+	private static final int MAGIC = 0x5a444958; // "ZDIX"
+
+	private static final int VERSION = 2;
+
+	private static final String SUFFIX = ".idx";
+
+	private final Logger logger = Logger.getLogger(getClass().getName());
+
+	private final File directory;
+
+	private final long maxSize;
+
+	private final AtomicInteger hits = new AtomicInteger();
+
+	private final AtomicInteger misses = new AtomicInteger();
+
+	/** size in bytes the indexes kept in memory may take up together, 0 to keep none */
+	private final long maxMemorySize;
+
+	/** the indexes kept in memory, least recently used first */
+	private final LinkedHashMap<String, ArchiveIndex> memory = new LinkedHashMap<>(16, 0.75f, true);
+
+	private long memorySize;
+
+	/**
+	 * @param directory directory to keep the cache files in, it is created if necessary
+	 * @param maxSize size in bytes the cache files may take up together
+	 */
+	public IndexCache(File directory, long maxSize) {
+		this(directory, maxSize, 0);
+	}
+
+	/**
+	 * @param directory directory to keep the cache files in, it is created if necessary;
+	 * null to only keep indexes in memory
+	 * @param maxSize size in bytes the cache files may take up together
+	 * @param maxMemorySize estimated size in bytes the indexes kept in memory may take up together
+	 */
+	public IndexCache(File directory, long maxSize, long maxMemorySize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+		this.maxMemorySize = maxMemorySize;
+	}
+
+	/**
+	 * builds the key of a zip file
+	 *
+	 * @param file zip file
+	 * @param settings everything else that influences the index, e. g. the filter
+	 * @return key
+	 * @throws IOException in case of an input/output error
+	 */
+	public String key(File file, String settings) throws IOException {
+		return file.getCanonicalPath() + '\0' + file.length() + '\0' + file.lastModified() + '\0' + settings;
+	}
+
+	/**
+	 * looks up the index stored under a key
+	 *
+	 * @param key key created by {@link #key(File, String)}
+	 * @return the index, or null if there is none
+	 */
+	public ArchiveIndex load(String key) {
+		synchronized (memory) {
+			ArchiveIndex index = memory.get(key);
+			if (index != null) {
+				hits.incrementAndGet();
+				return index;
+			}
+		}
+		if (directory == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		File file = fileFor(key);
+		if (!file.isFile()) {
+			misses.incrementAndGet();
+			return null;
+		}
+		try {
+			ArchiveIndex index = read(file, key);
+			if (index == null) {
+				misses.incrementAndGet();
+				return null;
+			}
+			// the modification time of a cache file is its last use
+			file.setLastModified(System.currentTimeMillis());
+			hits.incrementAndGet();
+			remember(key, index);
+			return index;
+		} catch (IOException | RuntimeException e) {
+			logger.log(Level.WARNING, "ignoring unreadable cache file " + file, e);
+			file.delete();
+			misses.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * stores an index and evicts the least recently used files if the cache is too large.
+	 * Failures are logged but not reported, the cache is only an optimization.
+	 *
+	 * @param key key created by {@link #key(File, String)}
+	 * @param index index
+	 */
+	public void store(String key, ArchiveIndex index) {
+		remember(key, index);
+		if (directory == null) {
+			return;
+		}
+		File file = fileFor(key);
+		File tmp = null;
+		try {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("cannot create " + directory);
+			}
+			tmp = File.createTempFile("index", ".tmp", directory);
+			write(tmp, key, index);
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			evict();
+		} catch (IOException | RuntimeException e) {
+			logger.log(Level.WARNING, "cannot write cache file " + file, e);
+			if (tmp != null) {
+				tmp.delete();
+			}
+		}
+	}
+
+	/**
+	 * keeps an index in memory and forgets the least recently used ones if they take up
+	 * too much memory
+	 */
+	private void remember(String key, ArchiveIndex index) {
+		if (maxMemorySize <= 0) {
+			return;
+		}
+		long size = index.memorySize();
+		if (size > maxMemorySize) {
+			return;
+		}
+		// sorted once here instead of by the threads that share the index
+		index.sortedOrder();
+		synchronized (memory) {
+			ArchiveIndex previous = memory.put(key, index);
+			if (previous != null) {
+				memorySize -= previous.memorySize();
+			}
+			memorySize += size;
+			Iterator<ArchiveIndex> eldest = memory.values().iterator();
+			while (memorySize > maxMemorySize) {
+				memorySize -= eldest.next().memorySize();
+				eldest.remove();
+			}
+		}
+	}
+
+	/** @return number of successful lookups */
+	public int getHits() {
+		return hits.get();
+	}
+
+	/** @return number of lookups that found nothing */
+	public int getMisses() {
+		return misses.get();
+	}
+
+	private File fileFor(String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder();
+			for (byte b : digest) {
+				sb.append(String.format("%02x", b));
+			}
+			return new File(directory, sb.append(SUFFIX).toString());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void write(File file, String key, ArchiveIndex index) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(key);
+			int count = index.count;
+			out.writeInt(count);
+			out.writeByte(index.digestLength);
+			out.writeBoolean(index.skipped != null);
+
+			// the shared directory names are written once and referred to by number
+			Map<String, Integer> strings = new HashMap<>();
+			List<String> table = new ArrayList<>();
+			int[] dirs = stringIds(index.dirs, strings, table);
+			int[] skipped = index.skipped == null ? null : stringIds(index.skipped, strings, table);
+			out.writeInt(table.size());
+			for (String s : table) {
+				out.writeUTF(s);
+			}
+
+			// column by column, which compresses better than entry by entry
+			writeInts(out, index.parents, count);
+			writeInts(out, dirs, count);
+			if (skipped != null) {
+				writeInts(out, skipped, count);
+			}
+			writeInts(out, index.leafStarts, count + 1);
+			out.writeBoolean(index.leafLatin1 != null);
+			if (index.leafLatin1 != null) {
+				out.write(index.leafLatin1);
+			} else {
+				for (char c : index.leafChars) {
+					out.writeChar(c);
+				}
+			}
+			writeLongs(out, index.sizes, count);
+			writeLongs(out, index.compressedSizes, count);
+			writeLongs(out, index.times, count);
+			writeInts(out, index.crcs, count);
+			out.write(index.methods, 0, count);
+			out.write(index.flags, 0, count);
+			out.write(index.digests, 0, count * index.digestLength);
+		} finally {
+			out.close();
+		}
+	}
+
+	private ArchiveIndex read(File file, String key) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(key)) {
+				return null;
+			}
+			int count = in.readInt();
+			int digestLength = in.readUnsignedByte();
+			boolean hasSkipped = in.readBoolean();
+
+			String[] table = new String[in.readInt()];
+			for (int i = 0; i < table.length; i++) {
+				table[i] = in.readUTF();
+			}
+
+			int[] parents = readInts(in, count);
+			String[] dirs = strings(readInts(in, count), table);
+			String[] skipped = hasSkipped ? strings(readInts(in, count), table) : null;
+			int[] leafStarts = readInts(in, count + 1);
+			byte[] leafLatin1 = null;
+			char[] leafChars = null;
+			if (in.readBoolean()) {
+				leafLatin1 = new byte[leafStarts[count]];
+				in.readFully(leafLatin1);
+			} else {
+				leafChars = new char[leafStarts[count]];
+				for (int i = 0; i < leafChars.length; i++) {
+					leafChars[i] = in.readChar();
+				}
+			}
+			long[] sizes = readLongs(in, count);
+			long[] compressedSizes = readLongs(in, count);
+			long[] times = readLongs(in, count);
+			int[] crcs = readInts(in, count);
+			byte[] methods = new byte[count];
+			in.readFully(methods);
+			byte[] flags = new byte[count];
+			in.readFully(flags);
+			byte[] digests = new byte[count * digestLength];
+			in.readFully(digests);
+			return new ArchiveIndex(count, parents, dirs, skipped, leafStarts, leafLatin1, leafChars,
+					sizes, compressedSizes, times, crcs, methods, flags, digestLength, digests);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static int[] stringIds(String[] values, Map<String, Integer> ids, List<String> table) {
+		int[] result = new int[values.length];
+		for (int i = 0; i < values.length; i++) {
+			Integer id = ids.get(values[i]);
+			if (id == null) {
+				id = table.size();
+				ids.put(values[i], id);
+				table.add(values[i]);
+			}
+			result[i] = id;
+		}
+		return result;
+	}
+
+	private static String[] strings(int[] ids, String[] table) {
+		String[] result = new String[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			result[i] = table[ids[i]];
+		}
+		return result;
+	}
+
+	private static void writeInts(DataOutputStream out, int[] values, int count) throws IOException {
+		for (int i = 0; i < count; i++) {
+			out.writeInt(values[i]);
+		}
+	}
+
+	private static int[] readInts(DataInputStream in, int count) throws IOException {
+		int[] values = new int[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = in.readInt();
+		}
+		return values;
+	}
+
+	private static void writeLongs(DataOutputStream out, long[] values, int count) throws IOException {
+		for (int i = 0; i < count; i++) {
+			out.writeLong(values[i]);
+		}
+	}
+
+	private static long[] readLongs(DataInputStream in, int count) throws IOException {
+		long[] values = new long[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = in.readLong();
+		}
+		return values;
+	}
+
+	/**
+	 * deletes the least recently used cache files until the cache fits its size limit
+	 */
+	private void evict() {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		long total = 0;
+		for (File f : files) {
+			total += f.length();
+		}
+		if (total <= maxSize) {
+			return;
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File f1, File f2) {
+				return Long.compare(f1.lastModified(), f2.lastModified());
+			}
+		});
+		for (File f : files) {
+			if (total <= maxSize) {
+				break;
+			}
+			if (f.getName().endsWith(SUFFIX)) {
+				long length = f.length();
+				if (f.delete()) {
+					total -= length;
+					logger.log(Level.FINE, "evicted cache file " + f);
+				}
+			}
+		}
+	}
+}
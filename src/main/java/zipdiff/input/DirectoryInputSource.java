@@ -0,0 +1,188 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.input;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+
+/**
+ * A directory tree as input, e. g. an exploded war. Entries carry the size and the
+ * modification time of the files; the CRC is unknown until the content is read.
+ * Inside a fork/join pool the subdirectories of the root are walked in parallel.
+ */
+public class DirectoryInputSource implements InputSource {
+
+	private final Logger logger = Logger.getLogger(getClass().getName());
+
+	private final Path root;
+
+	private final String name;
+
+	/**
+	 * @param directory root of the tree
+	 */
+	public DirectoryInputSource(File directory) {
+		this.root = directory.toPath();
+		this.name = directory.getPath();
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public File getCacheFile() {
+		// the modification time of a directory does not change with the content of its files
+		return null;
+	}
+
+	@Override
+	public List<ZipEntry> entries() throws IOException {
+		if (!ForkJoinTask.inForkJoinPool()) {
+			List<ZipEntry> entries = new ArrayList<>();
+			walk(root, entries);
+			return entries;
+		}
+
+		List<ZipEntry> entries = new ArrayList<>();
+		List<WalkTask> tasks = new ArrayList<>();
+		DirectoryStream<Path> children = Files.newDirectoryStream(root);
+		try {
+			for (Path child : children) {
+				BasicFileAttributes attributes = Files.readAttributes(child, BasicFileAttributes.class);
+				if (attributes.isDirectory()) {
+					WalkTask task = new WalkTask(child);
+					task.fork();
+					tasks.add(task);
+				} else if (attributes.isRegularFile()) {
+					entries.add(entry(child, attributes));
+				}
+			}
+		} finally {
+			children.close();
+		}
+		try {
+			for (WalkTask task : tasks) {
+				entries.addAll(task.join());
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return entries;
+	}
+
+	/**
+	 * adds the entries of a directory and everything below it, including the directory itself
+	 * unless it is the root
+	 */
+	private void walk(Path start, final List<ZipEntry> entries) throws IOException {
+		Files.walkFileTree(start, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+				if (!dir.equals(root)) {
+					entries.add(entry(dir, attributes));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+				if (attributes.isRegularFile()) {
+					entries.add(entry(file, attributes));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+				if (e instanceof FileSystemLoopException) {
+					logger.log(Level.WARNING, "skipping symbolic link loop at " + file);
+					return FileVisitResult.CONTINUE;
+				}
+				throw e;
+			}
+		});
+	}
+
+	private ZipEntry entry(Path path, BasicFileAttributes attributes) {
+		StringBuilder sb = new StringBuilder();
+		for (Path element : root.relativize(path)) {
+			if (sb.length() > 0) {
+				sb.append('/');
+			}
+			sb.append(element.toString());
+		}
+		if (attributes.isDirectory()) {
+			sb.append('/');
+		}
+		ZipEntry entry = new ZipEntry(sb.toString());
+		entry.setSize(attributes.isDirectory() ? 0 : attributes.size());
+		entry.setTime(attributes.lastModifiedTime().toMillis());
+		return entry;
+	}
+
+	@Override
+	public ZipEntry getEntry(String name) throws IOException {
+		Path path = root.resolve(name);
+		if (!Files.exists(path)) {
+			return null;
+		}
+		return entry(path, Files.readAttributes(path, BasicFileAttributes.class));
+	}
+
+	@Override
+	public InputStream getInputStream(ZipEntry entry) throws IOException {
+		return Files.newInputStream(root.resolve(entry.getName()));
+	}
+
+	@Override
+	public void close() {
+		// nothing is kept open
+	}
+
+	/**
+	 * walks one subdirectory of the root
+	 */
+	private class WalkTask extends RecursiveTask<List<ZipEntry>> {
+		private static final long serialVersionUID = 1L;
+
+		private final Path start;
+
+		WalkTask(Path start) {
+			this.start = start;
+		}
+
+		@Override
+		protected List<ZipEntry> compute() {
+			List<ZipEntry> entries = new ArrayList<>();
+			try {
+				walk(start, entries);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return entries;
+		}
+	}
+}
@@ -0,0 +1,59 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.input;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+/**
+ * One side of a comparison: a zip file, a directory tree such as an exploded archive,
+ * or a zip file embedded in another one. The files of a directory are presented as
+ * ZipEntries named by their path relative to the directory, with '/' as separator.
+ */
+public interface InputSource extends Closeable {
+
+	/**
+	 * @return the name of the source as given, used in the differences
+	 */
+	String getName();
+
+	/**
+	 * @return the file whose length and modification time identify the state of the
+	 * source in the index cache, or null if the source must not be cached
+	 */
+	File getCacheFile();
+
+	/**
+	 * lists the entries
+	 *
+	 * @return the entries, in the order they are stored
+	 * @throws IOException in case of an input/output error
+	 */
+	List<ZipEntry> entries() throws IOException;
+
+	/**
+	 * looks up an entry by name
+	 *
+	 * @param name name of the entry
+	 * @return the entry, or null if there is none
+	 * @throws IOException in case of an input/output error
+	 */
+	ZipEntry getEntry(String name) throws IOException;
+
+	/**
+	 * opens the uncompressed content of an entry; the source may be read by several threads
+	 * at the same time
+	 *
+	 * @param entry entry returned by this source
+	 * @return InputStream, to be closed by the caller
+	 * @throws IOException in case of an input/output error
+	 */
+	InputStream getInputStream(ZipEntry entry) throws IOException;
+}
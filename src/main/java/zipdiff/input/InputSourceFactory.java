@@ -0,0 +1,81 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.input;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * creates input sources based on the path given on the command line
+ */
+public class InputSourceFactory {
+
+	/**
+	 * Opens a directory as {@link DirectoryInputSource} and a file as {@link ZipInputSource}.
+	 * A path such as "app.ear!web.war" refers to a zip file embedded in another one; it is
+	 * extracted to a temporary file, which is deleted when the source is closed.
+	 *
+	 * @param path path of a directory, a zip file or an embedded zip file
+	 * @return InputSource
+	 * @throws IOException in case of an input/output error
+	 */
+	public static InputSource create(String path) throws IOException {
+		File file = new File(path);
+		if (file.isDirectory()) {
+			return new DirectoryInputSource(file);
+		}
+		if (file.exists()) {
+			return new ZipInputSource(new ZipFile(file));
+		}
+
+		int separator = path.lastIndexOf('!');
+		if (separator <= 0) {
+			throw new FileNotFoundException(path);
+		}
+		String entryName = path.substring(separator + 1);
+		InputSource outer = create(path.substring(0, separator));
+		try {
+			ZipEntry entry = outer.getEntry(entryName);
+			if (entry == null || entry.isDirectory()) {
+				throw new FileNotFoundException(entryName + " not found in " + outer.getName());
+			}
+			File tmp = File.createTempFile("zipdiff", ".zip");
+			try {
+				copy(outer.getInputStream(entry), tmp);
+				return new ZipInputSource(new ZipFile(tmp), path, tmp);
+			} catch (IOException | RuntimeException e) {
+				tmp.delete();
+				throw e;
+			}
+		} finally {
+			outer.close();
+		}
+	}
+
+	private static void copy(InputStream is, File file) throws IOException {
+		try {
+			OutputStream os = new FileOutputStream(file);
+			try {
+				byte[] buffer = new byte[64 * 1024];
+				int count = is.read(buffer);
+				while (count > -1) {
+					os.write(buffer, 0, count);
+					count = is.read(buffer);
+				}
+			} finally {
+				os.close();
+			}
+		} finally {
+			is.close();
+		}
+	}
+}
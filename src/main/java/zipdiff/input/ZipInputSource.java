@@ -0,0 +1,110 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.input;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import zipdiff.index.CentralDirectory;
+
+/**
+ * a zip file as input
+ */
+public class ZipInputSource implements InputSource {
+
+	private final Logger logger = Logger.getLogger(getClass().getName());
+
+	private final ZipFile zipFile;
+
+	private final String name;
+
+	private final File tmpFile;
+
+	/**
+	 * @param zipFile zip file, it is closed together with this source
+	 */
+	public ZipInputSource(ZipFile zipFile) {
+		this(zipFile, zipFile.getName(), null);
+	}
+
+	/**
+	 * @param zipFile zip file, it is closed together with this source
+	 * @param name name of the source
+	 * @param tmpFile file to delete once the source is closed, or null
+	 */
+	ZipInputSource(ZipFile zipFile, String name, File tmpFile) {
+		this.zipFile = zipFile;
+		this.name = name;
+		this.tmpFile = tmpFile;
+	}
+
+	public ZipFile getZipFile() {
+		return zipFile;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public File getCacheFile() {
+		// an extracted embedded zip file is new on every run
+		return tmpFile == null ? new File(zipFile.getName()) : null;
+	}
+
+	/**
+	 * Reads the entries from the memory mapped central directory. Falls back
+	 * to {@link ZipFile#entries()} if the central directory cannot be read that way.
+	 */
+	@Override
+	public List<ZipEntry> entries() {
+		try {
+			List<CentralDirectory.Entry> records = CentralDirectory.read(new File(zipFile.getName())).getEntries();
+			List<ZipEntry> entries = new ArrayList<>(records.size());
+			for (CentralDirectory.Entry record : records) {
+				entries.add(record.toZipEntry());
+			}
+			return entries;
+		} catch (IOException | RuntimeException e) {
+			logger.log(Level.FINE, "cannot map central directory of " + zipFile.getName() + ", using ZipFile.entries()", e);
+			return new ArrayList<ZipEntry>(Collections.list(zipFile.entries()));
+		}
+	}
+
+	@Override
+	public ZipEntry getEntry(String name) {
+		return zipFile.getEntry(name);
+	}
+
+	@Override
+	public InputStream getInputStream(ZipEntry entry) throws IOException {
+		InputStream is = zipFile.getInputStream(entry);
+		if (is == null) {
+			throw new IOException(entry.getName() + " not found in " + name);
+		}
+		return is;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			zipFile.close();
+		} finally {
+			if (tmpFile != null) {
+				tmpFile.delete();
+			}
+		}
+	}
+}
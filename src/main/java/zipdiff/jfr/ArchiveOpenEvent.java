@@ -0,0 +1,40 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * An input was indexed or its index was taken from the cache.
+ */
+@Name("zipdiff.ArchiveOpen")
+@Label("Archive Open")
+@Description("An input was indexed, including its embedded archives, or its index was taken from the cache")
+@Category(Events.CATEGORY)
+@StackTrace(false)
+public class ArchiveOpenEvent extends Event {
+
+	@Label("Archive")
+	public String archive;
+
+	@Label("Entries")
+	@Description("Number of entries, including those of embedded archives")
+	public long entries;
+
+	@Label("Size")
+	@Description("Size of the file, 0 for a directory")
+	@DataAmount
+	public long bytes;
+
+	@Label("From Cache")
+	public boolean fromCache;
+}
@@ -0,0 +1,36 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A builder wrote the report of collected differences.
+ */
+@Name("zipdiff.BuilderWrite")
+@Label("Builder Write")
+@Description("A builder wrote the report of collected differences")
+@Category(Events.CATEGORY)
+@StackTrace(false)
+public class BuilderWriteEvent extends Event {
+
+	@Label("Builder")
+	public String builder;
+
+	@Label("Differences")
+	@Description("Number of entries reported as added, removed, moved or changed")
+	public long differences;
+
+	@Label("Written")
+	@DataAmount
+	public long bytes;
+}
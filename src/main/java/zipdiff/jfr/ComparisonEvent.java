@@ -0,0 +1,41 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The indexes of two inputs were compared and the differences reported, which includes
+ * reading the content of entries whose metadata is inconclusive.
+ */
+@Name("zipdiff.Comparison")
+@Label("Comparison")
+@Description("The indexes of two inputs were compared and the differences reported")
+@Category(Events.CATEGORY)
+@StackTrace(false)
+public class ComparisonEvent extends Event {
+
+	@Label("First Archive")
+	public String archive1;
+
+	@Label("Second Archive")
+	public String archive2;
+
+	@Label("First Entries")
+	public long entries1;
+
+	@Label("Second Entries")
+	public long entries2;
+
+	@Label("Differences")
+	@Description("Number of entries reported as added, removed, moved or changed")
+	public long differences;
+}
@@ -0,0 +1,40 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * The content of an entry was digested, while indexing an embedded archive or because
+ * its size and CRC could not tell whether it changed. There may be one for every entry,
+ * so by default only those that take a millisecond or longer are recorded.
+ */
+@Name("zipdiff.EntryHash")
+@Label("Entry Hash")
+@Description("The content of an entry was digested")
+@Category(Events.CATEGORY)
+@StackTrace(false)
+@Threshold("1 ms")
+public class EntryHashEvent extends Event {
+
+	@Label("Entry")
+	public String entry;
+
+	@Label("Algorithm")
+	public String algorithm;
+
+	@Label("Size")
+	@Description("Uncompressed size of the entry, -1 if unknown")
+	@DataAmount
+	public long bytes;
+}
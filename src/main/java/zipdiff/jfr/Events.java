@@ -0,0 +1,36 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.jfr;
+
+/**
+ * Tells whether the JVM has the Flight Recorder API of jdk.jfr, which Java 8 only has
+ * from update 262 on. The event classes of this package extend jdk.jfr.Event, so they
+ * must not be loaded unless {@link #AVAILABLE} is true; code that emits them creates
+ * them behind that check. With the API present but no recording running, creating,
+ * beginning and committing an event costs next to nothing, as the JVM only instruments
+ * the event classes once a recording enables them.
+ */
+public final class Events {
+
+	/** true if jdk.jfr.Event can be loaded */
+	public static final boolean AVAILABLE = isAvailable();
+
+	/** the category of all events of zipdiff-ng in JDK Mission Control */
+	static final String CATEGORY = "zipdiff-ng";
+
+	private Events() {
+		// only static members
+	}
+
+	private static boolean isAvailable() {
+		try {
+			Class.forName("jdk.jfr.Event", false, Events.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,39 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * An embedded archive was read and its entries indexed. The events of archives nested
+ * in it lie within its own.
+ */
+@Name("zipdiff.NestedArchiveScan")
+@Label("Nested Archive Scan")
+@Description("An embedded archive was read and its entries indexed")
+@Category(Events.CATEGORY)
+@StackTrace(false)
+public class NestedArchiveEvent extends Event {
+
+	@Label("Archive")
+	@Description("Name of the entry that holds the embedded archive")
+	public String archive;
+
+	@Label("Entries")
+	@Description("Number of entries indexed, including those of archives nested in it")
+	public long entries;
+
+	@Label("Inflated")
+	@Description("Uncompressed size of its entries")
+	@DataAmount
+	public long bytes;
+}
@@ -6,10 +6,16 @@
 package zipdiff.output;
 
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Map;
+import java.util.zip.ZipEntry;
 
+import zipdiff.DifferenceListener;
 import zipdiff.Differences;
+import zipdiff.jfr.BuilderWriteEvent;
+import zipdiff.jfr.Events;
 
 /**
  * abstract base class for Builders.
@@ -18,6 +24,8 @@ import zipdiff.Differences;
  */
 public abstract class AbstractBuilder implements Builder {
 
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
 	/** number of directory prefixes to skip in the output file */
 	protected int numberOfOutputPrefixesToSkip;
 
@@ -31,15 +39,75 @@ public abstract class AbstractBuilder implements Builder {
 	 */
     @Override
 	public void build(String filename, int numberOfPrefixesToSkip, Differences d) throws IOException {
+		build(openOutputStream(filename), numberOfPrefixesToSkip, d);
+	}
+
+	/**
+	 * builds the output
+	 *
+	 * @param out OutputStream to write to, it is flushed at the end
+	 * @param numberOfPrefixesToSkip number of directory prefixes to skip
+	 * @param d differences
+	 * @throws IOException in case of an input/output error
+	 */
+	@Override
+	public void build(OutputStream out, int numberOfPrefixesToSkip, Differences d) throws IOException {
+		this.numberOfOutputPrefixesToSkip = numberOfPrefixesToSkip;
+		WriteRecorder recorder = new WriteRecorder();
+		recorder.begin();
+		out = recorder.count(out);
+		build(out, d);
+		out.flush();
+		recorder.commit(d.getAdded().size() + d.getRemoved().size() + d.getMoved().size() + d.getChanged().size());
+	}
+
+	/**
+	 * creates a listener that builds the output from differences reported one at a time
+	 *
+	 * @param filename name of output file
+	 * @param numberOfPrefixesToSkip number of directory prefixes to skip
+	 * @return DifferenceListener
+	 * @throws IOException in case of an input/output error
+	 */
+	@Override
+	public DifferenceListener listener(String filename, int numberOfPrefixesToSkip) throws IOException {
 		this.numberOfOutputPrefixesToSkip = numberOfPrefixesToSkip;
-		OutputStream os;
+		WriteRecorder recorder = new WriteRecorder();
+		return recorder.wrap(listener(filename, recorder));
+	}
+
+	/**
+	 * creates a listener that builds the output from differences reported one at a time
+	 *
+	 * @param out OutputStream to write to
+	 * @param numberOfPrefixesToSkip number of directory prefixes to skip
+	 * @return DifferenceListener
+	 */
+	@Override
+	public DifferenceListener listener(OutputStream out, int numberOfPrefixesToSkip) {
+		this.numberOfOutputPrefixesToSkip = numberOfPrefixesToSkip;
+		WriteRecorder recorder = new WriteRecorder();
+		return recorder.wrap(listener(recorder.count(out)));
+	}
+
+	/**
+	 * creates a listener that writes to a file. Builders that write more than one file
+	 * override it and pass each of their streams through the recorder.
+	 *
+	 * @param filename name of output file, "-" or null for stdout
+	 * @param recorder counts the bytes written for the BuilderWriteEvent
+	 * @return DifferenceListener
+	 * @throws IOException in case of an input/output error
+	 */
+	protected DifferenceListener listener(String filename, WriteRecorder recorder) throws IOException {
+		return listener(recorder.count(openOutputStream(filename)));
+	}
+
+	private OutputStream openOutputStream(String filename) throws IOException {
 		if ((filename == null) || filename.equals("-")) {
-			os = System.out;
-		} else {
-			os = new FileOutputStream(filename);
+			return System.out;
 		}
-		build(os, d);
-		os.flush();
+		return new FileOutputStream(filename);
 	}
 
 	/**
@@ -49,4 +117,186 @@ public abstract class AbstractBuilder implements Builder {
 	 * @param d differences
 	 */
 	public abstract void build(OutputStream out, Differences d);
+
+	/**
+	 * creates a listener that writes to the stream. This implementation collects all
+	 * differences and builds the output at the end, builders that can write each
+	 * difference as it is reported override it.
+	 *
+	 * @param out OutputStream to write to
+	 * @return DifferenceListener
+	 */
+	public DifferenceListener listener(final OutputStream out) {
+		return new Differences() {
+			@Override
+			public void end() {
+				build(out, this);
+			}
+		};
+	}
+
+	/**
+	 * records the writing of a report as a BuilderWriteEvent. The bytes are only counted
+	 * while a recording wants the event.
+	 */
+	protected final class WriteRecorder {
+
+		private final BuilderWriteEvent event;
+
+		private boolean counting;
+
+		private long bytes;
+
+		WriteRecorder() {
+			event = Events.AVAILABLE ? new BuilderWriteEvent() : null;
+		}
+
+		/**
+		 * @param out OutputStream the report is written to
+		 * @return a stream that counts the bytes written through it to out, or out itself
+		 */
+		public OutputStream count(OutputStream out) {
+			if ((event == null) || !event.isEnabled()) {
+				return out;
+			}
+			counting = true;
+			return new CountingOutputStream(out);
+		}
+
+		void begin() {
+			if (event != null) {
+				event.begin();
+			}
+		}
+
+		void commit(long differences) {
+			if ((event != null) && event.shouldCommit()) {
+				event.builder = AbstractBuilder.this.getClass().getSimpleName();
+				event.differences = differences;
+				event.bytes = counting ? bytes : -1;
+				event.commit();
+			}
+		}
+
+		/**
+		 * @param listener listener that writes the report
+		 * @return a listener that begins the event on start and commits it on end
+		 */
+		DifferenceListener wrap(final DifferenceListener listener) {
+			if (event == null) {
+				return listener;
+			}
+			return new DifferenceListener() {
+				private long differences;
+
+				@Override
+				public void start(String filename1, String filename2) {
+					begin();
+					listener.start(filename1, filename2);
+				}
+
+				@Override
+				public void fileAdded(String fullFilePath, ZipEntry ze) {
+					differences++;
+					listener.fileAdded(fullFilePath, ze);
+				}
+
+				@Override
+				public void fileRemoved(String fullFilePath, ZipEntry ze) {
+					differences++;
+					listener.fileRemoved(fullFilePath, ze);
+				}
+
+				@Override
+				public void fileChanged(String fullFilePath, ZipEntry z1, ZipEntry z2) {
+					differences++;
+					listener.fileChanged(fullFilePath, z1, z2);
+				}
+
+				@Override
+				public void fileChanged(String fullFilePath, ZipEntry z1, ZipEntry z2, String reason) {
+					differences++;
+					listener.fileChanged(fullFilePath, z1, z2, reason);
+				}
+
+				@Override
+				public void fileMoved(String fromPath, String toPath, ZipEntry z1, ZipEntry z2) {
+					differences++;
+					listener.fileMoved(fromPath, toPath, z1, z2);
+				}
+
+				@Override
+				public void contentDiff(String fullFilePath, String unifiedDiff) {
+					listener.contentDiff(fullFilePath, unifiedDiff);
+				}
+
+				@Override
+				public void end() {
+					listener.end();
+					commit(differences);
+				}
+			};
+		}
+
+		/**
+		 * counts the bytes written through it
+		 */
+		private class CountingOutputStream extends FilterOutputStream {
+
+			CountingOutputStream(OutputStream out) {
+				super(out);
+			}
+
+			@Override
+			public void write(int b) throws IOException {
+				out.write(b);
+				bytes++;
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+				bytes += len;
+			}
+		}
+	}
+
+	/**
+	 * reports the collected differences to a listener, grouped by kind, so that a
+	 * builder which writes as it is told can build the output from them
+	 */
+	protected static void replay(Differences d, DifferenceListener listener) {
+		listener.start(d.getFilename1(), d.getFilename2());
+		for (Map.Entry<String, ZipEntry> entry : d.getAdded().entrySet()) {
+			listener.fileAdded(entry.getKey(), entry.getValue());
+		}
+		for (Map.Entry<String, ZipEntry> entry : d.getRemoved().entrySet()) {
+			listener.fileRemoved(entry.getKey(), entry.getValue());
+		}
+		for (Map.Entry<String, ZipEntry[]> entry : d.getMoved().entrySet()) {
+			ZipEntry[] entries = entry.getValue();
+			listener.fileMoved(entry.getKey(), d.getMoveTargets().get(entry.getKey()), entries[0], entries[1]);
+		}
+		for (Map.Entry<String, ZipEntry[]> entry : d.getChanged().entrySet()) {
+			ZipEntry[] entries = entry.getValue();
+			listener.fileChanged(entry.getKey(), entries[0], entries[1], d.getChangeReasons().get(entry.getKey()));
+		}
+		for (Map.Entry<String, String> entry : d.getContentDiffs().entrySet()) {
+			listener.contentDiff(entry.getKey(), entry.getValue());
+		}
+		listener.end();
+	}
+
+	/**
+	 * @param crc CRC of an entry
+	 * @return the CRC as 8 hex digits
+	 */
+	protected static String formatCrc(long crc) {
+		char[] hex = new char[8];
+		for (int i = 7; i >= 0; i--) {
+			hex[i] = HEX[(int) (crc & 0xf)];
+			crc >>>= 4;
+		}
+		return new String(hex);
+	}
 }
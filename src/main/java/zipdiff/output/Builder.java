@@ -6,7 +6,9 @@
 package zipdiff.output;
 
 import java.io.IOException;
+import java.io.OutputStream;
 
+import zipdiff.DifferenceListener;
 import zipdiff.Differences;
 
 /**
@@ -27,4 +29,33 @@ public interface Builder {
 	 * @throws IOException in case of an input/output error
 	 */
 	public void build(String filename, int numberOfOutputPrefixesToSkip, Differences d) throws IOException;
+
+	/**
+	 * creates a listener that builds the output from differences reported one at a time
+	 *
+	 * @param filename name of output file
+	 * @param numberOfOutputPrefixesToSkip number of directory prefixes to skip
+	 * @return DifferenceListener
+	 * @throws IOException in case of an input/output error
+	 */
+	public DifferenceListener listener(String filename, int numberOfOutputPrefixesToSkip) throws IOException;
+
+	/**
+	 * builds the output
+	 *
+	 * @param out OutputStream to write to, it is flushed at the end
+	 * @param numberOfOutputPrefixesToSkip number of directory prefixes to skip
+	 * @param d differences
+	 * @throws IOException in case of an input/output error
+	 */
+	public void build(OutputStream out, int numberOfOutputPrefixesToSkip, Differences d) throws IOException;
+
+	/**
+	 * creates a listener that builds the output from differences reported one at a time
+	 *
+	 * @param out OutputStream to write to
+	 * @param numberOfOutputPrefixesToSkip number of directory prefixes to skip
+	 * @return DifferenceListener
+	 */
+	public DifferenceListener listener(OutputStream out, int numberOfOutputPrefixesToSkip);
 }
@@ -6,7 +6,8 @@
 package zipdiff.output;
 
 /**
- * creates builders based on the filename extension.
+ * creates builders based on the filename extension. Only the class of the builder that
+ * is created gets loaded, which saves startup time on small comparisons.
  *
  * @author Hendrik Brummermann, HIS GmbH
  */
@@ -33,6 +34,12 @@ public class BuilderFactory {
 		} else if (filename.endsWith(".xml")) {
 			builder = new XmlBuilder();
 
+		} else if (filename.endsWith(".json")) {
+			builder = new JsonBuilder();
+
+		} else if (filename.endsWith(".ndjson") || filename.endsWith(".jsonl")) {
+			builder = new NdjsonBuilder();
+
 		} else if (filename.endsWith(".zip")) {
 			builder = new ZipBuilder();
 
@@ -42,4 +49,23 @@ public class BuilderFactory {
 		}
 		return builder;
 	}
+
+	/**
+	 * creates a builder for the output file, or for the format if the output is written
+	 * to stdout, which has no extension
+	 *
+	 * @param filename name of output file, "-" or null for stdout
+	 * @param format text, xml, html, zip, json, ndjson, or htmltree for the tree view of
+	 * {@link HtmlTreeBuilder}, which has the extension of html
+	 * @return Builder
+	 */
+	public static Builder create(String filename, String format) {
+		if ("htmltree".equals(format)) {
+			return new HtmlTreeBuilder();
+		}
+		if ((filename == null) || filename.equals("-")) {
+			return create("-." + ("text".equals(format) ? "txt" : format));
+		}
+		return create(filename);
+	}
 }
@@ -0,0 +1,60 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.output;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import zipdiff.History;
+
+/**
+ * abstract base class for the builders of the timelines of a history.
+ */
+public abstract class HistoryBuilder {
+
+	/**
+	 * creates a builder based on the name of the output file, xml for .xml and text otherwise
+	 *
+	 * @param filename name of output file
+	 * @return HistoryBuilder
+	 */
+	public static HistoryBuilder create(String filename) {
+		if (filename != null && filename.endsWith(".xml")) {
+			return new XmlHistoryBuilder();
+		}
+		return new TextHistoryBuilder();
+	}
+
+	/**
+	 * builds the output
+	 *
+	 * @param filename name of output file, - for standard output
+	 * @param history the timelines
+	 * @throws IOException in case of an input/output error
+	 */
+	public void build(String filename, History history) throws IOException {
+		if ((filename == null) || filename.equals("-")) {
+			build(System.out, history);
+			System.out.flush();
+			return;
+		}
+		OutputStream os = new FileOutputStream(filename);
+		try {
+			build(os, history);
+		} finally {
+			os.close();
+		}
+	}
+
+	/**
+	 * builds the output
+	 *
+	 * @param out OutputStream to write to
+	 * @param history the timelines
+	 */
+	public abstract void build(OutputStream out, History history);
+}
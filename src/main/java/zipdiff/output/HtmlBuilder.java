@@ -5,11 +5,16 @@
  */
 package zipdiff.output;
 
+import zipdiff.DifferenceListener;
 import zipdiff.Differences;
+import zipdiff.util.StringUtil;
 
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.zip.ZipEntry;
 
 /**
  * Generates html output for a Differences instance
@@ -30,6 +35,113 @@ public class HtmlBuilder extends AbstractBuilder {
 	public void build(OutputStream out, Differences d) {
 		PrintWriter pw = new PrintWriter(out);
 
+		writeHeader(pw, d.getFilename1(), d.getFilename2());
+		writeAdded(pw, d.getAdded().keySet());
+		writeRemoved(pw, d.getRemoved().keySet());
+		if (!d.getMoved().isEmpty()) {
+			Set<String> moved = new LinkedHashSet<>();
+			for (String key : d.getMoved().keySet()) {
+				moved.add(moveDescription(key, d.getMoveTargets().get(key)));
+			}
+			writeMoved(pw, moved);
+		}
+		Set<String> changed = new LinkedHashSet<>();
+		for (String key : d.getChanged().keySet()) {
+			String reason = d.getChangeReasons().get(key);
+			changed.add(reason != null ? key + " (" + reason + ")" : key);
+		}
+		writeChanged(pw, changed);
+		writeContentDiffs(pw, d.getContentDiffs());
+		writeFooter(pw);
+
+		pw.flush();
+
+	}
+
+	/**
+	 * creates a listener that writes one table row per difference as it is reported
+	 *
+	 * @param out OutputStream to write to
+	 * @return DifferenceListener
+	 */
+	@Override
+	public DifferenceListener listener(OutputStream out) {
+		final PrintWriter pw = new PrintWriter(out);
+		return new DifferenceListener() {
+			private int added;
+
+			private int removed;
+
+			private int changed;
+
+			private int moved;
+
+			@Override
+			public void start(String filename1, String filename2) {
+				writeHeader(pw, filename1, filename2);
+				pw.println("<TABLE CELLSPACING=\"1\" CELLPADDING=\"3\" WIDTH=\"100%\" BORDER=\"0\">");
+				pw.println("<tr>");
+				pw.println("<td class=\"diffs\" width=\"80\">Status</td>");
+				pw.println("<td class=\"diffs\">Entry</td>");
+				pw.println("</tr>");
+			}
+
+			@Override
+			public void fileAdded(String fullFilePath, ZipEntry ze) {
+				added++;
+				writeDiffRow(pw, "Added", fullFilePath);
+			}
+
+			@Override
+			public void fileRemoved(String fullFilePath, ZipEntry ze) {
+				removed++;
+				writeDiffRow(pw, "Removed", fullFilePath);
+			}
+
+			@Override
+			public void fileMoved(String fromPath, String toPath, ZipEntry z1, ZipEntry z2) {
+				moved++;
+				writeDiffRow(pw, "Moved", moveDescription(fromPath, toPath));
+			}
+
+			@Override
+			public void fileChanged(String fullFilePath, ZipEntry z1, ZipEntry z2) {
+				changed++;
+				writeDiffRow(pw, "Changed", fullFilePath);
+			}
+
+			@Override
+			public void fileChanged(String fullFilePath, ZipEntry z1, ZipEntry z2, String reason) {
+				changed++;
+				writeDiffRow(pw, "Changed (" + reason + ")", fullFilePath);
+			}
+
+			@Override
+			public void contentDiff(String fullFilePath, String unifiedDiff) {
+				pw.print("<tr><td>Content</td><td>");
+				writeContentDiff(pw, fullFilePath, unifiedDiff);
+				pw.println("</td></tr>");
+			}
+
+			@Override
+			public void end() {
+				pw.println("</table>");
+				pw.println("<p>Added: " + added + ", Removed: " + removed + (moved > 0 ? ", Moved: " + moved : "")
+						+ ", Changed: " + changed + "</p>");
+				writeFooter(pw);
+				pw.flush();
+			}
+		};
+	}
+
+	/**
+	 * writes the start of the page up to the names of the compared files
+	 *
+	 * @param pw        write to write to
+	 * @param filename1 name of the first file
+	 * @param filename2 name of the second file
+	 */
+	protected void writeHeader(PrintWriter pw, String filename1, String filename2) {
 		pw.println("<html>");
 		pw.println("<META http-equiv=\"Content-Type\" content=\"text/html\">");
 		pw.println("<head>");
@@ -40,7 +152,6 @@ public class HtmlBuilder extends AbstractBuilder {
 
 		pw.println(getStyleTag());
 		pw.print("<p>First file: ");
-		String filename1 = d.getFilename1();
 
 		if (filename1 == null) {
 			filename1 = "filename1.zip";
@@ -50,17 +161,19 @@ public class HtmlBuilder extends AbstractBuilder {
 
 		pw.print("Second file: ");
 
-		String filename2 = d.getFilename2();
-
 		if (filename2 == null) {
 			filename2 = "filename2.zip";
 		}
 		pw.print(filename2);
 		pw.println("</p>");
+	}
 
-		writeAdded(pw, d.getAdded().keySet());
-		writeRemoved(pw, d.getRemoved().keySet());
-		writeChanged(pw, d.getChanged().keySet());
+	/**
+	 * writes the end of the page
+	 *
+	 * @param pw    write to write to
+	 */
+	protected void writeFooter(PrintWriter pw) {
 		pw.println("<hr>");
 		pw.println("<p>");
 		pw.println("Generated at " + new java.util.Date());
@@ -68,9 +181,6 @@ public class HtmlBuilder extends AbstractBuilder {
 		pw.println("</body>");
 
 		pw.println("</html>");
-
-		pw.flush();
-
 	}
 
 	/**
@@ -93,6 +203,25 @@ public class HtmlBuilder extends AbstractBuilder {
 		writeDiffSet(pw, "Removed", removed);
 	}
 
+	/**
+	 * writes the list of moved files
+	 *
+	 * @param pw    write to write to
+	 * @param moved set of moved files, see {@link #moveDescription(String, String)}
+	 */
+	protected void writeMoved(PrintWriter pw, Set<String> moved) {
+		writeDiffSet(pw, "Moved", moved);
+	}
+
+	/**
+	 * @param fromPath name of the entry in the first file
+	 * @param toPath   name of the entry in the second file
+	 * @return both names of a moved entry
+	 */
+	protected String moveDescription(String fromPath, String toPath) {
+		return fromPath + " &rarr; " + toPath;
+	}
+
 	/**
 	 * writes the list of modified files
 	 *
@@ -134,6 +263,59 @@ public class HtmlBuilder extends AbstractBuilder {
 
 	}
 
+	/**
+	 * writes the unified diffs of the changed entries whose content was compared
+	 *
+	 * @param pw    write to write to
+	 * @param diffs unified diffs by name of the entry
+	 */
+	protected void writeContentDiffs(PrintWriter pw, Map<String, String> diffs) {
+		if (diffs.isEmpty()) {
+			return;
+		}
+		pw.println("<TABLE CELLSPACING=\"1\" CELLPADDING=\"3\" WIDTH=\"100%\" BORDER=\"0\">");
+		pw.println("<tr>");
+		pw.println("<td class=\"diffs\">Content differences (" + diffs.size() + " entries)</td>");
+		pw.println("</tr>");
+		for (Map.Entry<String, String> entry : diffs.entrySet()) {
+			pw.print("<tr><td>");
+			writeContentDiff(pw, entry.getKey(), entry.getValue());
+			pw.println("</td></tr>");
+		}
+		pw.println("</table>");
+	}
+
+	/**
+	 * writes the name of an entry followed by its unified diff
+	 *
+	 * @param pw          write to write to
+	 * @param name        name of the entry
+	 * @param unifiedDiff the diff
+	 */
+	protected void writeContentDiff(PrintWriter pw, String name, String unifiedDiff) {
+		pw.print("<b>");
+		pw.print(StringUtil.escapeXml(name));
+		pw.println("</b>");
+		pw.print("<pre>");
+		pw.print(StringUtil.escapeXml(unifiedDiff));
+		pw.println("</pre>");
+	}
+
+	/**
+	 * writes a single difference as a table row
+	 *
+	 * @param pw     write to write to
+	 * @param status kind of difference
+	 * @param name   name of the entry
+	 */
+	protected void writeDiffRow(PrintWriter pw, String status, String name) {
+		pw.print("<tr><td>");
+		pw.print(status);
+		pw.print("</td><td>");
+		pw.print(name);
+		pw.println("</td></tr>");
+	}
+
 	/**
 	 * generates the style-html-tag.
 	 *
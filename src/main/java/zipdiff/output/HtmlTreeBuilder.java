@@ -0,0 +1,199 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.output;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+
+import zipdiff.DifferenceListener;
+import zipdiff.Differences;
+import zipdiff.util.StringUtil;
+
+/**
+ * Generates an html report for any number of entries: a static page, which shows the
+ * entries as a collapsible directory tree and only renders the rows that are scrolled
+ * into view, and a compact data file with one array per difference that the page loads.
+ * report.html gets its data from report.data.js next to it; if the report is written
+ * to a stream the data is embedded in the page. Either way the differences are written
+ * as they are reported, without keeping them.
+ */
+public class HtmlTreeBuilder extends AbstractBuilder {
+
+	private static final String TEMPLATE = "htmltree.html";
+
+	/** where the template includes the data */
+	private static final String DATA_MARKER = "<!--zipdiff-data-->";
+
+	/**
+	 * builds the output
+	 *
+	 * @param filename name of the page
+	 * @param numberOfPrefixesToSkip number of directory prefixes to skip
+	 * @param d differences
+	 * @throws IOException in case of an input/output error
+	 */
+	@Override
+	public void build(String filename, int numberOfPrefixesToSkip, Differences d) throws IOException {
+		replay(d, listener(filename, numberOfPrefixesToSkip));
+	}
+
+	/**
+	 * builds the output, with the data embedded in the page
+	 *
+	 * @param out OutputStream to write to
+	 * @param d differences
+	 */
+	@Override
+	public void build(OutputStream out, Differences d) {
+		replay(d, listener(out));
+	}
+
+	/**
+	 * writes the page and creates a listener that writes the data file next to it
+	 *
+	 * @param filename name of the page, "-" or null to write the page with its data to stdout
+	 * @param recorder counts the bytes written to both files
+	 * @return DifferenceListener
+	 * @throws IOException in case of an input/output error
+	 */
+	@Override
+	protected DifferenceListener listener(String filename, WriteRecorder recorder) throws IOException {
+		if ((filename == null) || filename.equals("-")) {
+			return listener(recorder.count(System.out));
+		}
+		String[] template = readTemplate();
+		File page = new File(filename);
+		String base = page.getName().endsWith(".html") ? page.getName().substring(0, page.getName().length() - 5) : page.getName();
+		File data = new File(page.getAbsoluteFile().getParentFile(), base + ".data.js");
+
+		Writer writer = new OutputStreamWriter(recorder.count(new FileOutputStream(page)), StandardCharsets.UTF_8);
+		try {
+			writer.write(template[0]);
+			writer.write("<script type=\"text/javascript\" src=\"");
+			writer.write(StringUtil.escapeXml(data.getName()));
+			writer.write("\"></script>");
+			writer.write(template[1]);
+		} finally {
+			writer.close();
+		}
+		return dataListener(new BufferedWriter(new OutputStreamWriter(recorder.count(new FileOutputStream(data)), StandardCharsets.UTF_8)),
+				"", "", true);
+	}
+
+	/**
+	 * creates a listener that writes the page with the data embedded in it
+	 *
+	 * @param out OutputStream to write to, it is flushed at the end but not closed
+	 * @return DifferenceListener
+	 */
+	@Override
+	public DifferenceListener listener(OutputStream out) {
+		String[] template;
+		try {
+			template = readTemplate();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		return dataListener(writer, template[0] + "<script type=\"text/javascript\">", "</script>" + template[1], false);
+	}
+
+	/**
+	 * creates a listener that writes a call of zipdiffReport with the data
+	 *
+	 * @param writer writer to write to
+	 * @param before written before the call
+	 * @param after written after the call
+	 * @param close true to close the writer at the end, false to only flush it
+	 */
+	private DifferenceListener dataListener(final Writer writer, final String before, final String after, final boolean close) {
+		final JsonWriter json = new JsonWriter(writer);
+		json.setHtmlSafe(true);
+		return new JsonBuilder.RecordListener() {
+			@Override
+			public void start(String filename1, String filename2) {
+				try {
+					writer.write(before);
+					writer.write("zipdiffReport(");
+					json.beginObject();
+					json.name("filename1").value(filename1 != null ? filename1 : "filename1.zip");
+					json.name("filename2").value(filename2 != null ? filename2 : "filename2.zip");
+					json.name("entries").beginArray();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+
+			@Override
+			protected void record(String type, String name, String from, ZipEntry z1, ZipEntry z2, String reason, String diff) throws IOException {
+				writer.write('\n');
+				json.beginArray();
+				// a, r, m, c, or d for the diff of a changed entry
+				json.value(diff != null ? "d" : type.substring(0, 1));
+				json.value(name);
+				if (diff != null) {
+					json.value(diff);
+				} else if (from != null) {
+					json.value(from);
+				} else if (reason != null) {
+					json.value(reason);
+				}
+				json.endArray();
+			}
+
+			@Override
+			public void end() {
+				try {
+					json.endArray();
+					json.endObject();
+					writer.write(");\n");
+					writer.write(after);
+					if (close) {
+						writer.close();
+					} else {
+						writer.flush();
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * @return the page before and after the place of the data
+	 */
+	private static String[] readTemplate() throws IOException {
+		InputStream in = HtmlTreeBuilder.class.getResourceAsStream(TEMPLATE);
+		if (in == null) {
+			throw new IOException(TEMPLATE + " not found");
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			byte[] buffer = new byte[8192];
+			int count = in.read(buffer);
+			while (count > -1) {
+				out.write(buffer, 0, count);
+				count = in.read(buffer);
+			}
+		} finally {
+			in.close();
+		}
+		String template = new String(out.toByteArray(), StandardCharsets.UTF_8);
+		int marker = template.indexOf(DATA_MARKER);
+		return new String[] { template.substring(0, marker), template.substring(marker + DATA_MARKER.length()) };
+	}
+}
@@ -0,0 +1,206 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.output;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+
+import zipdiff.DifferenceListener;
+import zipdiff.Differences;
+
+/**
+ * Generates a JSON document with the names of the compared files, one record per
+ * difference and the number of differences:
+ *
+ * <pre>
+ * {"filename1":"a.zip","filename2":"b.zip","differences":[
+ * {"type":"moved","name":"new/B.class","from":"old/B.class","size":20,"crc":"8c9d0e1f"},
+ * {"type":"changed","name":"A.class","reason":"api","size1":10,"crc1":"0a1b2c3d","size2":12,"crc2":"4e5f6a7b"},
+ * {"type":"contentdiff","name":"a.txt","diff":"--- a/a.txt\n..."}
+ * ],"summary":{"added":0,"removed":0,"changed":1,"moved":1}}
+ * </pre>
+ *
+ * The summary only counts moved entries if there are any.
+ * The document is written as the differences are reported, without keeping them.
+ */
+public class JsonBuilder extends AbstractBuilder {
+
+	/**
+	 * builds the output
+	 *
+	 * @param out OutputStream to write to
+	 * @param d differences
+	 */
+	@Override
+	public void build(OutputStream out, Differences d) {
+		replay(d, listener(out));
+	}
+
+	/**
+	 * creates a listener that writes one record per difference as it is reported
+	 *
+	 * @param out OutputStream to write to, it is flushed at the end but not closed
+	 * @return DifferenceListener
+	 */
+	@Override
+	public DifferenceListener listener(OutputStream out) {
+		final JsonWriter json = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+		return new RecordListener() {
+			@Override
+			public void start(String filename1, String filename2) {
+				try {
+					json.beginObject();
+					json.name("filename1").value(filename1);
+					json.name("filename2").value(filename2);
+					json.name("differences").beginArray();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+
+			@Override
+			protected void record(String type, String name, String from, ZipEntry z1, ZipEntry z2, String reason, String diff) throws IOException {
+				writeRecord(json, type, name, from, z1, z2, reason, diff);
+			}
+
+			@Override
+			public void end() {
+				try {
+					json.endArray();
+					json.name("summary").beginObject();
+					writeSummary(json, added, removed, changed, moved);
+					json.endObject();
+					json.endObject();
+					json.flush();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * writes one difference as an object
+	 *
+	 * @param json writer to write to
+	 * @param type added, removed, moved, changed or contentdiff
+	 * @param name name of the entry, the new name if it moved
+	 * @param from old name of a moved entry, null otherwise
+	 * @param z1 the entry, the old one if it changed, may be null
+	 * @param z2 the new entry if it changed, may be null
+	 * @param reason kind of change, may be null
+	 * @param diff unified diff of a contentdiff, null otherwise
+	 */
+	protected void writeRecord(JsonWriter json, String type, String name, String from, ZipEntry z1, ZipEntry z2, String reason, String diff) throws IOException {
+		json.beginObject();
+		json.name("type").value(type);
+		json.name("name").value(name);
+		if (from != null) {
+			json.name("from").value(from);
+		}
+		if (reason != null) {
+			json.name("reason").value(reason);
+		}
+		if (!"changed".equals(type)) {
+			writeSizeAndCrc(json, "size", "crc", z1);
+		} else {
+			writeSizeAndCrc(json, "size1", "crc1", z1);
+			writeSizeAndCrc(json, "size2", "crc2", z2);
+		}
+		if (diff != null) {
+			json.name("diff").value(diff);
+		}
+		json.endObject();
+	}
+
+	private static void writeSizeAndCrc(JsonWriter json, String size, String crc, ZipEntry entry) throws IOException {
+		if (entry == null) {
+			return;
+		}
+		if (entry.getSize() >= 0) {
+			json.name(size).value(entry.getSize());
+		}
+		if (entry.getCrc() >= 0) {
+			json.name(crc).value(formatCrc(entry.getCrc()));
+		}
+	}
+
+	/**
+	 * writes the number of differences as members of the current object, moved entries
+	 * only if there are any
+	 */
+	protected void writeSummary(JsonWriter json, long added, long removed, long changed, long moved) throws IOException {
+		json.name("added").value(added);
+		json.name("removed").value(removed);
+		json.name("changed").value(changed);
+		if (moved > 0) {
+			json.name("moved").value(moved);
+		}
+	}
+
+	/**
+	 * counts the differences and turns each into a call of record
+	 */
+	abstract static class RecordListener implements DifferenceListener {
+
+		protected long added;
+
+		protected long removed;
+
+		protected long changed;
+
+		protected long moved;
+
+		protected abstract void record(String type, String name, String from, ZipEntry z1, ZipEntry z2, String reason, String diff) throws IOException;
+
+		private void report(String type, String name, String from, ZipEntry z1, ZipEntry z2, String reason, String diff) {
+			try {
+				record(type, name, from, z1, z2, reason, diff);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		@Override
+		public void fileAdded(String fullFilePath, ZipEntry ze) {
+			added++;
+			report("added", fullFilePath, null, ze, null, null, null);
+		}
+
+		@Override
+		public void fileRemoved(String fullFilePath, ZipEntry ze) {
+			removed++;
+			report("removed", fullFilePath, null, ze, null, null, null);
+		}
+
+		@Override
+		public void fileMoved(String fromPath, String toPath, ZipEntry z1, ZipEntry z2) {
+			moved++;
+			report("moved", toPath, fromPath, z2, null, null, null);
+		}
+
+		@Override
+		public void fileChanged(String fullFilePath, ZipEntry z1, ZipEntry z2) {
+			fileChanged(fullFilePath, z1, z2, null);
+		}
+
+		@Override
+		public void fileChanged(String fullFilePath, ZipEntry z1, ZipEntry z2, String reason) {
+			changed++;
+			report("changed", fullFilePath, null, z1, z2, reason, null);
+		}
+
+		@Override
+		public void contentDiff(String fullFilePath, String unifiedDiff) {
+			report("contentdiff", fullFilePath, null, null, null, null, unifiedDiff);
+		}
+	}
+}
@@ -0,0 +1,173 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.output;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Writes JSON text as it is produced, without building a tree. Commas and nesting are
+ * tracked with one flag per open object or array; strings are escaped as RFC 8259
+ * requires, with U+2028 and U+2029 escaped as well so the output is valid JavaScript.
+ */
+public class JsonWriter {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final Writer out;
+
+	/** true at depth i if the object or array open at that depth has a value */
+	private boolean[] hasValue = new boolean[8];
+
+	private int depth;
+
+	/** true after a name, so the next value needs no comma */
+	private boolean afterName;
+
+	private boolean htmlSafe;
+
+	/**
+	 * @param out writer to write to, it is not closed
+	 */
+	public JsonWriter(Writer out) {
+		this.out = out;
+	}
+
+	/**
+	 * @param htmlSafe true to escape &lt;, &gt; and &amp; as well, so the output can be
+	 * embedded in a script element of an html page
+	 */
+	public void setHtmlSafe(boolean htmlSafe) {
+		this.htmlSafe = htmlSafe;
+	}
+
+	public JsonWriter beginObject() throws IOException {
+		beforeValue();
+		push();
+		out.write('{');
+		return this;
+	}
+
+	public JsonWriter endObject() throws IOException {
+		depth--;
+		out.write('}');
+		return this;
+	}
+
+	public JsonWriter beginArray() throws IOException {
+		beforeValue();
+		push();
+		out.write('[');
+		return this;
+	}
+
+	public JsonWriter endArray() throws IOException {
+		depth--;
+		out.write(']');
+		return this;
+	}
+
+	/**
+	 * writes the name of the next member of an object
+	 */
+	public JsonWriter name(String name) throws IOException {
+		beforeValue();
+		string(name);
+		out.write(':');
+		afterName = true;
+		return this;
+	}
+
+	/**
+	 * @param value string, or null
+	 */
+	public JsonWriter value(String value) throws IOException {
+		beforeValue();
+		if (value == null) {
+			out.write("null");
+		} else {
+			string(value);
+		}
+		return this;
+	}
+
+	public JsonWriter value(long value) throws IOException {
+		beforeValue();
+		out.write(Long.toString(value));
+		return this;
+	}
+
+	public JsonWriter value(boolean value) throws IOException {
+		beforeValue();
+		out.write(value ? "true" : "false");
+		return this;
+	}
+
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	private void push() {
+		if (depth + 1 == hasValue.length) {
+			hasValue = Arrays.copyOf(hasValue, hasValue.length * 2);
+		}
+		hasValue[++depth] = false;
+	}
+
+	private void beforeValue() throws IOException {
+		if (afterName) {
+			afterName = false;
+			return;
+		}
+		if (depth > 0) {
+			if (hasValue[depth]) {
+				out.write(',');
+			}
+			hasValue[depth] = true;
+		}
+	}
+
+	private void string(String s) throws IOException {
+		out.write('"');
+		int start = 0;
+		int length = s.length();
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			if (c >= 0x20 && c != '"' && c != '\\' && c != 0x2028 && c != 0x2029
+					&& !(htmlSafe && (c == '<' || c == '>' || c == '&'))) {
+				continue;
+			}
+			out.write(s, start, i - start);
+			start = i + 1;
+			switch (c) {
+			case '"':
+				out.write("\\\"");
+				break;
+			case '\\':
+				out.write("\\\\");
+				break;
+			case '\n':
+				out.write("\\n");
+				break;
+			case '\r':
+				out.write("\\r");
+				break;
+			case '\t':
+				out.write("\\t");
+				break;
+			default:
+				out.write("\\u");
+				out.write(HEX[(c >> 12) & 0xf]);
+				out.write(HEX[(c >> 8) & 0xf]);
+				out.write(HEX[(c >> 4) & 0xf]);
+				out.write(HEX[c & 0xf]);
+			}
+		}
+		out.write(s, start, length - start);
+		out.write('"');
+	}
+}
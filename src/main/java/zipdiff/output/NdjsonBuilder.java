@@ -0,0 +1,104 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.output;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+
+import zipdiff.DifferenceListener;
+import zipdiff.Differences;
+
+/**
+ * Generates newline delimited JSON: a start record with the names of the compared
+ * files, one record per difference like those of {@link JsonBuilder}, and an end
+ * record with the number of differences. A listener writes and flushes each record
+ * as soon as the difference is found, so other tools can consume them while the
+ * comparison is still running.
+ *
+ * <pre>
+ * {"type":"start","filename1":"a.zip","filename2":"b.zip"}
+ * {"type":"added","name":"b.txt","size":3,"crc":"0a1b2c3d"}
+ * {"type":"end","added":1,"removed":0,"changed":0}
+ * </pre>
+ */
+public class NdjsonBuilder extends JsonBuilder {
+
+	/**
+	 * builds the output, flushing it only at the end
+	 *
+	 * @param out OutputStream to write to
+	 * @param d differences
+	 */
+	@Override
+	public void build(OutputStream out, Differences d) {
+		replay(d, listener(out, false));
+	}
+
+	/**
+	 * creates a listener that writes and flushes one line per difference as it is reported
+	 *
+	 * @param out OutputStream to write to, it is not closed
+	 * @return DifferenceListener
+	 */
+	@Override
+	public DifferenceListener listener(OutputStream out) {
+		return listener(out, true);
+	}
+
+	private DifferenceListener listener(OutputStream out, final boolean flushEachRecord) {
+		final Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		// every record is a top level value, so one writer serves all lines
+		final JsonWriter json = new JsonWriter(writer);
+		return new RecordListener() {
+			@Override
+			public void start(String filename1, String filename2) {
+				try {
+					json.beginObject();
+					json.name("type").value("start");
+					json.name("filename1").value(filename1);
+					json.name("filename2").value(filename2);
+					json.endObject();
+					endLine();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+
+			@Override
+			protected void record(String type, String name, String from, ZipEntry z1, ZipEntry z2, String reason, String diff) throws IOException {
+				writeRecord(json, type, name, from, z1, z2, reason, diff);
+				endLine();
+			}
+
+			@Override
+			public void end() {
+				try {
+					json.beginObject();
+					json.name("type").value("end");
+					writeSummary(json, added, removed, changed, moved);
+					json.endObject();
+					writer.write('\n');
+					writer.flush();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+
+			private void endLine() throws IOException {
+				writer.write('\n');
+				if (flushEachRecord) {
+					writer.flush();
+				}
+			}
+		};
+	}
+}
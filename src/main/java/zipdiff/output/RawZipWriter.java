@@ -0,0 +1,249 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.output;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import zipdiff.index.CentralDirectory;
+
+/**
+ * Writes a zip file with entries copied from another zip file as they are stored, without
+ * inflating and deflating them again. Each entry gets a new local header built from its
+ * central directory record, then its compressed data is transferred from the source
+ * channel with {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which the
+ * operating system can do without copying the data through the Java heap. Data
+ * descriptors are not needed as the sizes and CRC are known up front.
+ */
+class RawZipWriter {
+
+	private static final int LOC_SIGNATURE = 0x04034b50;
+
+	private static final int LOC_HEADER_LENGTH = 30;
+
+	private static final int CEN_SIGNATURE = 0x02014b50;
+
+	private static final int CEN_HEADER_LENGTH = 46;
+
+	private static final int EOCD_SIGNATURE = 0x06054b50;
+
+	private static final int EOCD_LENGTH = 22;
+
+	private static final int VERSION = 20;
+
+	private static final int DATA_DESCRIPTOR_FLAG = 0x08;
+
+	private static final int UTF8_FLAG = 0x800;
+
+	private static final long LIMIT = 0xFFFFFFFFL;
+
+	private final FileChannel source;
+
+	private final WritableByteChannel target;
+
+	private final ByteBuffer header = ByteBuffer.allocate(LOC_HEADER_LENGTH + 0xFFFF).order(ByteOrder.LITTLE_ENDIAN);
+
+	private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+
+	private long offset;
+
+	private int count;
+
+	/**
+	 * @param source the zip file to copy from
+	 * @param target where the new zip file is written to, starting at its current position
+	 */
+	RawZipWriter(FileChannel source, WritableByteChannel target) {
+		this.source = source;
+		this.target = target;
+	}
+
+	/**
+	 * @param entries entries to copy
+	 * @param addedCount number of entries to add, see {@link #add(String, byte[], long)}
+	 * @param addedLength length of the names and content of the entries to add
+	 * @return true if the entries can be copied and added without zip64 extensions,
+	 * which this writer does not write
+	 */
+	static boolean canCopy(Collection<CentralDirectory.Entry> entries, int addedCount, long addedLength) {
+		if (entries.size() + addedCount >= 0xFFFF) {
+			return false;
+		}
+		long length = addedCount * (LOC_HEADER_LENGTH + CEN_HEADER_LENGTH) + 2 * addedLength;
+		for (CentralDirectory.Entry entry : entries) {
+			if (entry.getCompressedSize() >= LIMIT || entry.getSize() >= LIMIT || entry.getLocalHeaderOffset() >= LIMIT) {
+				return false;
+			}
+			// a char takes at most 3 bytes in UTF-8, the name is in both headers
+			long nameLength = entry.getName().length() * 3L;
+			length += LOC_HEADER_LENGTH + CEN_HEADER_LENGTH + 2 * nameLength + entry.getCompressedSize();
+		}
+		return length < LIMIT;
+	}
+
+	/**
+	 * copies an entry with a new local header
+	 *
+	 * @param entry central directory record of the entry in the source
+	 * @throws IOException in case of an input/output error
+	 */
+	void copy(CentralDirectory.Entry entry) throws IOException {
+		ByteBuffer local = ByteBuffer.allocate(LOC_HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+		long position = entry.getLocalHeaderOffset();
+		while (local.hasRemaining()) {
+			if (source.read(local, position + local.position()) < 0) {
+				throw new EOFException("local header of " + entry.getName() + " is truncated");
+			}
+		}
+		if (local.getInt(0) != LOC_SIGNATURE) {
+			throw new ZipException("invalid local header of " + entry.getName());
+		}
+		long data = position + LOC_HEADER_LENGTH + (local.getShort(26) & 0xFFFF) + (local.getShort(28) & 0xFFFF);
+
+		byte[] name = entry.getName().getBytes(StandardCharsets.UTF_8);
+		int flags = entry.getFlags() & ~DATA_DESCRIPTOR_FLAG;
+		if (name.length != entry.getName().length()) {
+			flags |= UTF8_FLAG;
+		}
+		long start = writeLocalHeader(name, flags, entry.getMethod(), entry.getDosTime(), entry.getCrc(), entry.getCompressedSize(), entry.getSize());
+
+		long remaining = entry.getCompressedSize();
+		long from = data;
+		while (remaining > 0) {
+			long transferred = source.transferTo(from, remaining, target);
+			if (transferred <= 0) {
+				if (from >= source.size()) {
+					throw new EOFException("data of " + entry.getName() + " is truncated");
+				}
+				continue;
+			}
+			from += transferred;
+			remaining -= transferred;
+		}
+		offset += entry.getCompressedSize();
+		addCentralRecord(name, flags, entry.getMethod(), entry.getDosTime(), entry.getCrc(), entry.getCompressedSize(), entry.getSize(), start);
+	}
+
+	/**
+	 * writes a new entry that is stored without compression
+	 *
+	 * @param entryName name of the entry
+	 * @param data content of the entry
+	 * @param dosTime modification time in MS-DOS format
+	 * @throws IOException in case of an input/output error
+	 */
+	void add(String entryName, byte[] data, long dosTime) throws IOException {
+		byte[] name = entryName.getBytes(StandardCharsets.UTF_8);
+		int flags = name.length != entryName.length() ? UTF8_FLAG : 0;
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		long start = writeLocalHeader(name, flags, ZipEntry.STORED, dosTime, crc.getValue(), data.length, data.length);
+		write(ByteBuffer.wrap(data));
+		addCentralRecord(name, flags, ZipEntry.STORED, dosTime, crc.getValue(), data.length, data.length, start);
+	}
+
+	/**
+	 * @param millis time in milliseconds since the epoch
+	 * @return the local time in MS-DOS format, which zip headers use
+	 */
+	static long dosTime(long millis) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(millis);
+		int year = calendar.get(Calendar.YEAR);
+		if (year < 1980) {
+			return (1 << 21) | (1 << 16);
+		}
+		return (long) (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21 | calendar.get(Calendar.DAY_OF_MONTH) << 16
+				| calendar.get(Calendar.HOUR_OF_DAY) << 11 | calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+	}
+
+	/**
+	 * @return the offset of the header
+	 */
+	private long writeLocalHeader(byte[] name, int flags, int method, long dosTime, long crc, long compressedSize, long size) throws IOException {
+		header.clear();
+		header.putInt(LOC_SIGNATURE);
+		putCommonFields(header, flags, method, dosTime, crc, compressedSize, size, name.length);
+		header.putShort((short) 0);
+		header.put(name);
+		header.flip();
+		long start = offset;
+		write(header);
+		return start;
+	}
+
+	private void addCentralRecord(byte[] name, int flags, int method, long dosTime, long crc, long compressedSize, long size, long start) {
+		ByteBuffer cen = ByteBuffer.allocate(CEN_HEADER_LENGTH + name.length).order(ByteOrder.LITTLE_ENDIAN);
+		cen.putInt(CEN_SIGNATURE);
+		cen.putShort((short) VERSION);
+		putCommonFields(cen, flags, method, dosTime, crc, compressedSize, size, name.length);
+		// extra field, comment, disk number, internal and external attributes
+		cen.putShort((short) 0);
+		cen.putShort((short) 0);
+		cen.putShort((short) 0);
+		cen.putShort((short) 0);
+		cen.putInt(0);
+		cen.putInt((int) start);
+		cen.put(name);
+		centralDirectory.write(cen.array(), 0, cen.position());
+		count++;
+	}
+
+	/**
+	 * puts the fields from the version needed to extract up to the length of the name,
+	 * which local and central headers have in common
+	 */
+	private static void putCommonFields(ByteBuffer buffer, int flags, int method, long dosTime, long crc, long compressedSize, long size, int nameLength) {
+		buffer.putShort((short) VERSION);
+		buffer.putShort((short) flags);
+		buffer.putShort((short) method);
+		buffer.putInt((int) dosTime);
+		buffer.putInt((int) crc);
+		buffer.putInt((int) compressedSize);
+		buffer.putInt((int) size);
+		buffer.putShort((short) nameLength);
+	}
+
+	/**
+	 * writes the central directory and its end record
+	 *
+	 * @throws IOException in case of an input/output error
+	 */
+	void finish() throws IOException {
+		long cenOffset = offset;
+		int cenSize = centralDirectory.size();
+		write(ByteBuffer.wrap(centralDirectory.toByteArray()));
+
+		ByteBuffer eocd = ByteBuffer.allocate(EOCD_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+		eocd.putInt(EOCD_SIGNATURE);
+		eocd.putShort((short) 0);
+		eocd.putShort((short) 0);
+		eocd.putShort((short) count);
+		eocd.putShort((short) count);
+		eocd.putInt(cenSize);
+		eocd.putInt((int) cenOffset);
+		eocd.putShort((short) 0);
+		eocd.flip();
+		write(eocd);
+	}
+
+	private void write(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			offset += target.write(buffer);
+		}
+	}
+}
@@ -7,7 +7,9 @@ package zipdiff.output;
 
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.util.zip.ZipEntry;
 
+import zipdiff.DifferenceListener;
 import zipdiff.Differences;
 
 /**
@@ -29,4 +31,103 @@ public class TextBuilder extends AbstractBuilder {
 		pw.println(d.toString());
 		pw.flush();
 	}
+
+	/**
+	 * creates a listener that writes one line per difference and the totals at the end
+	 *
+	 * @param out OutputStream to write to
+	 * @return DifferenceListener
+	 */
+	@Override
+	public DifferenceListener listener(OutputStream out) {
+		return new TextListener(new PrintWriter(out));
+	}
+
+	private static class TextListener implements DifferenceListener {
+		private final PrintWriter pw;
+
+		private String filename2;
+
+		private int added;
+
+		private int removed;
+
+		private int changed;
+
+		private int moved;
+
+		TextListener(PrintWriter pw) {
+			this.pw = pw;
+		}
+
+		@Override
+		public void start(String filename1, String filename2) {
+			this.filename2 = filename2;
+		}
+
+		@Override
+		public void fileAdded(String fullFilePath, ZipEntry ze) {
+			added++;
+			pw.print("\t[added] ");
+			pw.println(fullFilePath);
+		}
+
+		@Override
+		public void fileRemoved(String fullFilePath, ZipEntry ze) {
+			removed++;
+			pw.print("\t[removed] ");
+			pw.println(fullFilePath);
+		}
+
+		@Override
+		public void fileMoved(String fromPath, String toPath, ZipEntry z1, ZipEntry z2) {
+			moved++;
+			pw.print("\t[moved] ");
+			pw.print(fromPath);
+			pw.print(" -> ");
+			pw.println(toPath);
+		}
+
+		@Override
+		public void fileChanged(String fullFilePath, ZipEntry z1, ZipEntry z2) {
+			fileChanged(fullFilePath, z1, z2, null);
+		}
+
+		@Override
+		public void fileChanged(String fullFilePath, ZipEntry z1, ZipEntry z2, String reason) {
+			changed++;
+			pw.print("\t[changed] ");
+			pw.print(fullFilePath);
+			pw.print(" (size: ");
+			pw.print(z1.getSize());
+			pw.print(" : ");
+			pw.print(z2.getSize());
+			pw.print(")");
+			if (reason != null) {
+				pw.print(" [");
+				pw.print(reason);
+				pw.print("]");
+			}
+			pw.println();
+		}
+
+		@Override
+		public void contentDiff(String fullFilePath, String unifiedDiff) {
+			pw.print("[content] ");
+			pw.println(fullFilePath);
+			pw.print(unifiedDiff);
+		}
+
+		@Override
+		public void end() {
+			pw.println(String.format("%d file(s) added to %s", added, filename2));
+			pw.println(String.format("%d file(s) removed from %s", removed, filename2));
+			if (moved > 0) {
+				pw.println(String.format("%d file(s) moved", moved));
+			}
+			pw.println(String.format("%d file(s) changed", changed));
+			pw.println(String.format("Total differences: %d", added + removed + changed + moved));
+			pw.flush();
+		}
+	}
 }
@@ -0,0 +1,47 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.output;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+
+import zipdiff.History;
+
+/**
+ * lists the versions in which each entry changed.
+ */
+public class TextHistoryBuilder extends HistoryBuilder {
+
+	/**
+	 * builds the output
+	 *
+	 * @param out OutputStream to write to
+	 * @param history the timelines
+	 */
+	@Override
+	public void build(OutputStream out, History history) {
+		PrintWriter pw = new PrintWriter(out);
+		List<String> versions = history.getVersions();
+		pw.println("History of " + versions.size() + " versions:");
+		for (int i = 0; i < versions.size(); i++) {
+			pw.println("\t" + (i + 1) + ": " + versions.get(i));
+		}
+		for (Map.Entry<String, List<History.Change>> entry : history.getTimelines().entrySet()) {
+			pw.println(entry.getKey());
+			for (History.Change change : entry.getValue()) {
+				pw.print('\t');
+				pw.print(change.getKind().getLabel());
+				pw.print(" in ");
+				pw.println(versions.get(change.getVersion()));
+			}
+		}
+		pw.println("Entries changed: " + history.getTimelines().size());
+		pw.println("Total changes: " + history.getNumberOfChanges());
+		pw.flush();
+	}
+}
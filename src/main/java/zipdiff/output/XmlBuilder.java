@@ -5,20 +5,29 @@
  */
 package zipdiff.output;
 
+import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PrintWriter;
-import java.util.Set;
+import java.io.UncheckedIOException;
+import java.util.zip.ZipEntry;
 
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import zipdiff.DifferenceListener;
 import zipdiff.Differences;
+import zipdiff.util.StringUtil;
 
 /**
  *
- * Generates xml output for a Differences instance
+ * Generates xml output for a Differences instance. The output is written by an
+ * XMLStreamWriter one element at a time, so a listener writes reports of any size in
+ * constant memory. Names and diffs are escaped, characters that xml does not allow
+ * are replaced by U+FFFD.
  *
  * @author Sean C. Sullivan
  *
  */
-//TODO: replace static content with some form of templated document
 public class XmlBuilder extends AbstractBuilder {
 
 	/**
@@ -29,40 +38,205 @@ public class XmlBuilder extends AbstractBuilder {
 	 */
 	@Override
 	public void build(OutputStream out, Differences d) {
-		PrintWriter pw = new PrintWriter(out);
+		replay(d, listener(out));
+	}
 
-		pw.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-		pw.print("<zipdiff filename1=\"");
+	/**
+	 * creates a listener that writes one element per difference as it is reported
+	 *
+	 * @param out OutputStream to write to, it is flushed at the end but not closed
+	 * @return DifferenceListener
+	 */
+	@Override
+	public DifferenceListener listener(OutputStream out) {
+		final XMLStreamWriter xml;
+		try {
+			// factories are not thread safe, so batch reports written in parallel need their own
+			xml = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+		} catch (XMLStreamException e) {
+			throw failed(e);
+		}
+		return new DifferenceListener() {
+			@Override
+			public void start(String filename1, String filename2) {
+				try {
+					writeHeader(xml, filename1, filename2);
+				} catch (XMLStreamException e) {
+					throw failed(e);
+				}
+			}
 
-		String filename1 = d.getFilename1();
+			@Override
+			public void fileAdded(String fullFilePath, ZipEntry ze) {
+				try {
+					writeEntry(xml, "added", fullFilePath, ze);
+				} catch (XMLStreamException e) {
+					throw failed(e);
+				}
+			}
 
-		if (filename1 == null) {
-			filename1 = "filename1.zip";
-		}
-		pw.print(filename1);
-		pw.print("\" filename2=\"");
+			@Override
+			public void fileRemoved(String fullFilePath, ZipEntry ze) {
+				try {
+					writeEntry(xml, "removed", fullFilePath, ze);
+				} catch (XMLStreamException e) {
+					throw failed(e);
+				}
+			}
+
+			@Override
+			public void fileMoved(String fromPath, String toPath, ZipEntry z1, ZipEntry z2) {
+				try {
+					writeMoved(xml, fromPath, toPath, z2);
+				} catch (XMLStreamException e) {
+					throw failed(e);
+				}
+			}
+
+			@Override
+			public void fileChanged(String fullFilePath, ZipEntry z1, ZipEntry z2) {
+				fileChanged(fullFilePath, z1, z2, null);
+			}
+
+			@Override
+			public void fileChanged(String fullFilePath, ZipEntry z1, ZipEntry z2, String reason) {
+				try {
+					writeChanged(xml, fullFilePath, z1, z2, reason);
+				} catch (XMLStreamException e) {
+					throw failed(e);
+				}
+			}
 
-		String filename2 = d.getFilename2();
+			@Override
+			public void contentDiff(String fullFilePath, String unifiedDiff) {
+				try {
+					writeContentDiff(xml, fullFilePath, unifiedDiff);
+				} catch (XMLStreamException e) {
+					throw failed(e);
+				}
+			}
+
+			@Override
+			public void end() {
+				try {
+					writeFooter(xml);
+					xml.flush();
+				} catch (XMLStreamException e) {
+					throw failed(e);
+				}
+			}
+		};
+	}
+
+	private static UncheckedIOException failed(XMLStreamException e) {
+		return new UncheckedIOException(new IOException("cannot write the xml output", e));
+	}
+
+	protected void writeHeader(XMLStreamWriter xml, String filename1, String filename2) throws XMLStreamException {
+		xml.writeStartDocument("UTF-8", "1.0");
+		xml.writeCharacters("\n");
+		xml.writeStartElement("zipdiff");
+		xml.writeAttribute("filename1", StringUtil.toXmlChars(filename1 != null ? filename1 : "filename1.zip"));
+		xml.writeAttribute("filename2", StringUtil.toXmlChars(filename2 != null ? filename2 : "filename2.zip"));
+		xml.writeCharacters("\n");
+		xml.writeStartElement("differences");
+		xml.writeCharacters("\n");
+	}
+
+	protected void writeFooter(XMLStreamWriter xml) throws XMLStreamException {
+		xml.writeEndElement();
+		xml.writeCharacters("\n");
+		xml.writeEndElement();
+		xml.writeCharacters("\n");
+		xml.writeEndDocument();
+	}
+
+	/**
+	 * writes the element of an added or removed entry
+	 *
+	 * @param xml writer to write to
+	 * @param status name of the element
+	 * @param name name of the entry
+	 * @param entry size and CRC of the entry, may be null
+	 */
+	protected void writeEntry(XMLStreamWriter xml, String status, String name, ZipEntry entry) throws XMLStreamException {
+		xml.writeStartElement(status);
+		if (entry != null) {
+			writeSizeAndCrc(xml, "size", "crc", entry);
+		}
+		xml.writeCharacters(StringUtil.toXmlChars(name));
+		xml.writeEndElement();
+		xml.writeCharacters("\n");
+	}
 
-		if (filename2 == null) {
-			filename2 = "filename2.zip";
+	/**
+	 * writes the element of a moved entry, with its old name as an attribute
+	 *
+	 * @param xml writer to write to
+	 * @param fromPath name of the entry in the first file
+	 * @param toPath name of the entry in the second file
+	 * @param entry size and CRC of the entry, may be null
+	 */
+	protected void writeMoved(XMLStreamWriter xml, String fromPath, String toPath, ZipEntry entry) throws XMLStreamException {
+		xml.writeStartElement("moved");
+		xml.writeAttribute("from", StringUtil.toXmlChars(fromPath));
+		if (entry != null) {
+			writeSizeAndCrc(xml, "size", "crc", entry);
 		}
-		pw.print(filename2);
-		pw.println("\">");
+		xml.writeCharacters(StringUtil.toXmlChars(toPath));
+		xml.writeEndElement();
+		xml.writeCharacters("\n");
+	}
 
-		pw.println("<differences>");
-        writeStatusTags(pw, "added", d.getAdded().keySet());
-        writeStatusTags(pw, "removed", d.getRemoved().keySet());
-        writeStatusTags(pw, "changed", d.getChanged().keySet());
-		pw.println("</differences>");
-		pw.println("</zipdiff>");
+	/**
+	 * writes the element of a changed entry
+	 *
+	 * @param xml writer to write to
+	 * @param name name of the entry
+	 * @param entry1 size and CRC of the old entry, may be null
+	 * @param entry2 size and CRC of the new entry, may be null
+	 * @param reason kind of change, null if unknown
+	 */
+	protected void writeChanged(XMLStreamWriter xml, String name, ZipEntry entry1, ZipEntry entry2, String reason) throws XMLStreamException {
+		xml.writeStartElement("changed");
+		if (reason != null) {
+			xml.writeAttribute("reason", reason);
+		}
+		if (entry1 != null) {
+			writeSizeAndCrc(xml, "size1", "crc1", entry1);
+		}
+		if (entry2 != null) {
+			writeSizeAndCrc(xml, "size2", "crc2", entry2);
+		}
+		xml.writeCharacters(StringUtil.toXmlChars(name));
+		xml.writeEndElement();
+		xml.writeCharacters("\n");
+	}
 
-		pw.flush();
+	/**
+	 * writes the size and CRC of an entry as attributes, if they are known
+	 */
+	private static void writeSizeAndCrc(XMLStreamWriter xml, String size, String crc, ZipEntry entry) throws XMLStreamException {
+		if (entry.getSize() >= 0) {
+			xml.writeAttribute(size, Long.toString(entry.getSize()));
+		}
+		if (entry.getCrc() >= 0) {
+			xml.writeAttribute(crc, formatCrc(entry.getCrc()));
+		}
 	}
 
-    protected void writeStatusTags(PrintWriter pw, String statusTag, Set<String> modified) {
-        for(String key : modified) {
-            pw.print(String.format("<%s>%s</%s>",statusTag,key,statusTag));
-        }
-    }
+	/**
+	 * writes the unified diff of a changed entry
+	 *
+	 * @param xml writer to write to
+	 * @param name name of the entry
+	 * @param unifiedDiff the diff
+	 */
+	protected void writeContentDiff(XMLStreamWriter xml, String name, String unifiedDiff) throws XMLStreamException {
+		xml.writeStartElement("contentdiff");
+		xml.writeAttribute("name", StringUtil.toXmlChars(name));
+		xml.writeCharacters(StringUtil.toXmlChars(unifiedDiff));
+		xml.writeEndElement();
+		xml.writeCharacters("\n");
+	}
 }
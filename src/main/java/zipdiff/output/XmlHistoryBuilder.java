@@ -0,0 +1,53 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.output;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import zipdiff.History;
+import zipdiff.util.StringUtil;
+
+/**
+ * Generates xml output with one element per changed entry, that lists the versions
+ * in which the entry was introduced, changed or removed.
+ */
+public class XmlHistoryBuilder extends HistoryBuilder {
+
+	/**
+	 * builds the output
+	 *
+	 * @param out OutputStream to write to
+	 * @param history the timelines
+	 */
+	@Override
+	public void build(OutputStream out, History history) {
+		PrintWriter pw = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		pw.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+		pw.println("<zipdiff-history>");
+		pw.println("<versions>");
+		List<String> versions = history.getVersions();
+		for (int i = 0; i < versions.size(); i++) {
+			pw.println("<version index=\"" + (i + 1) + "\" name=\"" + StringUtil.escapeXml(versions.get(i)) + "\"/>");
+		}
+		pw.println("</versions>");
+		pw.println("<entries>");
+		for (Map.Entry<String, List<History.Change>> entry : history.getTimelines().entrySet()) {
+			pw.println("<entry name=\"" + StringUtil.escapeXml(entry.getKey()) + "\">");
+			for (History.Change change : entry.getValue()) {
+				pw.println("<" + change.getKind().getLabel() + " version=\"" + (change.getVersion() + 1) + "\"/>");
+			}
+			pw.println("</entry>");
+		}
+		pw.println("</entries>");
+		pw.println("</zipdiff-history>");
+		pw.flush();
+	}
+}
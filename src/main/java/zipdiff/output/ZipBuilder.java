@@ -6,25 +6,49 @@
 package zipdiff.output;
 
 import zipdiff.Differences;
+import zipdiff.index.CentralDirectory;
+import zipdiff.input.InputSource;
+import zipdiff.input.InputSourceFactory;
 import zipdiff.util.StringUtil;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 
 /**
- * creates a zip file with the new versions of files that have been added or modified
+ * creates a zip file with the new versions of files that have been added or modified.
+ * Files that have moved are not copied again, their old and new names are listed in
+ * {@value #MOVES_ENTRY}, one tab separated pair per line. If the second input is a
+ * zip file and the names are kept, the entries are copied as they are compressed, see
+ * {@link RawZipWriter}; otherwise they are inflated and deflated again.
  *
  * @author Hendrik Brummermann, HIS GmbH
  */
 public class ZipBuilder extends AbstractBuilder {
+
+	/** name of the entry that lists the moved files */
+	public static final String MOVES_ENTRY = "META-INF/zipdiff-moves.txt";
+
 	private Differences differences;
 
+	/** the list of moved files, null if none have moved */
+	private byte[] moves;
+
 	private final Set<String> filenames = new TreeSet<>();
 
 	/**
@@ -39,6 +63,7 @@ public class ZipBuilder extends AbstractBuilder {
 		try {
 			collectAddedFiles();
 			collectModifiedFiles();
+			collectMovedFiles();
 			copyEntries(out);
 		} catch (IOException e) {
 			System.err.println("Error while writing zip file: " + e);
@@ -67,26 +92,109 @@ public class ZipBuilder extends AbstractBuilder {
 	}
 
 	/**
-	 * copies the zip entries (with data) from the second archive file to the output file.
+	 * lists the old and new names of the files that have been moved in the second zip archive
+	 */
+	private void collectMovedFiles() {
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, String> entry : differences.getMoveTargets().entrySet()) {
+			if (!entry.getKey().contains("!") && !entry.getValue().contains("!")) {
+				sb.append(StringUtil.removeDirectoryPrefix(entry.getKey(), numberOfOutputPrefixesToSkip));
+				sb.append('\t');
+				sb.append(StringUtil.removeDirectoryPrefix(entry.getValue(), numberOfOutputPrefixesToSkip));
+				sb.append('\n');
+			}
+		}
+		moves = sb.length() > 0 ? sb.toString().getBytes(StandardCharsets.UTF_8) : null;
+	}
+
+	/**
+	 * copies the zip entries (with data) from the second input to the output file.
 	 *
 	 * @param out output file
 	 * @throws IOException in case of an input/output error
 	 */
 	private void copyEntries(OutputStream out) throws IOException {
+		File file2 = new File(differences.getFilename2());
+		if (numberOfOutputPrefixesToSkip == 0 && file2.isFile()) {
+			List<CentralDirectory.Entry> entries = findEntries(file2);
+			if (entries != null) {
+				copyRawEntries(file2, entries, out);
+				return;
+			}
+		}
+		recompressEntries(out);
+	}
+
+	/**
+	 * @return the central directory records of the files to copy, null if they cannot
+	 * be copied as they are
+	 */
+	private List<CentralDirectory.Entry> findEntries(File file) {
+		Map<String, CentralDirectory.Entry> byName = new HashMap<>();
+		try {
+			for (CentralDirectory.Entry entry : CentralDirectory.read(file).getEntries()) {
+				byName.put(entry.getName(), entry);
+			}
+		} catch (IOException e) {
+			return null;
+		}
+		List<CentralDirectory.Entry> entries = new ArrayList<>(filenames.size());
+		for (String filename : filenames) {
+			CentralDirectory.Entry entry = byName.get(filename);
+			if (entry == null) {
+				return null;
+			}
+			entries.add(entry);
+		}
+		boolean canCopy = moves != null ? RawZipWriter.canCopy(entries, 1, MOVES_ENTRY.length() + moves.length)
+				: RawZipWriter.canCopy(entries, 0, 0);
+		return canCopy ? entries : null;
+	}
+
+	/**
+	 * copies the compressed data of the entries without inflating it
+	 */
+	private void copyRawEntries(File file, List<CentralDirectory.Entry> entries, OutputStream out) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			WritableByteChannel target = out instanceof FileOutputStream ? ((FileOutputStream) out).getChannel() : Channels.newChannel(out);
+			RawZipWriter writer = new RawZipWriter(raf.getChannel(), target);
+			for (CentralDirectory.Entry entry : entries) {
+				writer.copy(entry);
+			}
+			if (moves != null) {
+				writer.add(MOVES_ENTRY, moves, RawZipWriter.dosTime(System.currentTimeMillis()));
+			}
+			writer.finish();
+		} finally {
+			raf.close();
+		}
+		out.close();
+	}
+
+	/**
+	 * copies the entries by inflating them and deflating them again under their new names
+	 */
+	private void recompressEntries(OutputStream out) throws IOException {
 		ZipOutputStream os = new ZipOutputStream(out);
-		ZipFile zipFile = new ZipFile(differences.getFilename2());
+		InputSource source = InputSourceFactory.create(differences.getFilename2());
 
         for(String filename : filenames) {
-            ZipEntry zipEntry = zipFile.getEntry(filename);
-            InputStream is = zipFile.getInputStream(zipEntry);
+            ZipEntry zipEntry = source.getEntry(filename);
+            InputStream is = source.getInputStream(zipEntry);
             ZipEntry z = new ZipEntry(StringUtil.removeDirectoryPrefix(filename, numberOfOutputPrefixesToSkip));
             os.putNextEntry(z);
             copyStream(is, os);
             os.closeEntry();
             is.close();
         }
+		if (moves != null) {
+			os.putNextEntry(new ZipEntry(MOVES_ENTRY));
+			os.write(moves);
+			os.closeEntry();
+		}
 
-		zipFile.close();
+		source.close();
 		os.close();
 	}
 
@@ -28,4 +28,77 @@ public class StringUtil {
 		}
 		return name.substring(pos);
 	}
+
+	/**
+	 * replaces the characters that are special in xml and html text and attribute values
+	 * by entities
+	 * @param text text to escape
+	 * @return escaped text, the same instance if nothing had to be replaced
+	 */
+	public static String escapeXml(String text) {
+		StringBuilder sb = null;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			String entity;
+			switch (c) {
+			case '&':
+				entity = "&amp;";
+				break;
+			case '<':
+				entity = "&lt;";
+				break;
+			case '>':
+				entity = "&gt;";
+				break;
+			case '"':
+				entity = "&quot;";
+				break;
+			default:
+				entity = null;
+			}
+			if (entity != null && sb == null) {
+				sb = new StringBuilder(text.length() + 16);
+				sb.append(text, 0, i);
+			}
+			if (sb != null) {
+				if (entity != null) {
+					sb.append(entity);
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+		return sb == null ? text : sb.toString();
+	}
+
+	/**
+	 * replaces the characters that may not appear in an xml 1.0 document, such as most
+	 * control characters and unpaired surrogates, by U+FFFD
+	 * @param text text to check
+	 * @return valid text, the same instance if nothing had to be replaced
+	 */
+	public static String toXmlChars(String text) {
+		char[] chars = null;
+		int length = text.length();
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			boolean valid;
+			if (Character.isHighSurrogate(c)) {
+				valid = i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1));
+				if (valid) {
+					i++;
+					continue;
+				}
+			} else {
+				valid = c >= 0x20 ? !Character.isLowSurrogate(c) && c != 0xfffe && c != 0xffff : c == '\t' || c == '\n' || c == '\r';
+			}
+			if (!valid) {
+				if (chars == null) {
+					chars = text.toCharArray();
+				}
+				chars[i] = '\ufffd';
+			}
+		}
+		return chars == null ? text : new String(chars);
+	}
 }
@@ -7,9 +7,13 @@
 package zipdiff.util.commandline;
 
 import com.beust.jcommander.Parameter;
+import zipdiff.util.commandline.validators.ClassDiffMode;
+import zipdiff.util.commandline.validators.HashAlgorithm;
 import zipdiff.util.commandline.validators.InputFiles;
 import zipdiff.util.commandline.validators.OutputFormat;
+import zipdiff.util.commandline.validators.PositiveInteger;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -35,18 +39,101 @@ public class CommandLineArgs {
     @Parameter(names = {"-ts"}, description = "compare using time stamp")
     private boolean compareTStamp = false;
 
+    @Parameter(names = {"-hash"}, description = "compare the content of the entries using this digest", validateWith = HashAlgorithm.class)
+    private String hashAlgorithm;
+
     @Parameter(names = {"-filter"}, description = "regex of filenames to check")
     private String filenameFilter = ".*";
 
     @Parameter(names = {"-format"}, description = "format of output", validateWith = OutputFormat.class)
     private String outputFormat = "text";
 
+    @Parameter(names = {"-archiveExtensions"}, description = "comma separated extensions of embedded archives, empty to check every entry")
+    private String archiveExtensions = "jar,war,ear,zip,aar";
+
+    @Parameter(names = {"-cacheDir"}, description = "directory to cache the indexes of the input files in")
+    private String cacheDir;
+
+    @Parameter(names = {"-cacheSize"}, description = "maximum size of the index cache in megabytes")
+    private int cacheSize = 256;
+
+    @Parameter(names = {"-parallelism"}, description = "number of threads used to index the input files", validateWith = PositiveInteger.class)
+    private int parallelism = 1;
+
+    @Parameter(names = {"-contentDiff"}, description = "regex of the changed entries whose content is compared line by line, e.g. .*\\.(properties|xml|txt|MF)")
+    private String contentDiffPattern;
+
+    @Parameter(names = {"-contentDiffMaxSize"}, description = "maximum size in kilobytes of an entry compared line by line")
+    private int contentDiffMaxSize = 1024;
+
+    @Parameter(names = {"-classDiff"}, description = "compare changed class files by structure: api compares the members, body also the method bodies", validateWith = ClassDiffMode.class)
+    private String classDiffMode;
+
+    @Parameter(names = {"-normalize"}, description = "ignore build times and similar noise in manifests, pom.properties and git.properties")
+    private boolean normalize = false;
+
+    @Parameter(names = {"-moves"}, description = "report removed entries with the content of added entries as moved")
+    private boolean moves = false;
+
+    @Parameter(names = {"-stream"}, description = "write each difference as soon as it is found")
+    private boolean stream = false;
+
+    @Parameter(names = {"-batch"}, description = "compare the first input file to each of the others, writing the reports to the -output directory")
+    private boolean batch = false;
+
+    @Parameter(names = {"-history"}, description = "compare each input file to the one before it and write the versions in which each entry changed")
+    private boolean history = false;
+
+    @Parameter(names = {"-manifest"}, description = "file listing further input files, one per line, implies -batch unless -history is given")
+    private String manifest;
+
+    @Parameter(names = {"-stats"}, description = "write the time and memory each phase took and the bytes read to stderr")
+    private boolean stats = false;
+
     @Parameter(names = {"-n", "-noAction"}, description = "no action")
     private boolean noAction = false;
 
     @Parameter(names = {"--help", "-help"}, help = true)
     private boolean help = false;
 
+    /** directory that relative names refer to */
+    private File workingDirectory = new File(".");
+
+    /**
+     * resolves the names of the input and output files, the manifest and the cache
+     * directory against a directory, for arguments that were given in another process
+     *
+     * @param directory working directory of the process that gave the arguments
+     */
+    public void resolveFiles(File directory) {
+        workingDirectory = directory;
+        List<String> resolved = new ArrayList<>();
+        for (String inputFile : inputFiles) {
+            resolved.add(resolve(directory, inputFile));
+        }
+        inputFiles = resolved;
+        if (!"-".equals(outputFile)) {
+            outputFile = resolve(directory, outputFile);
+        }
+        if (manifest != null) {
+            manifest = resolve(directory, manifest);
+        }
+        if (cacheDir != null) {
+            cacheDir = resolve(directory, cacheDir);
+        }
+    }
+
+    private static String resolve(File directory, String name) {
+        return new File(name).isAbsolute() ? name : new File(directory, name).getPath();
+    }
+
+    /**
+     * @return the directory that relative names refer to, see {@link #resolveFiles(File)}
+     */
+    public File getWorkingDirectory() {
+        return workingDirectory;
+    }
+
     public List<String> getInputFiles(){
         return inputFiles;
     }
@@ -75,6 +162,10 @@ public class CommandLineArgs {
         return compareTStamp;
     }
 
+    public String getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
     public String getFilter() {
         return filenameFilter;
     }
@@ -83,6 +174,62 @@ public class CommandLineArgs {
         return outputFormat;
     }
 
+    public String[] getArchiveExtensions() {
+        return archiveExtensions.split(",");
+    }
+
+    public String getCacheDir() {
+        return cacheDir;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public String getContentDiffPattern() {
+        return contentDiffPattern;
+    }
+
+    public int getContentDiffMaxSize() {
+        return contentDiffMaxSize;
+    }
+
+    public String getClassDiffMode() {
+        return classDiffMode;
+    }
+
+    public boolean isNormalize() {
+        return normalize;
+    }
+
+    public boolean isMoves() {
+        return moves;
+    }
+
+    public boolean isStream() {
+        return stream;
+    }
+
+    public boolean isBatch() {
+        return batch || (manifest != null && !history);
+    }
+
+    public boolean isHistory() {
+        return history;
+    }
+
+    public String getManifest() {
+        return manifest;
+    }
+
+    public boolean isStats() {
+        return stats;
+    }
+
     public boolean getNoAction() {
         return noAction;
     }
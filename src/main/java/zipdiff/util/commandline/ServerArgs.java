@@ -0,0 +1,55 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+
+package zipdiff.util.commandline;
+
+import com.beust.jcommander.Parameter;
+import zipdiff.DiffServer;
+import zipdiff.util.commandline.validators.PositiveInteger;
+
+public class ServerArgs {
+    @Parameter(names = {"-port"}, description = "port to listen on, on the loopback interface only")
+    private int port = DiffServer.DEFAULT_PORT;
+
+    @Parameter(names = {"-threads"}, description = "number of requests served at once", validateWith = PositiveInteger.class)
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(names = {"-memoryCacheSize"}, description = "size limit of the indexes kept in memory in megabytes")
+    private int memoryCacheSize = 256;
+
+    @Parameter(names = {"-cacheDir"}, description = "directory to cache the indexes of the input files in")
+    private String cacheDir;
+
+    @Parameter(names = {"-cacheSize"}, description = "maximum size of the index cache in megabytes")
+    private int cacheSize = 256;
+
+    @Parameter(names = {"--help", "-help"}, help = true)
+    private boolean help = false;
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getMemoryCacheSize() {
+        return memoryCacheSize;
+    }
+
+    public String getCacheDir() {
+        return cacheDir;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public boolean isHelp() {
+        return help;
+    }
+}
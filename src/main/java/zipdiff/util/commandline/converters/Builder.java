@@ -16,10 +16,16 @@ public class Builder implements IStringConverter<zipdiff.output.Builder> {
         switch(value){
             case "html":
                 return new HtmlBuilder();
+            case "htmltree":
+                return new HtmlTreeBuilder();
             case "xml":
                 return new XmlBuilder();
             case "zip":
                 return new ZipBuilder();
+            case "json":
+                return new JsonBuilder();
+            case "ndjson":
+                return new NdjsonBuilder();
             default:
                 return new TextBuilder();
         }
@@ -27,6 +27,8 @@ public class Stream implements IStringConverter<PrintStream> {
     }
 
     private class OutputFileNotFoundException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
         public OutputFileNotFoundException(String message, Throwable cause) {
             super(message, cause);
         }
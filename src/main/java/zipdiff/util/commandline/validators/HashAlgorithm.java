@@ -0,0 +1,32 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+
+package zipdiff.util.commandline.validators;
+
+import com.beust.jcommander.IParameterValidator;
+import com.beust.jcommander.ParameterException;
+import zipdiff.compare.DigestAlgorithm;
+
+public class HashAlgorithm implements IParameterValidator {
+
+    @Override
+    public void validate(String name, String value) throws ParameterException {
+        try {
+            DigestAlgorithm.forName(value);
+        } catch (IllegalArgumentException e) {
+            StringBuilder names = new StringBuilder();
+            for (DigestAlgorithm algorithm : DigestAlgorithm.values()) {
+                if (names.length() > 0) {
+                    names.append(',');
+                }
+                names.append(algorithm.getName());
+            }
+            throw new ParameterException(
+                    String.format("%s must be one of the following: %s", name, names)
+            );
+        }
+    }
+}
@@ -15,8 +15,8 @@ public class OutputFormat implements IParameterValidator {
 
     @Override
     public void validate(String name, String value) throws ParameterException {
-        String validOptionRegex = "xml|text|zip|html";
-        if (!Pattern.compile("xml|text|zip|html").matcher(value).matches()) {
+        String validOptionRegex = "xml|text|zip|html|htmltree|json|ndjson";
+        if (!Pattern.compile(validOptionRegex).matcher(value).matches()) {
             throw new ParameterException(
                     String.format("%s must be one of the following: %s", name, validOptionRegex.replace('|', ','))
             );
@@ -0,0 +1,25 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.util.commandline.validators;
+
+import com.beust.jcommander.IParameterValidator;
+import com.beust.jcommander.ParameterException;
+
+public class PositiveInteger implements IParameterValidator {
+
+    @Override
+    public void validate(String name, String value) throws ParameterException {
+        int n;
+        try {
+            n = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ParameterException(String.format("%s must be a positive integer, not %s", name, value));
+        }
+        if (n < 1) {
+            throw new ParameterException(String.format("%s must be a positive integer, not %s", name, value));
+        }
+    }
+}
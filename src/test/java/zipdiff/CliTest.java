@@ -7,6 +7,7 @@
 package zipdiff;
 
 
+import com.beust.jcommander.ParameterException;
 import org.junit.Test;
 
 import java.io.FileNotFoundException;
@@ -32,4 +33,9 @@ public class CliTest{
     public void testTwoInputFiles() throws Exception{
         Main.main(constructArgs("file1.zip", "file2.zip"));
     }
+
+    @Test(expected = ParameterException.class) /* fails validation */
+    public void testParallelismZero() throws Exception {
+        Main.main(constructArgs("-parallelism", "0", "file1.zip", "file2.zip"));
+    }
 }
@@ -6,25 +6,67 @@
 package zipdiff;
 
 import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assume;
 import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import zipdiff.compare.ClassComparator;
+import zipdiff.compare.ClassSignatureTest;
+import zipdiff.compare.DigestAlgorithm;
+import zipdiff.compare.NormalizerRegistry;
+import zipdiff.index.ArchiveIndex;
+import zipdiff.index.IndexCache;
+import zipdiff.jfr.Events;
 import zipdiff.output.AbstractBuilder;
 import zipdiff.output.HtmlBuilder;
+import zipdiff.output.HtmlTreeBuilder;
+import zipdiff.output.JsonBuilder;
+import zipdiff.output.NdjsonBuilder;
 import zipdiff.output.TextBuilder;
+import zipdiff.output.TextHistoryBuilder;
 import zipdiff.output.XmlBuilder;
+import zipdiff.output.XmlHistoryBuilder;
+import zipdiff.output.ZipBuilder;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * tests for DifferenceCalculator
@@ -50,6 +92,18 @@ public class DifferenceCalculatorTest{
 
 	private static String testJarOneEntryAContentsChangedFilename;
 
+	private static String testJarEmbeddedA1Filename;
+
+	private static String testJarEmbeddedAContentsChangedFilename;
+
+	private static String testJarOneEntryAUncompressedFilename;
+
+	private static String testJarOneEntryAStoredFilename;
+
+	private static String testJarOneEntryALongerFilename;
+
+	private static String testDirOneEntryAFilename;
+
 	static {
 		testDirPathName = System.getProperty(SYSTEM_TMP_DIR_PROPERTY);
 		if (testDirPathName == null) {
@@ -59,6 +113,12 @@ public class DifferenceCalculatorTest{
 		testJarOneEntryA2Filename = testDirPathName + File.separator + "testJarOneEntryA2Filename.jar";
 		testJarOneEntryB1Filename = testDirPathName + File.separator + "testJarOneEntryB1Filename.jar";
 		testJarOneEntryAContentsChangedFilename = testDirPathName + File.separator + "testJarOneEntryAContentsChangedFilename.jar";
+		testJarEmbeddedA1Filename = testDirPathName + File.separator + "testJarEmbeddedA1Filename.jar";
+		testJarEmbeddedAContentsChangedFilename = testDirPathName + File.separator + "testJarEmbeddedAContentsChangedFilename.jar";
+		testJarOneEntryAUncompressedFilename = testDirPathName + File.separator + "testJarOneEntryAUncompressedFilename.jar";
+		testJarOneEntryAStoredFilename = testDirPathName + File.separator + "testJarOneEntryAStoredFilename.jar";
+		testJarOneEntryALongerFilename = testDirPathName + File.separator + "testJarOneEntryALongerFilename.jar";
+		testDirOneEntryAFilename = testDirPathName + File.separator + "testDirOneEntryA";
 	}
 
 	/**
@@ -148,6 +208,111 @@ public class DifferenceCalculatorTest{
 		testJarOS.close();
 	}
 
+	/**
+	 * Create a jar with only one entry in it. That entry being A, deflated at level 0,
+	 * so it has the compression method of testJarOneEntryA1 but not its compressed size
+	 *
+	 * @throws IOException
+	 */
+	public void createJarOneEntryAUncompressed() throws IOException {
+		File testDir = new File(testDirPathName);
+		assertNotNull(testDir.mkdirs());
+		JarOutputStream testJarOS = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(testJarOneEntryAUncompressedFilename)));
+		testJarOS.setLevel(Deflater.NO_COMPRESSION);
+
+		// add an entry
+        testJarOS.putNextEntry(new JarEntry(ENTRY_A));
+        testJarOS.write(getPopulatedByteArray(2048, (byte)'a'));
+		testJarOS.flush();
+		testJarOS.close();
+	}
+
+	/**
+	 * Create a jar with only one entry in it. That entry being A, stored, so its compression
+	 * method differs from the one of testJarOneEntryA1
+	 *
+	 * @throws IOException
+	 */
+	public void createJarOneEntryAStored() throws IOException {
+		File testDir = new File(testDirPathName);
+		assertNotNull(testDir.mkdirs());
+		JarOutputStream testJarOS = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(testJarOneEntryAStoredFilename)));
+
+		// add an entry, a stored entry needs its size and crc up front
+		byte data[] = getPopulatedByteArray(2048, (byte)'a');
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		JarEntry entry = new JarEntry(ENTRY_A);
+		entry.setMethod(ZipEntry.STORED);
+		entry.setSize(data.length);
+		entry.setCompressedSize(data.length);
+		entry.setCrc(crc.getValue());
+		testJarOS.putNextEntry(entry);
+		testJarOS.write(data);
+		testJarOS.flush();
+		testJarOS.close();
+	}
+
+	/**
+	 * Create a jar with only one entry in it. That entry being A, one byte longer than
+	 * in testJarOneEntryA1
+	 *
+	 * @throws IOException
+	 */
+	public void createJarOneEntryALonger() throws IOException {
+		File testDir = new File(testDirPathName);
+		assertNotNull(testDir.mkdirs());
+		JarOutputStream testJarOS = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(testJarOneEntryALongerFilename)));
+
+		// add an entry
+        testJarOS.putNextEntry(new JarEntry(ENTRY_A));
+        testJarOS.write(getPopulatedByteArray(2049, (byte)'a'));
+		testJarOS.flush();
+		testJarOS.close();
+	}
+
+	/**
+	 * Create a jar with an embedded jar lib/inner.jar, which has one entry A
+	 *
+	 * @param filename name of the jar to create
+	 * @param lastByte last byte of the content of A
+	 * @throws IOException
+	 */
+	public void createJarEmbeddedA(String filename, byte lastByte) throws IOException {
+		File testDir = new File(testDirPathName);
+		assertNotNull(testDir.mkdirs());
+
+		ByteArrayOutputStream inner = new ByteArrayOutputStream();
+		JarOutputStream innerJarOS = new JarOutputStream(inner);
+		innerJarOS.putNextEntry(new JarEntry(ENTRY_A));
+		byte data[] = getPopulatedByteArray(2048, (byte)'a');
+		data[data.length - 1] = lastByte;
+		innerJarOS.write(data);
+		innerJarOS.close();
+
+		JarOutputStream testJarOS = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+		testJarOS.putNextEntry(new JarEntry("lib/inner.jar"));
+		testJarOS.write(inner.toByteArray());
+		// same extension, but not an archive
+		testJarOS.putNextEntry(new JarEntry("lib/fake.jar"));
+		testJarOS.write(getPopulatedByteArray(16, (byte)'x'));
+		testJarOS.flush();
+		testJarOS.close();
+	}
+
+	/**
+	 * Create a directory with only one file in it. That file being A, with the content of
+	 * the entry A in testJarOneEntryA1
+	 *
+	 * @throws IOException
+	 */
+	public void createDirOneEntryA() throws IOException {
+		File testDir = new File(testDirOneEntryAFilename);
+		assertNotNull(testDir.mkdirs());
+		FileOutputStream os = new FileOutputStream(new File(testDir, ENTRY_A));
+		os.write(getPopulatedByteArray(2048, (byte)'a'));
+		os.close();
+	}
 
     //TODO: Write a test for no changes with filename filter that matches no files
     //TODO: Write a test for no changes with filename filter that matches one filename
@@ -250,6 +415,871 @@ public class DifferenceCalculatorTest{
 
 	}
 
+	/**
+	 * Test for Differences calculateDifferences(ZipFile, ZipFile)
+	 * indexing both files in parallel has to give the same result as the serial path.
+	 */
+    @Test
+	public void testCalculateDifferencesInParallel() throws IOException {
+		createJarOneEntryA1();
+		createJarOneEntryB1();
+		Differences serial = new DifferenceCalculator(testJarOneEntryA1Filename, testJarOneEntryB1Filename).getDifferences();
+
+		DifferenceCalculator calc = new DifferenceCalculator(testJarOneEntryA1Filename, testJarOneEntryB1Filename);
+		calc.setParallelism(4);
+		Differences differences = calc.getDifferences();
+		assertTrue(differences.hasDifferences());
+		assertEquals(serial.getAdded().keySet(), differences.getAdded().keySet());
+		assertEquals(serial.getRemoved().keySet(), differences.getRemoved().keySet());
+		assertEquals(serial.getChanged().keySet(), differences.getChanged().keySet());
+
+		exerciseOutputBuilders(differences);
+	}
+
+	/**
+	 * Test for Differences calculateDifferences(ZipFile, ZipFile)
+	 * Entries of embedded jars are detected from their content and compared as well.
+	 */
+    @Test
+	public void testCalculateDifferencesEmbeddedZips() throws IOException {
+		createJarEmbeddedA(testJarEmbeddedA1Filename, (byte)'a');
+		createJarEmbeddedA(testJarEmbeddedAContentsChangedFilename, (byte)'b');
+		for (int parallelism = 1; parallelism <= 2; parallelism++) {
+			DifferenceCalculator calc = new DifferenceCalculator(testJarEmbeddedA1Filename, testJarEmbeddedAContentsChangedFilename);
+			calc.setParallelism(parallelism);
+			Differences differences = calc.getDifferences();
+			assertTrue(differences.hasDifferences());
+			assertTrue(differences.getAdded().isEmpty());
+			assertTrue(differences.getRemoved().isEmpty());
+			Map changedEntries = differences.getChanged();
+			assertTrue(changedEntries.containsKey("lib/inner.jar!A"));
+			assertFalse(changedEntries.containsKey("lib/fake.jar!A"));
+
+			exerciseOutputBuilders(differences);
+		}
+	}
+
+	/**
+	 * Test for Differences calculateDifferences(ZipFile, ZipFile)
+	 * An entry with the same content but a different compression is only unchanged
+	 * when the content is compared.
+	 */
+    @Test
+	public void testCalculateDifferencesContentDigest() throws IOException {
+		createJarOneEntryA1();
+		createJarOneEntryAUncompressed();
+		createJarOneEntryAStored();
+		createJarOneEntryALonger();
+		DifferenceCalculator calc = new DifferenceCalculator(testJarOneEntryA1Filename, testJarOneEntryAUncompressedFilename);
+		assertTrue(calc.getDifferences().getChanged().containsKey("A"));
+
+		for (DigestAlgorithm algorithm : DigestAlgorithm.values()) {
+			calc = new DifferenceCalculator(testJarOneEntryA1Filename, testJarOneEntryAUncompressedFilename);
+			calc.setContentDigestAlgorithm(algorithm);
+			Differences differences = calc.getDifferences();
+			assertFalse(differences.hasDifferences());
+			// the crc is trustworthy for top level entries, so nothing is read
+			assertEquals(1, differences.getTierCounts().getCrcAccepted());
+			assertEquals(0, differences.getTierCounts().getEntriesRead());
+
+			// the crc of a stored entry is not comparable with the one of a deflated entry
+			calc = new DifferenceCalculator(testJarOneEntryA1Filename, testJarOneEntryAStoredFilename);
+			calc.setContentDigestAlgorithm(algorithm);
+			differences = calc.getDifferences();
+			assertFalse(differences.hasDifferences());
+			assertEquals(0, differences.getTierCounts().getCrcAccepted());
+			assertEquals(1, differences.getTierCounts().getDigestAccepted());
+			assertEquals(2, differences.getTierCounts().getEntriesRead());
+
+			// entries of different sizes are changed without reading them
+			calc = new DifferenceCalculator(testJarOneEntryA1Filename, testJarOneEntryALongerFilename);
+			calc.setContentDigestAlgorithm(algorithm);
+			differences = calc.getDifferences();
+			assertTrue(differences.getChanged().containsKey("A"));
+			assertEquals(1, differences.getTierCounts().getSizeRejected());
+			assertEquals(0, differences.getTierCounts().getEntriesRead());
+
+			createJarEmbeddedA(testJarEmbeddedA1Filename, (byte)'a');
+			createJarEmbeddedA(testJarEmbeddedAContentsChangedFilename, (byte)'b');
+			calc = new DifferenceCalculator(testJarEmbeddedA1Filename, testJarEmbeddedAContentsChangedFilename);
+			calc.setContentDigestAlgorithm(algorithm);
+			differences = calc.getDifferences();
+			assertTrue(differences.getChanged().containsKey("lib/inner.jar"));
+			assertTrue(differences.getChanged().containsKey("lib/inner.jar!A"));
+
+			exerciseOutputBuilders(differences);
+		}
+	}
+
+	/**
+	 * Test for Differences calculateDifferences(ZipFile, ZipFile)
+	 * A second comparison of the same files takes both indexes from the cache.
+	 */
+    @Test
+	public void testCalculateDifferencesIndexCache() throws IOException {
+		createJarEmbeddedA(testJarEmbeddedA1Filename, (byte)'a');
+		createJarEmbeddedA(testJarEmbeddedAContentsChangedFilename, (byte)'b');
+		File cacheDir = new File(testDirPathName, "testIndexCache");
+		File[] cacheFiles = cacheDir.listFiles();
+		if (cacheFiles != null) {
+			for (File f : cacheFiles) {
+				assertTrue(f.delete());
+			}
+		}
+		IndexCache cache = new IndexCache(cacheDir, 1024 * 1024);
+
+		Differences[] results = new Differences[2];
+		for (int i = 0; i < results.length; i++) {
+			DifferenceCalculator calc = new DifferenceCalculator(testJarEmbeddedA1Filename, testJarEmbeddedAContentsChangedFilename);
+			calc.setContentDigestAlgorithm(DigestAlgorithm.SHA_256);
+			calc.setIndexCache(cache);
+			results[i] = calc.getDifferences();
+		}
+		assertEquals(2, cache.getHits());
+		assertEquals(results[0].getChanged().keySet(), results[1].getChanged().keySet());
+		assertTrue(results[1].getChanged().containsKey("lib/inner.jar!A"));
+
+		exerciseOutputBuilders(results[1]);
+	}
+
+	/**
+	 * Test for reportDifferences(DifferenceListener)
+	 * The streaming builders write the differences as they are reported.
+	 */
+    @Test
+	public void testReportDifferencesStreaming() throws IOException {
+		createJarOneEntryA1();
+		createJarOneEntryB1();
+		AbstractBuilder[] builders = { new TextBuilder(), new XmlBuilder(), new HtmlBuilder() };
+		for (AbstractBuilder b : builders) {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			DifferenceCalculator calc = new DifferenceCalculator(testJarOneEntryA1Filename, testJarOneEntryB1Filename);
+			calc.reportDifferences(b.listener(baos));
+			String output = baos.toString("UTF-8");
+			assertTrue(output.contains("A"));
+			assertTrue(output.contains("B"));
+		}
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DifferenceCalculator calc = new DifferenceCalculator(testJarOneEntryA1Filename, testJarOneEntryB1Filename);
+		calc.reportDifferences(new TextBuilder().listener(baos));
+		String output = baos.toString("UTF-8");
+		assertTrue(output.contains("[removed] A"));
+		assertTrue(output.contains("[added] B"));
+		assertTrue(output.contains("Total differences: 2"));
+	}
+
+	/**
+	 * Test for Differences calculateDifferences(InputSource, InputSource)
+	 * A directory is compared to a zip file by size and CRC of its files.
+	 */
+    @Test
+	public void testCalculateDifferencesDirectory() throws IOException {
+		createJarOneEntryA1();
+		createJarOneEntryAContentsChanged();
+		createJarEmbeddedA(testJarEmbeddedA1Filename, (byte)'a');
+		createDirOneEntryA();
+		for (int parallelism = 1; parallelism <= 2; parallelism++) {
+			DifferenceCalculator calc = new DifferenceCalculator(testJarOneEntryA1Filename, testDirOneEntryAFilename);
+			calc.setParallelism(parallelism);
+			assertFalse(calc.getDifferences().hasDifferences());
+
+			calc = new DifferenceCalculator(testDirOneEntryAFilename, testJarOneEntryAContentsChangedFilename);
+			calc.setParallelism(parallelism);
+			Differences differences = calc.getDifferences();
+			assertEquals(1, differences.getChanged().size());
+			assertTrue(differences.getChanged().containsKey(ENTRY_A));
+
+			calc = new DifferenceCalculator(testDirOneEntryAFilename, testDirOneEntryAFilename);
+			calc.setParallelism(parallelism);
+			assertFalse(calc.getDifferences().hasDifferences());
+
+			// an embedded jar is extracted and compared as a zip file of its own
+			calc = new DifferenceCalculator(testJarEmbeddedA1Filename + "!lib/inner.jar", testDirOneEntryAFilename);
+			calc.setParallelism(parallelism);
+			assertFalse(calc.getDifferences().hasDifferences());
+		}
+	}
+
+	/**
+	 * Test for setContentDiffPattern(String)
+	 * Changed entries matching the pattern get a unified diff, also inside embedded zip files.
+	 */
+    @Test
+	public void testCalculateDifferencesContentDiff() throws IOException {
+		createJarOneEntryA1();
+		createJarOneEntryAContentsChanged();
+		createJarEmbeddedA(testJarEmbeddedA1Filename, (byte)'a');
+		createJarEmbeddedA(testJarEmbeddedAContentsChangedFilename, (byte)'b');
+		char[] line = new char[2047];
+		Arrays.fill(line, 'a');
+
+		DifferenceCalculator calc = new DifferenceCalculator(testJarOneEntryA1Filename, testJarOneEntryAContentsChangedFilename);
+		calc.setContentDiffPattern(ENTRY_A);
+		Differences differences = calc.getDifferences();
+		assertEquals("--- a/A\n+++ b/A\n@@ -1,1 +1,1 @@\n-" + new String(line) + "a\n+" + new String(line) + "b\n",
+				differences.getContentDiffs().get(ENTRY_A));
+		exerciseOutputBuilders(differences);
+
+		for (int parallelism = 1; parallelism <= 2; parallelism++) {
+			calc = new DifferenceCalculator(testJarEmbeddedA1Filename, testJarEmbeddedAContentsChangedFilename);
+			calc.setContentDiffPattern(".*!A");
+			calc.setParallelism(parallelism);
+			differences = calc.getDifferences();
+			assertTrue(differences.getContentDiffs().get("lib/inner.jar!A").endsWith("b\n"));
+			assertEquals(1, differences.getContentDiffs().size());
+		}
+
+		calc = new DifferenceCalculator(testJarOneEntryA1Filename, testJarOneEntryAContentsChangedFilename);
+		calc.setContentDiffPattern(ENTRY_A);
+		calc.setContentDiffMaxSize(1024);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		calc.reportDifferences(new TextBuilder().listener(baos));
+		String output = baos.toString("UTF-8");
+		assertTrue(output.contains("[content] A\n(not compared: larger than 1024 bytes)"));
+	}
+
+	/**
+	 * Test for BatchDifferenceCalculator
+	 * Every candidate is compared to the baseline, which is indexed once. A candidate
+	 * that cannot be read is listed as failed without stopping the others.
+	 */
+    @Test
+	public void testBatchDifferences() throws IOException {
+		createJarOneEntryA1();
+		createJarOneEntryA2();
+		createJarOneEntryB1();
+		createJarOneEntryAContentsChanged();
+		File outputDir = new File(testDirPathName, "testBatch");
+		File[] outputFiles = outputDir.listFiles();
+		if (outputFiles != null) {
+			for (File f : outputFiles) {
+				assertTrue(f.delete());
+			}
+		}
+
+		BatchDifferenceCalculator batch = new BatchDifferenceCalculator(testJarOneEntryA1Filename,
+				Arrays.asList(testJarOneEntryA2Filename, testJarOneEntryB1Filename, testJarOneEntryAContentsChangedFilename));
+		batch.setThreads(2);
+		List<BatchDifferenceCalculator.Result> results = batch.run(outputDir, "text", 0);
+		assertEquals(3, results.size());
+		assertEquals(0, results.get(0).getTotal());
+		assertEquals(1, results.get(1).getAdded());
+		assertEquals(1, results.get(1).getRemoved());
+		assertEquals(1, results.get(2).getChanged());
+		for (BatchDifferenceCalculator.Result result : results) {
+			assertTrue(result.getReport().isFile());
+		}
+		List<String> summary = Files.readAllLines(new File(outputDir, BatchDifferenceCalculator.SUMMARY_FILENAME).toPath(), StandardCharsets.UTF_8);
+		assertEquals(5, summary.size());
+		assertTrue(summary.get(3).startsWith(testJarOneEntryB1Filename + "\t1\t1\t0\t2\t"));
+
+		batch = new BatchDifferenceCalculator(testJarOneEntryA1Filename,
+				Arrays.asList(testJarOneEntryA2Filename, testDirPathName + File.separator + "missing.jar"));
+		try {
+			batch.run(outputDir, "xml", 0);
+			fail("a missing candidate is reported");
+		} catch (IOException e) {
+			summary = Files.readAllLines(new File(outputDir, BatchDifferenceCalculator.SUMMARY_FILENAME).toPath(), StandardCharsets.UTF_8);
+			assertTrue(summary.get(2).endsWith("\t0\t0\t0\t0\t01-testJarOneEntryA2Filename.jar.xml"));
+			assertTrue(summary.get(3).contains("\tfailed: "));
+		}
+	}
+
+	/**
+	 * Test for HistoryCalculator
+	 * Each version is compared to the one before it.
+	 */
+    @Test
+	public void testHistory() throws IOException {
+		createJarOneEntryA1();
+		createJarOneEntryA2();
+		createJarOneEntryB1();
+		createJarOneEntryAContentsChanged();
+		HistoryCalculator calc = new HistoryCalculator(Arrays.asList(testJarOneEntryA1Filename, testJarOneEntryB1Filename,
+				testJarOneEntryAContentsChangedFilename, testJarOneEntryA2Filename));
+		History history = calc.getHistory();
+		assertEquals(4, history.getVersions().size());
+		assertEquals(2, history.getTimelines().size());
+
+		List<History.Change> a = history.getTimelines().get(ENTRY_A);
+		assertEquals(3, a.size());
+		assertEquals(History.Kind.REMOVED, a.get(0).getKind());
+		assertEquals(1, a.get(0).getVersion());
+		assertEquals(History.Kind.INTRODUCED, a.get(1).getKind());
+		assertEquals(2, a.get(1).getVersion());
+		assertEquals(History.Kind.CHANGED, a.get(2).getKind());
+		assertEquals(3, a.get(2).getVersion());
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		new TextHistoryBuilder().build(baos, history);
+		String output = baos.toString("UTF-8");
+		assertTrue(output.contains("\tintroduced in " + testJarOneEntryB1Filename));
+		assertTrue(output.contains("Total changes: 5"));
+
+		baos = new ByteArrayOutputStream();
+		new XmlHistoryBuilder().build(baos, history);
+		output = baos.toString("UTF-8");
+		assertTrue(output.contains("<entry name=\"" + ENTRY_A + "\">"));
+		assertTrue(output.contains("<changed version=\"4\"/>"));
+	}
+
+	/**
+	 * Create a jar with one class file Sample.class in it
+	 */
+	private String createJarOneClass(String name, byte[] classFile) throws IOException {
+		new File(testDirPathName).mkdirs();
+		String filename = testDirPathName + File.separator + name;
+		JarOutputStream testJarOS = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+		testJarOS.putNextEntry(new JarEntry("Sample.class"));
+		testJarOS.write(classFile);
+		testJarOS.close();
+		return filename;
+	}
+
+	/**
+	 * Test for setClassComparator(ClassComparator)
+	 * Class files that only differ in their debug information are not reported, the others
+	 * are reported with the kind of change as reason.
+	 */
+    @Test
+	public void testCalculateDifferencesClassComparator() throws IOException {
+		String base = createJarOneClass("testJarClassBase.jar", ClassSignatureTest.compile(ClassSignatureTest.SOURCE, "-g"));
+		String noDebug = createJarOneClass("testJarClassNoDebug.jar", ClassSignatureTest.compile(ClassSignatureTest.SOURCE, "-g:none"));
+		String body = createJarOneClass("testJarClassBody.jar",
+				ClassSignatureTest.compile(ClassSignatureTest.SOURCE.replace("count += step;", "count -= step;"), "-g"));
+		String api = createJarOneClass("testJarClassApi.jar",
+				ClassSignatureTest.compile(ClassSignatureTest.SOURCE.replace("int step", "long step").replace("+= step", "+= (int) step"), "-g"));
+
+		assertEquals(1, new DifferenceCalculator(base, noDebug).getDifferences().getChanged().size());
+
+		ClassComparator comparator = new ClassComparator(true, ClassComparator.DEFAULT_CACHE_SIZE);
+		for (int parallelism = 1; parallelism <= 2; parallelism++) {
+			DifferenceCalculator calc = new DifferenceCalculator(base, noDebug);
+			calc.setClassComparator(comparator);
+			calc.setParallelism(parallelism);
+			assertFalse(calc.getDifferences().hasDifferences());
+
+			calc = new DifferenceCalculator(base, body);
+			calc.setClassComparator(comparator);
+			calc.setParallelism(parallelism);
+			Differences differences = calc.getDifferences();
+			assertEquals("behavioral", differences.getChangeReasons().get("Sample.class"));
+			exerciseOutputBuilders(differences);
+
+			calc = new DifferenceCalculator(base, api);
+			calc.setClassComparator(comparator);
+			calc.setParallelism(parallelism);
+			assertEquals("api", calc.getDifferences().getChangeReasons().get("Sample.class"));
+		}
+		assertEquals(4, comparator.getMisses());
+		assertTrue(comparator.getHits() >= 4);
+	}
+
+	/**
+	 * Create a jar with a manifest built at the given time
+	 */
+	private String createJarManifest(String name, String buildTime, String version) throws IOException {
+		new File(testDirPathName).mkdirs();
+		String filename = testDirPathName + File.separator + name;
+		JarOutputStream testJarOS = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+		testJarOS.putNextEntry(new JarEntry("META-INF/MANIFEST.MF"));
+		testJarOS.write(("Manifest-Version: 1.0\r\nBuild-Time: " + buildTime + "\r\nImplementation-Version: " + version + "\r\n")
+				.getBytes(StandardCharsets.UTF_8));
+		testJarOS.close();
+		return filename;
+	}
+
+	/**
+	 * Test for setNormalizers(NormalizerRegistry)
+	 * Manifests that only differ in the time of the build are not reported.
+	 */
+    @Test
+	public void testCalculateDifferencesNormalizers() throws IOException {
+		String jar1 = createJarManifest("testJarManifest1.jar", "2014-05-01T10:00:00Z", "1.0");
+		String jar2 = createJarManifest("testJarManifest2.jar", "2014-05-02T11:00:00Z", "1.0");
+		String jar3 = createJarManifest("testJarManifest3.jar", "2014-05-02T11:00:00Z", "1.1");
+
+		assertEquals(1, new DifferenceCalculator(jar1, jar2).getDifferences().getChanged().size());
+
+		DifferenceCalculator calc = new DifferenceCalculator(jar1, jar2);
+		calc.setNormalizers(NormalizerRegistry.withDefaults());
+		assertFalse(calc.getDifferences().hasDifferences());
+
+		calc = new DifferenceCalculator(jar1, jar3);
+		calc.setNormalizers(NormalizerRegistry.withDefaults());
+		calc.setContentDigestAlgorithm(DigestAlgorithm.MD5);
+		assertTrue(calc.getDifferences().getChanged().containsKey("META-INF/MANIFEST.MF"));
+	}
+
+	/**
+	 * Test for XmlBuilder
+	 * Names with special characters are escaped, sizes, CRCs and reasons are included.
+	 */
+    @Test
+	public void testXmlBuilderEscaping() throws Exception {
+		Differences differences = new Differences();
+		differences.setFilename1("a&b.jar");
+		differences.setFilename2("\"c\".jar");
+		ZipEntry entry = new ZipEntry("x");
+		entry.setSize(10);
+		entry.setCrc(0xabcL);
+		differences.fileAdded("<added>&\u0001.txt", entry);
+		differences.fileRemoved("removed", new ZipEntry("removed"));
+		differences.fileChanged("a/B.class", entry, entry, "api");
+		differences.contentDiff("t.txt", "--- a/t.txt\n+++ b/t.txt\n@@ -1,1 +1,1 @@\n-<x>\n+]]>\n");
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		new XmlBuilder().build(baos, differences);
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+				.parse(new ByteArrayInputStream(baos.toByteArray()));
+		Element root = document.getDocumentElement();
+		assertEquals("a&b.jar", root.getAttribute("filename1"));
+		assertEquals("\"c\".jar", root.getAttribute("filename2"));
+		Element added = (Element) document.getElementsByTagName("added").item(0);
+		assertEquals("<added>&\ufffd.txt", added.getTextContent());
+		assertEquals("10", added.getAttribute("size"));
+		assertEquals("00000abc", added.getAttribute("crc"));
+		Element changed = (Element) document.getElementsByTagName("changed").item(0);
+		assertEquals("api", changed.getAttribute("reason"));
+		assertEquals("10", changed.getAttribute("size2"));
+		assertEquals("", ((Element) document.getElementsByTagName("removed").item(0)).getAttribute("crc"));
+		assertTrue(document.getElementsByTagName("contentdiff").item(0).getTextContent().endsWith("+]]>\n"));
+	}
+
+	/**
+	 * Test for JsonBuilder and NdjsonBuilder
+	 * Each difference is one record, strings are escaped.
+	 */
+    @Test
+	public void testJsonBuilders() throws IOException {
+		createJarOneEntryA1();
+		createJarOneEntryB1();
+		DifferenceCalculator calc = new DifferenceCalculator(testJarOneEntryA1Filename, testJarOneEntryB1Filename);
+		Differences differences = calc.getDifferences();
+		differences.fileChanged("a\"b\\c\u0001\u2028.class", new ZipEntry("x"), new ZipEntry("x"), "api");
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		new JsonBuilder().build(baos, differences);
+		String output = baos.toString("UTF-8");
+		assertTrue(output.startsWith("{\"filename1\":\"" + testJarOneEntryA1Filename.replace("\\", "\\\\") + "\","));
+		assertTrue(output.contains(",\"differences\":[{\"type\":\"added\",\"name\":\"B\",\"size\":2048,\"crc\":\""));
+		assertTrue(output.contains("{\"type\":\"changed\",\"name\":\"a\\\"b\\\\c\\u0001\\u2028.class\",\"reason\":\"api\"}"));
+		assertTrue(output.endsWith("],\"summary\":{\"added\":1,\"removed\":1,\"changed\":1}}"));
+
+		baos = new ByteArrayOutputStream();
+		calc.reportDifferences(new NdjsonBuilder().listener(baos));
+		String[] lines = baos.toString("UTF-8").split("\n");
+		assertEquals(4, lines.length);
+		assertTrue(lines[0].startsWith("{\"type\":\"start\","));
+		assertTrue(lines[1].startsWith("{\"type\":\"removed\",\"name\":\"A\""));
+		assertTrue(lines[2].startsWith("{\"type\":\"added\",\"name\":\"B\""));
+		assertEquals("{\"type\":\"end\",\"added\":1,\"removed\":1,\"changed\":0}", lines[3]);
+	}
+
+	/**
+	 * Test for HtmlTreeBuilder
+	 * The page loads its data from a file next to it, or embeds it if written to a stream.
+	 */
+    @Test
+	public void testHtmlTreeBuilder() throws IOException {
+		createJarOneEntryA1();
+		createJarOneEntryB1();
+		DifferenceCalculator calc = new DifferenceCalculator(testJarOneEntryA1Filename, testJarOneEntryB1Filename);
+		Differences differences = calc.getDifferences();
+		differences.fileChanged("lib/a.jar!</script>.class", new ZipEntry("x"), new ZipEntry("x"), "api");
+
+		File page = new File(testDirPathName, "testHtmlTree.html");
+		File data = new File(testDirPathName, "testHtmlTree.data.js");
+		new HtmlTreeBuilder().build(page.getPath(), 0, differences);
+		String html = new String(Files.readAllBytes(page.toPath()), StandardCharsets.UTF_8);
+		assertTrue(html.contains("<script type=\"text/javascript\" src=\"testHtmlTree.data.js\"></script>"));
+		String js = new String(Files.readAllBytes(data.toPath()), StandardCharsets.UTF_8);
+		assertTrue(js.startsWith("zipdiffReport({\"filename1\":"));
+		assertTrue(js.contains("[\"a\",\"B\"]"));
+		assertTrue(js.contains("[\"r\",\"A\"]"));
+		assertTrue(js.contains("[\"c\",\"lib/a.jar!\\u003c/script\\u003e.class\",\"api\"]"));
+		assertTrue(js.endsWith("]});\n"));
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		calc.reportDifferences(new HtmlTreeBuilder().listener(baos));
+		html = baos.toString("UTF-8");
+		assertTrue(html.contains("<script type=\"text/javascript\">zipdiffReport({"));
+		assertEquals(html.indexOf("</script>", html.indexOf("zipdiffReport({")), html.indexOf("]});\n</script>") + 5);
+		page.delete();
+		data.delete();
+	}
+
+	/**
+	 * Test for ZipBuilder
+	 * Added and changed entries are copied as they are compressed, or recompressed if
+	 * their names are shortened.
+	 */
+    @Test
+	public void testZipBuilder() throws IOException {
+		createJarOneEntryA1();
+		String filename2 = testDirPathName + File.separator + "testJarZipBuilder.jar";
+		JarOutputStream testJarOS = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(filename2)));
+		testJarOS.putNextEntry(new JarEntry(ENTRY_A));
+		testJarOS.write(getPopulatedByteArray(2048, (byte)'b'));
+		testJarOS.putNextEntry(new JarEntry("lib/"));
+		JarEntry stored = new JarEntry("lib/\u00fc.txt");
+		byte[] content = "stored\n".getBytes(StandardCharsets.UTF_8);
+		stored.setMethod(ZipEntry.STORED);
+		stored.setSize(content.length);
+		CRC32 crc = new CRC32();
+		crc.update(content);
+		stored.setCrc(crc.getValue());
+		testJarOS.putNextEntry(stored);
+		testJarOS.write(content);
+		testJarOS.close();
+		Differences differences = new DifferenceCalculator(testJarOneEntryA1Filename, filename2).getDifferences();
+
+		for (int skip = 0; skip <= 1; skip++) {
+			File output = new File(testDirPathName, "testZipBuilderOutput.zip");
+			new ZipBuilder().build(output.getPath(), skip, differences);
+			ZipInputStream zis = new ZipInputStream(new FileInputStream(output));
+			Map<String, String> entries = new TreeMap<>();
+			ZipEntry entry = zis.getNextEntry();
+			while (entry != null) {
+				ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				byte[] buffer = new byte[1024];
+				int count = zis.read(buffer);
+				while (count > -1) {
+					baos.write(buffer, 0, count);
+					count = zis.read(buffer);
+				}
+				entries.put(entry.getName(), baos.toString("UTF-8"));
+				entry = zis.getNextEntry();
+			}
+			zis.close();
+			String prefix = skip == 0 ? "lib/" : "";
+			assertEquals(new String(getPopulatedByteArray(2048, (byte)'b'), StandardCharsets.UTF_8), entries.get(ENTRY_A));
+			assertEquals("stored\n", entries.get(prefix + "\u00fc.txt"));
+			assertEquals(3, entries.size());
+			ZipFile zipFile = new ZipFile(output);
+			assertEquals(entries.size(), zipFile.size());
+			zipFile.close();
+			output.delete();
+		}
+	}
+
+	/**
+	 * Create a jar with the given entries, each with the given content
+	 */
+	private String createJarEntries(String name, String... namesAndContents) throws IOException {
+		new File(testDirPathName).mkdirs();
+		String filename = testDirPathName + File.separator + name;
+		JarOutputStream testJarOS = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+		for (int i = 0; i < namesAndContents.length; i += 2) {
+			testJarOS.putNextEntry(new JarEntry(namesAndContents[i]));
+			testJarOS.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+		}
+		testJarOS.close();
+		return filename;
+	}
+
+	/**
+	 * Test for setDetectMoves(boolean)
+	 * Removed entries with the content of added entries are reported as moved, entries
+	 * with the same content are paired by the similarity of their names.
+	 */
+    @Test
+	public void testCalculateDifferencesMoves() throws IOException {
+		String jar1 = createJarEntries("testJarMoves1.jar", "old/", "", "old/pkg/A.class", "class A",
+				"x/one/same.txt", "same", "x/two/same.txt", "same", "gone.txt", "gone");
+		String jar2 = createJarEntries("testJarMoves2.jar", "new/pkg/A.class", "class A",
+				"y/two/same.txt", "same", "y/one/same.txt", "same", "new.txt", "new!");
+
+		Differences differences = new DifferenceCalculator(jar1, jar2).getDifferences();
+		assertTrue(differences.getMoved().isEmpty());
+		assertEquals(5, differences.getRemoved().size());
+
+		for (int parallelism = 1; parallelism <= 2; parallelism++) {
+			DifferenceCalculator calc = new DifferenceCalculator(jar1, jar2);
+			calc.setDetectMoves(true);
+			calc.setParallelism(parallelism);
+			differences = calc.getDifferences();
+			Map<String, String> expected = new LinkedHashMap<>();
+			expected.put("old/pkg/A.class", "new/pkg/A.class");
+			expected.put("x/one/same.txt", "y/one/same.txt");
+			expected.put("x/two/same.txt", "y/two/same.txt");
+			assertEquals(expected, differences.getMoveTargets());
+			assertEquals(Arrays.asList("gone.txt", "old/"), new ArrayList<>(differences.getRemoved().keySet()));
+			assertEquals(Arrays.asList("new.txt"), new ArrayList<>(differences.getAdded().keySet()));
+			assertTrue(differences.toString().contains("[moved] old/pkg/A.class -> new/pkg/A.class"));
+			exerciseOutputBuilders(differences);
+		}
+
+		DifferenceCalculator calc = new DifferenceCalculator(jar1, jar2);
+		calc.setDetectMoves(true);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		calc.reportDifferences(new JsonBuilder().listener(baos));
+		String output = baos.toString("UTF-8");
+		assertTrue(output.contains("{\"type\":\"moved\",\"name\":\"new/pkg/A.class\",\"from\":\"old/pkg/A.class\",\"size\":7,"));
+		assertTrue(output.endsWith("\"summary\":{\"added\":1,\"removed\":2,\"changed\":0,\"moved\":3}}"));
+
+		// the moved entries are listed instead of copied
+		File zip = new File(testDirPathName, "testZipBuilderMoves.zip");
+		new ZipBuilder().build(zip.getPath(), 0, differences);
+		ZipFile zipFile = new ZipFile(zip);
+		assertEquals(2, zipFile.size());
+		assertNotNull(zipFile.getEntry("new.txt"));
+		InputStream is = zipFile.getInputStream(zipFile.getEntry(ZipBuilder.MOVES_ENTRY));
+		baos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int count = is.read(buffer);
+		while (count > -1) {
+			baos.write(buffer, 0, count);
+			count = is.read(buffer);
+		}
+		is.close();
+		String moves = baos.toString("UTF-8");
+		assertTrue(moves.startsWith("old/pkg/A.class\tnew/pkg/A.class\n"));
+		zipFile.close();
+		zip.delete();
+	}
+
+	/**
+	 * Test for setStatistics(Statistics)
+	 * The statistics count the entries and embedded archives of both inputs.
+	 */
+    @Test
+	public void testCalculateDifferencesStatistics() throws IOException {
+		createJarEmbeddedA(testJarEmbeddedA1Filename, (byte)'a');
+		createJarEmbeddedA(testJarEmbeddedAContentsChangedFilename, (byte)'b');
+		for (int parallelism = 1; parallelism <= 2; parallelism++) {
+			Statistics statistics = new Statistics();
+			DifferenceCalculator calc = new DifferenceCalculator(testJarEmbeddedA1Filename, testJarEmbeddedAContentsChangedFilename);
+			calc.setParallelism(parallelism);
+			calc.setStatistics(statistics);
+			calc.getDifferences();
+			assertEquals(2, statistics.getIndexesBuilt());
+			assertEquals(6, statistics.getEntriesIndexed());
+			assertEquals(2, statistics.getNestedArchives());
+			assertEquals(1, statistics.getMaxNestingDepth());
+			assertTrue(statistics.getBytesRead() > 0);
+			assertTrue(statistics.getBytesInflated() >= 2 * 2048);
+			assertTrue(statistics.toString().contains("embedded archives: 2"));
+		}
+	}
+
+	/**
+	 * Test for Statistics.timeReport(DifferenceListener)
+	 * A report written while the differences are found counts as report time, not as
+	 * compare time.
+	 */
+    @Test
+	public void testCalculateDifferencesStatisticsStream() throws IOException {
+		createJarEmbeddedA(testJarEmbeddedA1Filename, (byte)'a');
+		createJarEmbeddedA(testJarEmbeddedAContentsChangedFilename, (byte)'b');
+		Statistics statistics = new Statistics();
+		DifferenceCalculator calc = new DifferenceCalculator(testJarEmbeddedA1Filename, testJarEmbeddedAContentsChangedFilename);
+		calc.setStatistics(statistics);
+		calc.reportDifferences(statistics.timeReport(new Differences() {
+			@Override
+			public void fileChanged(String fullFilePath, ZipEntry z1, ZipEntry z2) {
+				super.fileChanged(fullFilePath, z1, z2);
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}));
+		// lib/inner.jar and lib/inner.jar!A
+		assertTrue(statistics.getReportMillis() >= 100);
+		assertTrue(statistics.getCompareMillis() < 100);
+	}
+
+	/**
+	 * Test for the flight recorder events
+	 * A comparison with content digests records every event, and a report is recorded
+	 * whether it is built from collected differences, streamed or written to files.
+	 */
+    @Test
+	public void testFlightRecorderEvents() throws IOException {
+		Assume.assumeTrue(Events.AVAILABLE);
+		createJarEmbeddedA(testJarEmbeddedA1Filename, (byte)'a');
+		createJarEmbeddedA(testJarEmbeddedAContentsChangedFilename, (byte)'b');
+		File recordingFile = new File(testDirPathName, "testFlightRecorderEvents.jfr");
+		File pageFile = new File(testDirPathName, "testFlightRecorderEvents.html");
+		Differences differences;
+		Recording recording = new Recording();
+		try {
+			recording.enable("zipdiff.ArchiveOpen");
+			recording.enable("zipdiff.Comparison");
+			recording.enable("zipdiff.NestedArchiveScan");
+			recording.enable("zipdiff.BuilderWrite");
+			recording.enable("zipdiff.EntryHash").withThreshold(Duration.ZERO);
+			recording.start();
+
+			DifferenceCalculator calc = new DifferenceCalculator(testJarEmbeddedA1Filename, testJarEmbeddedAContentsChangedFilename);
+			calc.setContentDigestAlgorithm(DigestAlgorithm.values()[0]);
+			differences = calc.getDifferences();
+			new TextBuilder().build(new ByteArrayOutputStream(), 0, differences);
+			new HtmlTreeBuilder().build(pageFile.getPath(), 0, differences);
+			calc = new DifferenceCalculator(testJarEmbeddedA1Filename, testJarEmbeddedAContentsChangedFilename);
+			calc.reportDifferences(new XmlBuilder().listener(new ByteArrayOutputStream(), 0));
+
+			recording.stop();
+			recording.dump(recordingFile.toPath());
+		} finally {
+			recording.close();
+		}
+
+		Map<String, Integer> counts = new TreeMap<String, Integer>();
+		Map<String, RecordedEvent> builderWrites = new TreeMap<String, RecordedEvent>();
+		for (RecordedEvent event : RecordingFile.readAllEvents(recordingFile.toPath())) {
+			String name = event.getEventType().getName();
+			counts.put(name, counts.containsKey(name) ? counts.get(name) + 1 : 1);
+			if (name.equals("zipdiff.BuilderWrite")) {
+				builderWrites.put(event.getString("builder"), event);
+			}
+		}
+		assertEquals(Integer.valueOf(4), counts.get("zipdiff.ArchiveOpen"));
+		assertEquals(Integer.valueOf(2), counts.get("zipdiff.Comparison"));
+		assertTrue(counts.get("zipdiff.NestedArchiveScan") >= 2);
+		assertTrue(counts.get("zipdiff.EntryHash") >= 2);
+		assertEquals(Integer.valueOf(3), counts.get("zipdiff.BuilderWrite"));
+		for (String builder : Arrays.asList("TextBuilder", "HtmlTreeBuilder", "XmlBuilder")) {
+			RecordedEvent event = builderWrites.get(builder);
+			assertNotNull(builder, event);
+			assertEquals(builder, differences.getChanged().size(), event.getLong("differences"));
+			assertTrue(builder, event.getLong("bytes") > 0);
+		}
+		// the page and its data file
+		assertEquals(pageFile.length() + new File(testDirPathName, "testFlightRecorderEvents.data.js").length(),
+				builderWrites.get("HtmlTreeBuilder").getLong("bytes"));
+	}
+
+	/**
+	 * Test for DiffServer and DiffClient
+	 * The server keeps the indexes in memory, so a second request indexes nothing.
+	 */
+    @Test
+	public void testDiffServer() throws IOException {
+		createJarOneEntryA1();
+		createJarOneEntryB1();
+		System.setProperty("zipdiff.tokenDir", new File(testDirPathName, "testDiffServer").getPath());
+		DiffServer server = new DiffServer(0, 2, new IndexCache(null, 0, 1024 * 1024));
+		server.start();
+		try {
+			File tokenFile = DiffClient.tokenFile(server.getPort());
+			assertTrue(tokenFile.isFile());
+			String token = new String(Files.readAllBytes(tokenFile.toPath()), StandardCharsets.US_ASCII);
+			assertEquals(403, post(server.getPort(), null, DiffServer.CONTENT_TYPE, null));
+			assertEquals(403, post(server.getPort(), "0", DiffServer.CONTENT_TYPE, null));
+			assertEquals(403, post(server.getPort(), token, DiffServer.CONTENT_TYPE, "http://example.com"));
+			assertEquals(415, post(server.getPort(), token, "text/plain", null));
+
+			for (int i = 0; i < 2; i++) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				ByteArrayOutputStream err = new ByteArrayOutputStream();
+				int exitCode = DiffClient.run(server.getPort(), new String[] { testJarOneEntryA1Filename, testJarOneEntryB1Filename }, out, err);
+				assertEquals(err.toString("UTF-8"), 0, exitCode);
+				String output = out.toString("UTF-8");
+				assertTrue(output.contains("[removed] A"));
+				assertTrue(output.contains("[added] B"));
+			}
+			assertEquals(2, server.getIndexCache().getHits());
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ByteArrayOutputStream err = new ByteArrayOutputStream();
+			int exitCode = DiffClient.run(server.getPort(), new String[] { testJarOneEntryA1Filename, "-format", "nonsense" }, out, err);
+			assertTrue(exitCode != 0);
+			assertTrue(err.size() > 0);
+		} finally {
+			server.stop();
+			System.clearProperty("zipdiff.tokenDir");
+		}
+		assertFalse(DiffClient.tokenFile(server.getPort()).exists());
+	}
+
+	/**
+	 * posts a request for a comparison of nothing to a DiffServer
+	 *
+	 * @return the status code of the response
+	 */
+	private static int post(int port, String token, String contentType, String origin) throws IOException {
+		// HttpURLConnection drops the Origin header, so the request is written by hand
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		try {
+			StringBuilder request = new StringBuilder();
+			request.append("POST ").append(DiffServer.PATH).append(" HTTP/1.1\r\n");
+			request.append("Host: localhost\r\nConnection: close\r\nContent-Length: 1\r\n");
+			request.append("Content-Type: ").append(contentType).append("\r\n");
+			if (token != null) {
+				request.append(DiffServer.TOKEN_HEADER).append(": ").append(token).append("\r\n");
+			}
+			if (origin != null) {
+				request.append("Origin: ").append(origin).append("\r\n");
+			}
+			request.append("\r\n.");
+			socket.getOutputStream().write(request.toString().getBytes(StandardCharsets.US_ASCII));
+			socket.getOutputStream().flush();
+			String statusLine = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII)).readLine();
+			return Integer.parseInt(statusLine.split(" ")[1]);
+		} finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Test for Differences calculateDifferences(ArchiveIndex, ArchiveIndex)
+	 * The differences are reported in the order of their names.
+	 */
+    @Test
+	public void testCalculateDifferencesSortedByName() throws IOException {
+		createJarOneEntryA1();
+		DifferenceCalculator calc = new DifferenceCalculator(testJarOneEntryA1Filename, testJarOneEntryA1Filename);
+		ArchiveIndex.Builder b1 = new ArchiveIndex.Builder(0);
+		ArchiveIndex.Builder b2 = new ArchiveIndex.Builder(0);
+		for (String name : Arrays.asList("d", "b", "x/y", "a", "c", "x")) {
+			b1.add(ArchiveIndex.NO_PARENT, "", name, fileEntry(name, 0));
+		}
+		b1.add(b1.size() - 1, "", "z", fileEntry("z", 0));
+		for (String name : Arrays.asList("e", "b", "x/y", "0")) {
+			b2.add(ArchiveIndex.NO_PARENT, "", name, fileEntry(name, 0));
+		}
+		Differences differences = calc.calculateDifferences(b1.build(), b2.build());
+		assertEquals(Arrays.asList("a", "c", "d", "x", "x!z"), new ArrayList<>(differences.getRemoved().keySet()));
+		assertEquals(Arrays.asList("0", "e"), new ArrayList<>(differences.getAdded().keySet()));
+		assertTrue(differences.getChanged().isEmpty());
+	}
+
+	/**
+	 * Test for Differences calculateDifferences(ArchiveIndex, ArchiveIndex)
+	 * Files of a directory have no compressed size. If their CRCs are not known and the
+	 * inputs are not open to compute them, they are changed rather than equal.
+	 */
+    @Test
+	public void testCalculateDifferencesUnknownCrc() throws IOException {
+		createJarOneEntryA1();
+		DifferenceCalculator calc = new DifferenceCalculator(testJarOneEntryA1Filename, testJarOneEntryA1Filename);
+		ArchiveIndex.Builder b1 = new ArchiveIndex.Builder(0);
+		ArchiveIndex.Builder b2 = new ArchiveIndex.Builder(0);
+		b1.add(ArchiveIndex.NO_PARENT, "", "known", fileEntry("known", 1));
+		b2.add(ArchiveIndex.NO_PARENT, "", "known", fileEntry("known", 1));
+		b1.add(ArchiveIndex.NO_PARENT, "", "unknown", fileEntry("unknown", -1));
+		b2.add(ArchiveIndex.NO_PARENT, "", "unknown", fileEntry("unknown", -1));
+		Differences differences = calc.calculateDifferences(b1.build(), b2.build());
+		assertEquals(Arrays.asList("unknown"), new ArrayList<>(differences.getChanged().keySet()));
+	}
+
+	/**
+	 * @param crc CRC of the entry, -1 to leave it unknown
+	 * @return an entry like the one of a file of a directory, which has a size but no compressed size
+	 */
+	private static ZipEntry fileEntry(String name, long crc) {
+		ZipEntry entry = new ZipEntry(name);
+		entry.setSize(16);
+		if (crc >= 0) {
+			entry.setCrc(crc);
+		}
+		return entry;
+	}
+
 	private void exerciseHtmlBuilder(Differences differences) {
 		assertNotNull(differences);
 
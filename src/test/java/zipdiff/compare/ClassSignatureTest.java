@@ -0,0 +1,119 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.compare;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * tests for ClassSignature and ClassComparator
+ */
+public class ClassSignatureTest {
+
+	public static final String SOURCE = "public class Sample {\n"
+			+ "	private int count;\n"
+			+ "	public int next(int step) {\n"
+			+ "		count += step;\n"
+			+ "		return count;\n"
+			+ "	}\n"
+			+ "}\n";
+
+	/**
+	 * compiles a class Sample with the compiler of the running JDK
+	 *
+	 * @param source source of the class
+	 * @param options options of javac, e.g. -g:none
+	 * @return the class file
+	 */
+	public static byte[] compile(String source, String... options) throws IOException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		assertNotNull("tests need a JDK", compiler);
+		File dir = Files.createTempDirectory("zipdiff-class").toFile();
+		File file = new File(dir, "Sample.java");
+		Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+		String[] args = Arrays.copyOf(options, options.length + 3);
+		args[options.length] = "-d";
+		args[options.length + 1] = dir.getPath();
+		args[options.length + 2] = file.getPath();
+		assertEquals(0, compiler.run(null, null, null, args));
+		File classFile = new File(dir, "Sample.class");
+		byte[] data = Files.readAllBytes(classFile.toPath());
+		classFile.delete();
+		file.delete();
+		dir.delete();
+		return data;
+	}
+
+	@Test
+	public void testDebugInformationIsCosmetic() throws IOException {
+		byte[] debug = compile(SOURCE, "-g");
+		byte[] none = compile(SOURCE, "-g:none");
+		assertFalse(Arrays.equals(debug, none));
+
+		ClassSignature signature1 = ClassSignature.parse(debug, true);
+		ClassSignature signature2 = ClassSignature.parse(none, true);
+		assertEquals(ClassComparator.Change.COSMETIC, ClassComparator.classify(signature1, signature2));
+	}
+
+	@Test
+	public void testChangedMethodBody() throws IOException {
+		byte[] data1 = compile(SOURCE);
+		byte[] data2 = compile(SOURCE.replace("count += step;", "count -= step;"));
+
+		assertEquals(ClassComparator.Change.BEHAVIORAL,
+				ClassComparator.classify(ClassSignature.parse(data1, true), ClassSignature.parse(data2, true)));
+		assertEquals(ClassComparator.Change.COSMETIC,
+				ClassComparator.classify(ClassSignature.parse(data1, false), ClassSignature.parse(data2, false)));
+	}
+
+	@Test
+	public void testChangedApi() throws IOException {
+		byte[] data1 = compile(SOURCE);
+		byte[] added = compile(SOURCE.replace("}\n}", "}\n	public void reset() {\n		count = 0;\n	}\n}"));
+		byte[] privateAdded = compile(SOURCE.replace("}\n}", "}\n	private void reset() {\n		count = 0;\n	}\n}"));
+		byte[] flags = compile(SOURCE.replace("public int next", "public final int next"));
+
+		ClassSignature signature1 = ClassSignature.parse(data1, true);
+		assertEquals(ClassComparator.Change.API, ClassComparator.classify(signature1, ClassSignature.parse(added, true)));
+		assertEquals(ClassComparator.Change.BEHAVIORAL, ClassComparator.classify(signature1, ClassSignature.parse(privateAdded, true)));
+		assertEquals(ClassComparator.Change.API, ClassComparator.classify(signature1, ClassSignature.parse(flags, true)));
+	}
+
+	@Test
+	public void testMalformedClassFile() {
+		assertNull(ClassSignature.parse(new byte[] { (byte) 0xca, (byte) 0xfe, 0, 0 }, true));
+		assertNull(ClassSignature.parse("not a class".getBytes(StandardCharsets.UTF_8), false));
+	}
+
+	@Test
+	public void testCache() throws IOException {
+		byte[] data = compile(SOURCE);
+		ClassComparator comparator = new ClassComparator(true, 1);
+		assertNull(comparator.getCached("Sample.class", 1, data.length));
+		assertNotNull(comparator.parse("Sample.class", 1, data.length, new ByteArrayInputStream(data)));
+		assertNotNull(comparator.getCached("Sample.class", 1, data.length));
+		comparator.parse("Other.class", 2, data.length, new ByteArrayInputStream(data));
+		assertNull(comparator.getCached("Sample.class", 1, data.length));
+		assertEquals(1, comparator.getHits());
+		assertEquals(2, comparator.getMisses());
+		assertTrue(comparator.accepts("a/b/Sample.class"));
+	}
+}
@@ -0,0 +1,66 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.compare;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * tests for LineDiff
+ */
+public class LineDiffTest {
+
+	private static String hunks(List<String> lines1, List<String> lines2, int context) {
+		StringBuilder sb = new StringBuilder();
+		new LineDiff(lines1, lines2).writeHunks(context, sb);
+		return sb.toString();
+	}
+
+	@Test
+	public void testHunks() {
+		List<String> lines1 = new ArrayList<>();
+		for (int i = 1; i <= 20; i++) {
+			lines1.add("line" + i);
+		}
+		List<String> lines2 = new ArrayList<>(lines1);
+		lines2.set(1, "changed2");
+		lines2.remove(17);
+		lines2.add("line21");
+
+		assertEquals("@@ -1,5 +1,5 @@\n line1\n-line2\n+changed2\n line3\n line4\n line5\n"
+				+ "@@ -15,6 +15,6 @@\n line15\n line16\n line17\n-line18\n line19\n line20\n+line21\n",
+				hunks(lines1, lines2, 3));
+		// the changes are merged into one hunk when the context between them overlaps
+		assertEquals(1, hunks(lines1, lines2, 8).split("@@ ").length - 1);
+	}
+
+	@Test
+	public void testInsertIntoEmpty() {
+		assertEquals("@@ -0,0 +1,2 @@\n+a\n+b\n", hunks(new ArrayList<String>(), Arrays.asList("a", "b"), 3));
+		assertFalse(new LineDiff(Arrays.asList("a", "b"), Arrays.asList("a", "b")).hasDifferences());
+	}
+
+	@Test
+	public void testShortestEditScript() {
+		// abcabba -> cbabac, the example of Myers' paper, has 5 edits
+		List<String> a = Arrays.asList("a", "b", "c", "a", "b", "b", "a");
+		List<String> b = Arrays.asList("c", "b", "a", "b", "a", "c");
+		String hunks = hunks(a, b, 0);
+		int edits = 0;
+		for (String line : hunks.split("\n")) {
+			if (line.startsWith("-") || line.startsWith("+")) {
+				edits++;
+			}
+		}
+		assertEquals(5, edits);
+	}
+}
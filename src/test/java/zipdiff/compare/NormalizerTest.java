@@ -0,0 +1,76 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.compare;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * tests for the normalizers and NormalizerRegistry
+ */
+public class NormalizerTest {
+
+	private static String normalize(Normalizer normalizer, String content) throws IOException {
+		InputStream in = normalizer.normalize(new ByteArrayInputStream(content.getBytes(StandardCharsets.ISO_8859_1)));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[3];
+		int count = in.read(buffer);
+		while (count > -1) {
+			out.write(buffer, 0, count);
+			count = in.read(buffer);
+		}
+		in.close();
+		return new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+	}
+
+	@Test
+	public void testManifest() throws IOException {
+		String manifest = "Manifest-Version: 1.0\r\n"
+				+ "Build-Time: 2014-05-01T10:00:00Z\r\n"
+				+ "built-by: someone with a very long name that goes on and on and on and on and \r\n"
+				+ " on\r\n"
+				+ "Main-Class: zipdiff.Main\r\n"
+				+ "\r\n"
+				+ "Name: zipdiff/\r\n"
+				+ "Implementation-Version: 1.0\r\n";
+		assertEquals("Manifest-Version: 1.0\nMain-Class: zipdiff.Main\n\nName: zipdiff/\nImplementation-Version: 1.0\n",
+				normalize(new ManifestNormalizer(), manifest));
+	}
+
+	@Test
+	public void testProperties() throws IOException {
+		String properties = "#Generated by Maven\n"
+				+ "#Thu May 01 10:00:00 CEST 2014\n"
+				+ "version=1.0\n"
+				+ "git.build.time=2014-05-01 \\\n"
+				+ "  10\\:00\n"
+				+ "groupId=zipdiff\n"
+				+ "artifactId=zipdiff";
+		assertEquals("version=1.0\ngroupId=zipdiff\nartifactId=zipdiff\n", normalize(new PropertiesNormalizer(), properties));
+		assertEquals("", normalize(new PropertiesNormalizer(), ""));
+	}
+
+	@Test
+	public void testRegistry() {
+		NormalizerRegistry registry = NormalizerRegistry.withDefaults();
+		Normalizer manifest = registry.find("META-INF/MANIFEST.MF");
+		assertEquals(ManifestNormalizer.class, manifest.getClass());
+		assertSame(manifest, registry.find("WEB-INF/lib/a.jar!META-INF/MANIFEST.MF"));
+		assertEquals(PropertiesNormalizer.class, registry.find("META-INF/maven/zipdiff/zipdiff/pom.properties").getClass());
+		assertEquals(PropertiesNormalizer.class, registry.find("git.properties").getClass());
+		assertNull(registry.find("META-INF/MANIFEST.MF.bak"));
+		assertNull(registry.find("application.properties"));
+	}
+}
@@ -0,0 +1,112 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ArchiveIndexTest {
+
+	private static ZipEntry entry(String name, long size, long crc) {
+		ZipEntry entry = new ZipEntry(name);
+		entry.setSize(size);
+		entry.setCrc(crc);
+		return entry;
+	}
+
+	@Test
+	public void testNames() {
+		ArchiveIndex.Builder builder = new ArchiveIndex.Builder(0);
+		int lib = builder.add(ArchiveIndex.NO_PARENT, "root/", "lib/inner.jar", entry("root/lib/inner.jar", 10, 1));
+		int dir = builder.add(lib, "", "META-INF/", entry("META-INF/", 0, 0));
+		int nested = builder.add(lib, "", "META-INF/MANIFEST.MF", entry("META-INF/MANIFEST.MF", 20, 0xFFFFFFFFL));
+		ArchiveIndex index = builder.build();
+
+		assertEquals("lib/inner.jar", index.getName(lib));
+		assertEquals("root/lib/inner.jar", index.getEntryName(lib));
+		assertEquals("lib/inner.jar!META-INF/MANIFEST.MF", index.getName(nested));
+		assertEquals("META-INF/MANIFEST.MF", index.getEntryName(nested));
+		assertEquals(1, index.getDepth(nested));
+		assertTrue(index.isDirectory(dir));
+		assertFalse(index.isDirectory(nested));
+		assertEquals(0xFFFFFFFFL, index.getCrc(nested));
+		assertEquals(20, index.toZipEntry(nested).getSize());
+		assertEquals("root/lib/inner.jar", index.toZipEntry(lib).getName());
+	}
+
+	@Test
+	public void testSortedOrderMatchesStringOrder() {
+		List<String> names = Arrays.asList("b", "a/b", "a", "a!b", "a/", "A", "\u00e4", "\u4e2d/x", "a0", "");
+		ArchiveIndex.Builder builder = new ArchiveIndex.Builder(0);
+		for (String name : names) {
+			builder.add(ArchiveIndex.NO_PARENT, "", name, entry(name, 0, 0));
+		}
+		int a = builder.add(ArchiveIndex.NO_PARENT, "", "a", entry("a", 0, 0));
+		builder.add(a, "", "a", entry("a", 0, 0));
+		ArchiveIndex index = builder.build();
+
+		List<String> sorted = new ArrayList<>();
+		for (int i : index.sortedOrder()) {
+			sorted.add(index.getName(i));
+		}
+		List<String> expected = new ArrayList<>(names);
+		expected.add("a!a");
+		Collections.sort(expected);
+		assertEquals(expected, sorted);
+		assertEquals(index.size() - 1, index.find("a!a"));
+		assertEquals(-1, index.find("a!"));
+	}
+
+	@Test
+	public void testDuplicateNamesKeepLastEntry() {
+		ArchiveIndex.Builder builder = new ArchiveIndex.Builder(0);
+		builder.add(ArchiveIndex.NO_PARENT, "", "x", entry("x", 1, 0));
+		builder.add(ArchiveIndex.NO_PARENT, "", "y", entry("y", 2, 0));
+		builder.add(ArchiveIndex.NO_PARENT, "", "x", entry("x", 3, 0));
+		ArchiveIndex index = builder.build();
+
+		assertEquals(2, index.sortedOrder().length);
+		assertEquals(3, index.getSize(index.find("x")));
+	}
+
+	@Test
+	public void testAppend() {
+		ArchiveIndex.Builder embedded = new ArchiveIndex.Builder(4);
+		int dir = embedded.add(ArchiveIndex.NO_PARENT, "", "dir/", entry("dir/", 0, 0));
+		int nested = embedded.add(ArchiveIndex.NO_PARENT, "", "nested.zip", entry("nested.zip", 5, 5));
+		embedded.add(nested, "", "dir/file", entry("dir/file", 6, 6));
+		embedded.setDigest(nested, new byte[] { 1, 2, 3, 4 });
+		embedded.markArchive(nested);
+		embedded.setRoot(new byte[] { 5, 6, 7, 8 });
+
+		ArchiveIndex.Builder builder = new ArchiveIndex.Builder(4);
+		builder.add(ArchiveIndex.NO_PARENT, "", "first", entry("first", 1, 1));
+		int archive = builder.add(ArchiveIndex.NO_PARENT, "", "lib/a.jar", entry("lib/a.jar", 2, 2));
+		builder.append(embedded, archive);
+		ArchiveIndex index = builder.build();
+
+		assertEquals(5, index.size());
+		assertEquals("lib/a.jar!dir/", index.getName(2 + dir));
+		assertEquals("lib/a.jar!nested.zip!dir/file", index.getName(4));
+		assertTrue(index.isArchive(archive));
+		assertTrue(index.isArchive(2 + nested));
+		assertTrue(Arrays.equals(new byte[] { 5, 6, 7, 8 }, index.getDigest(archive)));
+		assertTrue(Arrays.equals(new byte[] { 1, 2, 3, 4 }, index.getDigest(2 + nested)));
+		assertNull(index.getDigest(0));
+		assertTrue(index.digestEquals(archive, index, archive));
+		assertFalse(index.digestEquals(archive, index, 2 + nested));
+	}
+}
@@ -0,0 +1,191 @@
+/* zipdiff-ng is available under the terms of the
+ * Apache License, version 2.0
+ *
+ * Link: http://www.apache.org/licenses/
+ */
+package zipdiff.index;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import zipdiff.input.ZipInputSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CentralDirectoryTest {
+
+	/** 2000-01-01 00:00:02 and 00:00:03 UTC, which share a slot of the two second MS-DOS time */
+	private static final long TIME1 = 946684802000L;
+
+	private static final long TIME2 = 946684803000L;
+
+	private static File createTempZip() throws IOException {
+		File file = File.createTempFile("zipdiff-cen", ".zip");
+		file.deleteOnExit();
+		return file;
+	}
+
+	/**
+	 * writes a stored file, a deflated file and a directory, with the archive comment
+	 * and the last modified time given. The deflated file has the time in an extended
+	 * timestamp as well.
+	 */
+	private static File createZip(String comment, long time) throws IOException {
+		File file = createTempZip();
+		ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			if (comment != null) {
+				out.setComment(comment);
+			}
+			byte[] data = new byte[1000];
+			Arrays.fill(data, (byte) 'a');
+			CRC32 crc = new CRC32();
+			crc.update(data);
+
+			ZipEntry stored = new ZipEntry("stored.txt");
+			stored.setMethod(ZipEntry.STORED);
+			stored.setSize(data.length);
+			stored.setCompressedSize(data.length);
+			stored.setCrc(crc.getValue());
+			stored.setTime(time);
+			out.putNextEntry(stored);
+			out.write(data);
+
+			ZipEntry deflated = new ZipEntry("dir/deflated.txt");
+			deflated.setLastModifiedTime(FileTime.fromMillis(time));
+			deflated.setComment("entry comment");
+			out.putNextEntry(deflated);
+			out.write(data);
+
+			ZipEntry dir = new ZipEntry("dir/");
+			dir.setTime(time);
+			out.putNextEntry(dir);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private static void assertSameEntries(List<? extends ZipEntry> expected, List<? extends ZipEntry> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			ZipEntry e = expected.get(i);
+			ZipEntry a = actual.get(i);
+			String name = e.getName();
+			assertEquals(name, e.getName(), a.getName());
+			assertEquals(name, e.getSize(), a.getSize());
+			assertEquals(name, e.getCompressedSize(), a.getCompressedSize());
+			assertEquals(name, e.getCrc(), a.getCrc());
+			assertEquals(name, e.getMethod(), a.getMethod());
+			assertEquals(name, e.getTime(), a.getTime());
+		}
+	}
+
+	private static void assertMatchesZipFile(File file) throws IOException {
+		ZipFile zipFile = new ZipFile(file);
+		try {
+			List<ZipEntry> mapped = new ArrayList<>();
+			for (CentralDirectory.Entry entry : CentralDirectory.read(file).getEntries()) {
+				mapped.add(entry.toZipEntry());
+			}
+			assertSameEntries(Collections.list(zipFile.entries()), mapped);
+		} finally {
+			zipFile.close();
+		}
+	}
+
+	@Test
+	public void testEntries() throws IOException {
+		assertMatchesZipFile(createZip(null, TIME1));
+	}
+
+	@Test
+	public void testArchiveComment() throws IOException {
+		File file = createZip("an archive comment, which follows the end of central directory record", TIME1);
+		assertMatchesZipFile(file);
+		assertEquals(3, CentralDirectory.read(file).getEntries().size());
+	}
+
+	/**
+	 * The extended timestamp keeps the seconds the MS-DOS time rounds away.
+	 */
+	@Test
+	public void testExtendedTimestamp() throws IOException {
+		File file1 = createZip(null, TIME1);
+		File file2 = createZip(null, TIME2);
+		assertMatchesZipFile(file1);
+		assertMatchesZipFile(file2);
+
+		ZipEntry deflated1 = CentralDirectory.read(file1).getEntries().get(1).toZipEntry();
+		ZipEntry deflated2 = CentralDirectory.read(file2).getEntries().get(1).toZipEntry();
+		assertEquals(TIME1, deflated1.getTime());
+		assertEquals(TIME2, deflated2.getTime());
+		// the stored file only has the MS-DOS time
+		assertEquals(CentralDirectory.read(file1).getEntries().get(0).toZipEntry().getTime(),
+				CentralDirectory.read(file2).getEntries().get(0).toZipEntry().getTime());
+	}
+
+	/**
+	 * More than 65535 entries need the zip64 end of central directory record.
+	 */
+	@Test
+	public void testZip64EntryCount() throws IOException {
+		File file = createTempZip();
+		ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			for (int i = 0; i < 0x10000 + 10; i++) {
+				// empty and stored, so that writing them is cheap
+				ZipEntry entry = new ZipEntry(Integer.toString(i));
+				entry.setMethod(ZipEntry.STORED);
+				entry.setSize(0);
+				entry.setCrc(0);
+				out.putNextEntry(entry);
+			}
+		} finally {
+			out.close();
+		}
+		assertEquals(0x10000 + 10, CentralDirectory.read(file).getEntries().size());
+		assertMatchesZipFile(file);
+	}
+
+	/**
+	 * ZipInputSource falls back to ZipFile.entries() if the central directory cannot be
+	 * mapped, here because the file is gone while the ZipFile is still open, and gets the
+	 * same entries.
+	 */
+	@Test
+	public void testFallback() throws IOException {
+		File file = createZip("comment", TIME1);
+		List<ZipEntry> mapped;
+		ZipInputSource source = new ZipInputSource(new ZipFile(file));
+		try {
+			mapped = source.entries();
+		} finally {
+			source.close();
+		}
+
+		source = new ZipInputSource(new ZipFile(file));
+		try {
+			// only where an open file can be deleted
+			Assume.assumeTrue(file.delete());
+			assertSameEntries(mapped, source.entries());
+		} finally {
+			source.close();
+		}
+	}
+}